@@ -0,0 +1,39 @@
+#!/usr/bin/env bash
+# Read-heavy mix against a running instance: 90% GET /users/{id}, 10% duplicate-email creates (existsByEmail -> 409).
+# Run it once against the default profile and once with --spring.profiles.active=cache. Start the baseline with
+# --spring.jpa.properties.hibernate.generate_statistics=true so both runs report jdbcStatements: HTTP Basic
+# hashes the password with BCrypt on every request, which caps req/s well below what the database path costs.
+#
+#   bench/cache-read-mix.sh [base-url] [requests] [parallel]
+set -euo pipefail
+
+BASE=${1:-http://localhost:8080}
+REQUESTS=${2:-20000}
+PARALLEL=${3:-16}
+AUTH=${AUTH:-admin:admin}
+MAX_ID=${MAX_ID:-2}
+
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+for ((i = 0; i < REQUESTS; i++)); do
+  # Опции в конфиге curl глобальны, пока их не отделит next
+  ((i > 0)) && echo next
+  if ((i % 10 == 9)); then
+    printf 'url = "%s/api/v1/users"\nrequest = "POST"\nheader = "Content-Type: application/json"\ndata = "{\\"firstName\\":\\"A\\",\\"lastName\\":\\"B\\",\\"email\\":\\"ivan.petrov@example.com\\",\\"gender\\":\\"MALE\\"}"\n' "$BASE"
+  else
+    printf 'url = "%s/api/v1/users/%d"\n' "$BASE" $((RANDOM % MAX_ID + 1))
+  fi
+  printf 'user = "%s"\noutput = "/dev/null"\nwrite-out = "%%{http_code}\\n"\n' "$AUTH"
+done > "$work/requests.cfg"
+
+# Прогрев: JIT и пул соединений
+curl -s -u "$AUTH" -o /dev/null "$BASE/api/v1/users/1"
+
+start=$(date +%s%N)
+curl -s --no-progress-meter --parallel --parallel-max "$PARALLEL" -K "$work/requests.cfg" > "$work/codes"
+elapsed_ms=$(( ($(date +%s%N) - start) / 1000000 ))
+
+echo "requests: $REQUESTS, parallel: $PARALLEL, elapsed: ${elapsed_ms} ms, throughput: $(( REQUESTS * 1000 / (elapsed_ms > 0 ? elapsed_ms : 1) )) req/s"
+echo "status codes:"; sort "$work/codes" | uniq -c
+echo "hibernate cache (cumulative since start):"; curl -s -u "$AUTH" "$BASE/actuator/hibernatecache"; echo
@@ -0,0 +1,50 @@
+#!/usr/bin/env bash
+# Startup comparison of the three launch variants: plain fat jar, AOT, AOT + AppCDS archive.
+# Needs the aot build first (mvn -Paot package): it produces the AOT classes, target/cds and the archive.
+# For each run: time from process start to the first successful GET /api/v1/users/1, then the RSS at that moment.
+#
+#   bench/startup.sh [runs] [port]
+set -euo pipefail
+
+RUNS=${1:-3}
+PORT=${2:-8080}
+AUTH=${AUTH:-admin:admin}
+JAR=users-api-0.0.1-SNAPSHOT.jar
+
+cd "$(dirname "$0")/../target/cds"
+[[ -f application.jsa ]] || { echo "target/cds/application.jsa not found, build with: mvn -Paot package" >&2; exit 1; }
+
+# All variants start from the same directory: the jar path is part of the classpath the archive was recorded with
+declare -A VARIANTS=(
+  [plain]="-jar ../$JAR"
+  [aot]="-Dspring.aot.enabled=true -jar $JAR"
+  [aot+cds]="-XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true -jar $JAR"
+)
+
+run_once() {
+  local args=$1 start pid code elapsed_ms rss_kb
+  start=$(date +%s%N)
+  # shellcheck disable=SC2086
+  java $args --server.port="$PORT" > app.log 2>&1 &
+  pid=$!
+  while :; do
+    if ! kill -0 "$pid" 2>/dev/null; then echo "process exited, see target/cds/app.log" >&2; exit 1; fi
+    code=$(curl -s -o /dev/null -w '%{http_code}' -u "$AUTH" "http://localhost:$PORT/api/v1/users/1" || true)
+    [[ $code == 200 ]] && break
+    sleep 0.05
+  done
+  elapsed_ms=$(( ($(date +%s%N) - start) / 1000000 ))
+  rss_kb=$(awk '/^VmRSS/ {print $2}' "/proc/$pid/status")
+  kill "$pid"; wait "$pid" 2>/dev/null || true
+  echo "$elapsed_ms $rss_kb"
+}
+
+printf '%-8s %6s %22s %14s\n' variant run time-to-first-request rss
+for variant in plain aot aot+cds; do
+  for ((run = 1; run <= RUNS; run++)); do
+    # A plain assignment, so a failed run aborts the script under set -e
+    result=$(run_once "${VARIANTS[$variant]}")
+    read -r ms kb <<< "$result"
+    printf '%-8s %6d %19d ms %11d MB\n' "$variant" "$run" "$ms" $((kb / 1024))
+  done
+done
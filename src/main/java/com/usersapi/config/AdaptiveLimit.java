@@ -0,0 +1,154 @@
+package com.usersapi.config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrency limit that adapts to measured latency, in the spirit of a gradient limiter.
+ * <p>
+ * Latency is sampled in windows of at least {@code WINDOW} and {@code MIN_WINDOW_SAMPLES} requests. Two averages
+ * are kept: the short one is the mean of the last window (current conditions), the long one a slow moving average
+ * of window means (the baseline). While the short average stays within {@code tolerance} of the baseline the limit
+ * grows by about {@code sqrt(limit)} per window; once queueing shows up as extra latency the limit is scaled down
+ * by the ratio {@code tolerance * long / short} (never by more than half at once). Updates are smoothed and
+ * skipped while on average fewer than half of the permits were in use, because an idle server says nothing
+ * about capacity.
+ * <p>
+ * Admission is a single CAS on the in-flight counter. Releasing a permit adds the sample to striped counters;
+ * the one request that finds the window over recomputes the limit, the others never wait for it.
+ */
+final class AdaptiveLimit {
+
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MIN_WINDOW_SAMPLES = 10;
+    // Weight of one sample in the baseline: a window of n samples moves it by n times this
+    private static final double LONG_WEIGHT = 1.0 / 500;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+
+    // Current window, filled without locks
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder rttNanosSum = new LongAdder();
+    private final LongAdder inFlightSum = new LongAdder();
+    private volatile long windowEnd;
+    // Held by the single request that closes a window; losers skip the update instead of waiting
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    // Written only by the window owner
+    private volatile double shortRttNanos;
+    private volatile double longRttNanos;
+
+    AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit || tolerance < 1) {
+            throw new IllegalArgumentException("Concurrency limit needs 1 <= min-limit <= max-limit and tolerance >= 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        // The first window closes as soon as it has enough samples
+        this.windowEnd = System.nanoTime();
+    }
+
+    /** Takes a permit if fewer than {@code share} of the current limit are in use. */
+    boolean tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (limit * share));
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Returns a permit without a latency sample (failed or unrepresentative request). */
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /** Returns a permit and feeds the request latency into the limit. */
+    void release(long rttNanos) {
+        release(rttNanos, System.nanoTime());
+    }
+
+    void release(long rttNanos, long now) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        samples.increment();
+        rttNanosSum.add(rttNanos);
+        inFlightSum.add(inFlightBefore);
+        if (now - windowEnd >= 0 && updating.compareAndSet(false, true)) {
+            try {
+                closeWindow(now);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    private void closeWindow(long now) {
+        // Re-checked under ownership: another request may have closed this window a moment ago
+        if (now - windowEnd < 0 || samples.sum() < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+        // Samples added between these resets land in the next window, slightly skewing one of its sums
+        long count = samples.sumThenReset();
+        double meanRtt = (double) rttNanosSum.sumThenReset() / count;
+        double meanInFlight = (double) inFlightSum.sumThenReset() / count;
+        windowEnd = now + WINDOW;
+        update(meanRtt, meanInFlight, count);
+    }
+
+    private void update(double meanRtt, double meanInFlight, long count) {
+        if (longRttNanos == 0) {
+            shortRttNanos = meanRtt;
+            longRttNanos = meanRtt;
+            return;
+        }
+        double shortRtt = meanRtt;
+        double longRtt = longRttNanos + (meanRtt - longRttNanos) * Math.min(1.0, count * LONG_WEIGHT);
+        // Latency dropped well below the baseline (overload is over): let the baseline catch up quickly
+        // instead of over-admitting against a stale, inflated one
+        if (longRtt > 2 * shortRtt) {
+            longRtt *= 0.95;
+        }
+        shortRttNanos = shortRtt;
+        longRttNanos = longRtt;
+        double current = limit;
+        if (meanInFlight < current / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double target = current * gradient + Math.sqrt(current);
+        double next = current * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    int minLimit() { return minLimit; }
+    int maxLimit() { return maxLimit; }
+
+    double shortRttMillis() {
+        return shortRttNanos / 1_000_000;
+    }
+
+    double longRttMillis() {
+        return longRttNanos / 1_000_000;
+    }
+}
@@ -0,0 +1,50 @@
+package com.usersapi.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/concurrency}: the current adaptive limit, permits in use, latency averages behind the limit
+ * and shed requests per class. The same numbers are exported as {@code concurrency.*} metrics.
+ */
+@Component
+@Endpoint(id = "concurrency")
+public class ConcurrencyLimitEndpoint {
+
+    private final ObjectProvider<ConcurrencyLimitFilter> filter;
+
+    public ConcurrencyLimitEndpoint(ObjectProvider<ConcurrencyLimitFilter> filter) {
+        this.filter = filter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> concurrency() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        ConcurrencyLimitFilter limitFilter = filter.getIfAvailable();
+        result.put("enabled", limitFilter != null);
+        if (limitFilter == null) {
+            return result;
+        }
+        AdaptiveLimit limit = limitFilter.limit();
+        result.put("limit", limit.limit());
+        result.put("minLimit", limit.minLimit());
+        result.put("maxLimit", limit.maxLimit());
+        result.put("inFlight", limit.inFlight());
+        result.put("shortRttMillis", limit.shortRttMillis());
+        result.put("longRttMillis", limit.longRttMillis());
+        Map<String, Object> classes = new LinkedHashMap<>();
+        limitFilter.shares().forEach((requestClass, share) -> {
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("share", share);
+            description.put("shed", (long) limitFilter.shed().get(requestClass).count());
+            classes.put(ConcurrencyLimitFilter.className(requestClass), description);
+        });
+        result.put("classes", classes);
+        return result;
+    }
+}
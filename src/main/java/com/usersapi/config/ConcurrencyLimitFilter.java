@@ -0,0 +1,115 @@
+package com.usersapi.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usersapi.web.errors.Errors.ErrorResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Adaptive concurrency limit with load shedding for {@code /api/**}.
+ * <p>
+ * Runs after {@link RateLimitFilter}: the rate limiter keeps one client from hogging the server, this filter
+ * keeps the server as a whole from queueing more work than it can finish. Requests over the
+ * {@link AdaptiveLimit} are rejected right away with 503 and {@code Retry-After} instead of waiting in
+ * Tomcat's queue. Lower-priority classes may only use part of the limit, so under overload list scans and
+ * avatar uploads are shed first, then other reads and writes, and lock/unlock last.
+ * <p>
+ * Only cheap and critical requests feed latency samples into the limit: their latency reflects queueing,
+ * while the latency of a list scan mostly reflects its filter. The SSE stream is long-lived and bypasses the limit.
+ */
+@Component
+@Order(3)
+@ConditionalOnProperty(name = "concurrency.enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final AdaptiveLimit limit;
+    private final Map<RequestClass, Double> shares = new EnumMap<>(RequestClass.class);
+    private final Map<RequestClass, Counter> shed = new EnumMap<>(RequestClass.class);
+    private final ObjectMapper objectMapper;
+
+    public ConcurrencyLimitFilter(MeterRegistry meterRegistry, ObjectMapper objectMapper,
+                                  @Value("${concurrency.initial-limit:20}") int initialLimit,
+                                  @Value("${concurrency.min-limit:4}") int minLimit,
+                                  @Value("${concurrency.max-limit:200}") int maxLimit,
+                                  @Value("${concurrency.tolerance:1.5}") double tolerance,
+                                  @Value("${concurrency.share.cheap:0.9}") double cheapShare,
+                                  @Value("${concurrency.share.expensive:0.5}") double expensiveShare) {
+        this.objectMapper = objectMapper;
+        this.limit = new AdaptiveLimit(initialLimit, minLimit, maxLimit, tolerance);
+        shares.put(RequestClass.CRITICAL, 1.0);
+        shares.put(RequestClass.CHEAP, cheapShare);
+        shares.put(RequestClass.EXPENSIVE, expensiveShare);
+        for (RequestClass requestClass : RequestClass.values()) {
+            shed.put(requestClass, Counter.builder("concurrency.shed")
+                    .description("Requests rejected with 503 by the adaptive concurrency limit")
+                    .tag("class", className(requestClass))
+                    .register(meterRegistry));
+        }
+        Gauge.builder("concurrency.limit", limit, AdaptiveLimit::limit)
+                .description("Current adaptive concurrency limit for /api/**")
+                .register(meterRegistry);
+        Gauge.builder("concurrency.inflight", limit, AdaptiveLimit::inFlight)
+                .description("Requests to /api/** currently holding a concurrency permit")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return !uri.startsWith("/api/") || uri.endsWith("/users:stream");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        RequestClass requestClass = RequestClass.of(request);
+        if (!limit.tryAcquire(shares.get(requestClass))) {
+            shed.get(requestClass).increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", "1");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), new ErrorResponse("SERVICE_UNAVAILABLE",
+                    "Server is overloaded, " + className(requestClass) + " request shed, retry in 1s"));
+            return;
+        }
+
+        long started = System.nanoTime();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+        } finally {
+            if (completed && requestClass != RequestClass.EXPENSIVE) {
+                limit.release(System.nanoTime() - started);
+            } else {
+                limit.release();
+            }
+        }
+    }
+
+    static String className(RequestClass requestClass) {
+        return requestClass.name().toLowerCase(Locale.ROOT);
+    }
+
+    AdaptiveLimit limit() { return limit; }
+    Map<RequestClass, Double> shares() { return shares; }
+    Map<RequestClass, Counter> shed() { return shed; }
+}
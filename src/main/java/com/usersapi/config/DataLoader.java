@@ -3,17 +3,21 @@ package com.usersapi.config;
 import com.usersapi.model.Gender;
 import com.usersapi.model.Phone;
 import com.usersapi.model.User;
+import com.usersapi.repository.UserDirectory;
 import com.usersapi.repository.UserRepository;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 @Configuration
 public class DataLoader {
     @Bean
-    CommandLineRunner seed(UserRepository repo) {
+    CommandLineRunner seed(UserRepository repo, ObjectProvider<UserDirectory> directory) {
         return args -> {
-            if (repo.count() == 0) {
+            if (!repo.existsBy()) {
                 var firstUser = new User();
                 firstUser.setFirstName("Ivan");
                 firstUser.setLastName("Petrov");
@@ -30,6 +34,8 @@ public class DataLoader {
                 secondUser.setEmail("anna.ivanova@example.com");
                 secondUser.setGender(Gender.FEMALE);
 
+                // Saved past UserService: with shards the directory has to learn the emails here
+                directory.ifAvailable(d -> d.registerEmails(List.of(firstUser.getEmail(), secondUser.getEmail())));
                 repo.save(firstUser);
                 repo.save(secondUser);
             }
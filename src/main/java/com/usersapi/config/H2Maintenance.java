@@ -0,0 +1,47 @@
+package com.usersapi.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic {@code CHECKPOINT} of the file-backed database ({@code --spring.profiles.active=durable}).
+ * <p>
+ * H2 keeps recent changes in memory and writes them out after {@code WRITE_DELAY}; a checkpoint flushes them and
+ * marks a consistent point in the file, so after a crash the database opens from that point instead of replaying
+ * the whole tail. Space is reclaimed by the store itself: chunks filled below {@code AUTO_COMPACT_FILL_RATE} are
+ * rewritten in the background, and on close H2 compacts for up to {@code MAX_COMPACT_TIME}.
+ */
+@Component
+@ConditionalOnProperty(name = "datasource.durable.enabled", havingValue = "true")
+public class H2Maintenance {
+
+    private static final Logger logger = LoggerFactory.getLogger(H2Maintenance.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Timer checkpoints;
+
+    public H2Maintenance(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.checkpoints = Timer.builder("datasource.checkpoint")
+                .description("Time to flush the database file with CHECKPOINT")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${datasource.durable.checkpoint-interval:PT1M}",
+            fixedDelayString = "${datasource.durable.checkpoint-interval:PT1M}")
+    public void checkpoint() {
+        long started = System.nanoTime();
+        jdbcTemplate.execute("checkpoint");
+        long elapsed = System.nanoTime() - started;
+        checkpoints.record(elapsed, TimeUnit.NANOSECONDS);
+        logger.debug("Database checkpoint took {} ms", elapsed / 1_000_000);
+    }
+}
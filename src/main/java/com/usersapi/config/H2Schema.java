@@ -0,0 +1,47 @@
+package com.usersapi.config;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * Copies an H2 schema between databases with {@code SCRIPT NODATA}; used to set up replicas and shards
+ * from the database Hibernate created the schema in.
+ */
+final class H2Schema {
+
+    private H2Schema() {
+    }
+
+    /**
+     * Replaces everything in {@code target} with the tables, sequences, indexes and constraints of {@code source}
+     * that pass {@code filter}. Database users and script comments are never copied.
+     */
+    static void copy(DataSource source, DataSource target, Predicate<String> filter) throws SQLException {
+        List<String> ddl = new ArrayList<>();
+        try (Connection connection = source.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet script = statement.executeQuery("script nodata")) {
+            while (script.next()) {
+                String sql = script.getString(1);
+                String upper = sql.toUpperCase(Locale.ROOT);
+                if (!upper.startsWith("--") && !upper.startsWith("CREATE USER") && filter.test(upper)) {
+                    ddl.add(sql);
+                }
+            }
+        }
+        try (Connection connection = target.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+            for (String sql : ddl) {
+                statement.execute(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.usersapi.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usersapi.model.Gender;
+import com.usersapi.repository.MatchMode;
+import com.usersapi.service.UserReadCoalescer;
+import com.usersapi.service.UserService;
+import com.usersapi.web.dto.PageResponse;
+import com.usersapi.web.dto.UserResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * JIT warm-up before the instance takes traffic ({@code --spring.profiles.active=warmup}).
+ * <p>
+ * Once Boot reports the application ready (runners done, in-memory indexes built) a background thread runs rounds of
+ * read-only calls through the same beans the controller uses: {@code get} with and without the phone, {@code list}
+ * with each filter and match mode, facets and fuzzy search, each result serialized as the controller returns it
+ * ({@link PageResponse}, {@link UserResponse}). Rounds go on until compilation settles: the JIT spent at most
+ * {@code warmup.settle-ratio} of a round's time compiling, {@code warmup.settle-rounds} rounds in a row; or until
+ * {@code warmup.max-duration}.
+ * <p>
+ * As a health indicator it is {@code OUT_OF_SERVICE} while the warm-up runs; the {@code warmup} profile adds it to
+ * the readiness group, so {@code /actuator/health/readiness} turns {@code UP} only afterwards and reports the
+ * duration to authenticated callers (the endpoint is public, probes only need the status). A failed warm-up is
+ * reported by exception class alone; the message and stack trace go to the log. The controller itself is not
+ * called: it logs every list request at INFO.
+ */
+@Component
+@ConditionalOnProperty(name = "warmup.enabled", havingValue = "true")
+public class JitWarmUp implements HealthIndicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(JitWarmUp.class);
+
+    // Users whose fields feed the filters of every round
+    private static final int SAMPLE_SIZE = 20;
+    private static final int FILTER_SAMPLE_SIZE = 3;
+
+    private final UserReadCoalescer userReads;
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final Duration maxDuration;
+    private final int settleRounds;
+    private final double settleRatio;
+    private final CompilationMXBean compilation = ManagementFactory.getCompilationMXBean();
+    private final Timer durations;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile long startedAt;
+    private volatile Health result;
+
+    public JitWarmUp(UserReadCoalescer userReads, UserService userService, ObjectMapper objectMapper,
+                     MeterRegistry meterRegistry,
+                     @Value("${warmup.max-duration:PT60S}") Duration maxDuration,
+                     @Value("${warmup.settle-rounds:3}") int settleRounds,
+                     @Value("${warmup.settle-ratio:0.05}") double settleRatio) {
+        this.userReads = userReads;
+        this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.maxDuration = maxDuration;
+        this.settleRounds = settleRounds;
+        this.settleRatio = settleRatio;
+        this.durations = Timer.builder("warmup.duration")
+                .description("Time from readiness to the end of the JIT warm-up")
+                .register(meterRegistry);
+    }
+
+    // Published after the ApplicationReadyEvent listeners, so the warm-up sees the built indexes
+    @EventListener
+    public void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && started.compareAndSet(false, true)) {
+            Thread thread = new Thread(this::warmUp, "jit-warmup");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    @Override
+    public Health health() {
+        Health finished = result;
+        if (finished != null) {
+            return finished;
+        }
+        Health.Builder running = Health.outOfService().withDetail("state", started.get() ? "running" : "pending");
+        if (started.get()) {
+            running.withDetail("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        }
+        return running.build();
+    }
+
+    void warmUp() {
+        startedAt = System.nanoTime();
+        long deadline = startedAt + maxDuration.toNanos();
+        long compilationBefore = compilationMillis();
+        logger.info("JIT warm-up started, readiness is held until it finishes");
+        int rounds = 0;
+        long calls = 0;
+        int settled = 0;
+        String error = null;
+        try {
+            List<UserResponse> sample = userReads.list(null, null, null, null, null, null, MatchMode.CONTAINS,
+                    true, PageRequest.of(0, SAMPLE_SIZE, Sort.by("id").ascending())).getContent();
+            while (settled < settleRounds && System.nanoTime() < deadline) {
+                long roundStarted = System.nanoTime();
+                long compiledBefore = compilationMillis();
+                calls += round(sample);
+                rounds++;
+                long roundMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - roundStarted);
+                long compiledMillis = compilationMillis() - compiledBefore;
+                settled = compiledMillis <= roundMillis * settleRatio ? settled + 1 : 0;
+            }
+        } catch (JsonProcessingException | RuntimeException ex) {
+            // Readiness must not hang on a failed warm-up: the instance starts serving cold
+            logger.warn("JIT warm-up failed after {} rounds, continuing without it", rounds, ex);
+            error = ex.getClass().getSimpleName();
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        durations.record(elapsed, TimeUnit.NANOSECONDS);
+        boolean converged = error == null && settled >= settleRounds;
+        Health.Builder health = Health.up()
+                .withDetail("state", "finished")
+                .withDetail("durationMillis", TimeUnit.NANOSECONDS.toMillis(elapsed))
+                .withDetail("rounds", rounds)
+                .withDetail("calls", calls)
+                .withDetail("compilationMillis", compilationMillis() - compilationBefore)
+                .withDetail("settled", converged);
+        if (error != null) {
+            health.withDetail("error", error);
+        }
+        result = health.build();
+        logger.info("JIT warm-up finished in {} ms: {} rounds, {} calls, compilation {}",
+                TimeUnit.NANOSECONDS.toMillis(elapsed), rounds, calls,
+                converged ? "settled" : "still running at the limit");
+    }
+
+    private int round(List<UserResponse> sample) throws JsonProcessingException {
+        int calls = 0;
+        for (UserResponse user : sample) {
+            serialize(userReads.get(user.getId(), true));
+            serialize(userReads.get(user.getId(), false));
+            calls += 2;
+        }
+        Pageable byId = PageRequest.of(0, 10, Sort.by("id").ascending());
+        Pageable byName = PageRequest.of(0, 10, Sort.by("lastName", "firstName").ascending());
+        serialize(list(null, null, null, null, null, null, MatchMode.CONTAINS, true, byId));
+        serialize(list(null, null, null, null, null, null, MatchMode.CONTAINS, false, byName));
+        calls += 2;
+        for (Gender gender : Gender.values()) {
+            serialize(list(null, null, null, gender, null, null, MatchMode.CONTAINS, true, byId));
+            serialize(userService.facets(null, null, null, gender, null, null, MatchMode.CONTAINS));
+            calls += 2;
+        }
+        for (UserResponse user : sample.subList(0, Math.min(FILTER_SAMPLE_SIZE, sample.size()))) {
+            for (MatchMode match : MatchMode.values()) {
+                serialize(list(probe(user.getFirstName(), match), null, null, null, null, null, match, true, byId));
+                serialize(list(null, probe(user.getLastName(), match), null, null, null, null, match, true, byName));
+                calls += 2;
+            }
+            serialize(list(null, null, user.getEmail(), null, null, null, MatchMode.EXACT, true, byId));
+            serialize(userReads.fuzzyList(user.getFirstName(), null, true, PageRequest.of(0, 10)));
+            calls += 2;
+            if (user.getPhone() != null) {
+                String number = user.getPhone().getNumber();
+                serialize(list(null, null, null, null, user.getPhone().getBrand(), null,
+                        MatchMode.CONTAINS, true, byId));
+                serialize(list(null, null, null, null, null, number.substring(0, Math.min(4, number.length())),
+                        MatchMode.CONTAINS, true, byId));
+                serialize(userService.facets(null, null, null, null, user.getPhone().getBrand(), null,
+                        MatchMode.CONTAINS));
+                calls += 3;
+            }
+        }
+        return calls;
+    }
+
+    private PageResponse<UserResponse> list(String firstName, String lastName, String email, Gender gender,
+                                            String phoneBrand, String phoneNumber, MatchMode match,
+                                            boolean includePhone, Pageable pageable) {
+        Page<UserResponse> page = userReads.list(firstName, lastName, email, gender, phoneBrand, phoneNumber, match,
+                includePhone, pageable);
+        return new PageResponse<>(page);
+    }
+
+    // Part of the value as each mode would be used: a middle fragment, a beginning, the whole value
+    private static String probe(String value, MatchMode match) {
+        return switch (match) {
+            case CONTAINS -> value.length() > 2 ? value.substring(1, value.length() - 1) : value;
+            case PREFIX -> value.substring(0, Math.min(3, value.length()));
+            case EXACT -> value;
+        };
+    }
+
+    private void serialize(Object body) throws JsonProcessingException {
+        objectMapper.writeValueAsBytes(body);
+    }
+
+    private long compilationMillis() {
+        return compilation != null && compilation.isCompilationTimeMonitoringSupported()
+                ? compilation.getTotalCompilationTime()
+                : 0;
+    }
+}
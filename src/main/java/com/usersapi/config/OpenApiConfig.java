@@ -5,6 +5,7 @@ import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
 import io.swagger.v3.oas.annotations.info.Info;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
+import io.swagger.v3.oas.annotations.servers.Server;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
@@ -52,6 +53,9 @@ import org.springframework.context.annotation.Configuration;
             - POST /api/users/simulate-error (специальный эндпоинт для тестирования)
             """
         ),
+        // Relative to where the document is served: springdoc would otherwise put the requesting host into it,
+        // and the document generated at build time would carry the build's host and port
+        servers = { @Server(url = "/") },
         security = { @SecurityRequirement(name = "basicAuth") }
 )
 @SecurityScheme(
@@ -0,0 +1,66 @@
+package com.usersapi.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Compares the OpenAPI document packaged at build time with the one springdoc builds at runtime for this instance
+ * ({@code --openapi.precomputed.verify=true}, on a profile where springdoc is enabled, e.g. in staging).
+ * <p>
+ * Catches a stale document left in {@code target/classes} by an earlier {@code -Popenapi} build and controllers
+ * that only exist under some profiles. A mismatch fails startup, so a smoke run exits non-zero.
+ */
+@Component
+@ConditionalOnProperty(name = "openapi.precomputed.verify", havingValue = "true")
+public class OpenApiDocsCheck {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenApiDocsCheck.class);
+
+    private final boolean introspectionEnabled;
+
+    public OpenApiDocsCheck(@Value("${springdoc.api-docs.enabled:true}") boolean introspectionEnabled) {
+        this.introspectionEnabled = introspectionEnabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verify(ApplicationReadyEvent event) throws IOException {
+        if (!introspectionEnabled) {
+            logger.warn("OpenAPI check skipped: springdoc is disabled, /v3/api-docs already serves the packaged document");
+            return;
+        }
+        ClassPathResource resource = new ClassPathResource(PrecomputedOpenApiConfig.DOCUMENT);
+        if (!resource.exists()) {
+            logger.warn("OpenAPI check skipped: {} is not packaged, build with mvn -Popenapi package",
+                    PrecomputedOpenApiConfig.DOCUMENT);
+            return;
+        }
+        byte[] packaged;
+        try (InputStream in = resource.getInputStream()) {
+            packaged = in.readAllBytes();
+        }
+        int port = ((WebServerApplicationContext) event.getApplicationContext()).getWebServer().getPort();
+        byte[] runtime = RestClient.create().get()
+                .uri("http://localhost:" + port + "/v3/api-docs")
+                .retrieve()
+                .body(byte[].class);
+        int mismatch = Arrays.mismatch(packaged, runtime);
+        if (mismatch >= 0) {
+            throw new IllegalStateException("Packaged OpenAPI document (" + packaged.length + " bytes) differs from "
+                    + "the runtime one (" + runtime.length + " bytes) at byte " + mismatch
+                    + ": rebuild with mvn -Popenapi package");
+        }
+        logger.info("OpenAPI check passed: packaged document matches the runtime one ({} bytes)", packaged.length);
+    }
+}
@@ -0,0 +1,84 @@
+package com.usersapi.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.function.RouterFunction;
+import org.springframework.web.servlet.function.RouterFunctions;
+import org.springframework.web.servlet.function.ServerResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Properties;
+
+/**
+ * Serves the OpenAPI document generated at build time ({@code mvn -Popenapi package}) instead of letting springdoc
+ * introspect the controllers at runtime; enabled by {@code openapi.precomputed.enabled}, see the {@code prod} profile.
+ * <p>
+ * {@code /v3/api-docs} returns the packaged bytes as they are, with an ETag. With springdoc's api-docs turned off its
+ * Swagger UI goes too, so {@code /swagger-ui/**} is served straight from the swagger-ui webjar, with our
+ * {@code swagger-initializer.js} in front of the webjar's one to point the UI at {@code /v3/api-docs}.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "openapi.precomputed.enabled", havingValue = "true")
+public class PrecomputedOpenApiConfig implements WebMvcConfigurer {
+
+    static final String DOCUMENT = "openapi/openapi.json";
+
+    private static final String SWAGGER_UI_POM = "META-INF/maven/org.webjars/swagger-ui/pom.properties";
+
+    @Bean
+    RouterFunction<ServerResponse> precomputedApiDocs() {
+        byte[] document = read(DOCUMENT);
+        String etag = '"' + DigestUtils.md5DigestAsHex(document) + '"';
+        return RouterFunctions.route()
+                .GET("/v3/api-docs", request -> request.checkNotModified(etag)
+                        .orElseGet(() -> ServerResponse.ok()
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .eTag(etag)
+                                .body(document)))
+                .build();
+    }
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        registry.addResourceHandler("/swagger-ui/**")
+                .addResourceLocations("classpath:/openapi/swagger-ui/",
+                        "classpath:/META-INF/resources/webjars/swagger-ui/" + swaggerUiVersion() + "/");
+    }
+
+    @Override
+    public void addViewControllers(ViewControllerRegistry registry) {
+        registry.addRedirectViewController("/swagger-ui.html", "/swagger-ui/index.html");
+    }
+
+    private static byte[] read(String path) {
+        ClassPathResource resource = new ClassPathResource(path);
+        if (!resource.exists()) {
+            throw new IllegalStateException(
+                    "Precomputed OpenAPI document " + path + " is missing: build with mvn -Popenapi package");
+        }
+        try (InputStream in = resource.getInputStream()) {
+            return in.readAllBytes();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static String swaggerUiVersion() {
+        Properties pom = new Properties();
+        try (InputStream in = new ClassPathResource(SWAGGER_UI_POM).getInputStream()) {
+            pom.load(in);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not read the swagger-ui webjar version", ex);
+        }
+        return pom.getProperty("version");
+    }
+}
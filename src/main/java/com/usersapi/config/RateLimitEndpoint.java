@@ -0,0 +1,48 @@
+package com.usersapi.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/ratelimit}: budgets, tracked clients and the clients rejected most often per request class.
+ * Per-client counts cover clients that are currently throttled or recently active; totals are in the
+ * {@code ratelimit.rejected} metric.
+ */
+@Component
+@Endpoint(id = "ratelimit")
+public class RateLimitEndpoint {
+
+    private static final int TOP_CLIENTS = 20;
+
+    private final ObjectProvider<RateLimitFilter> filter;
+
+    public RateLimitEndpoint(ObjectProvider<RateLimitFilter> filter) {
+        this.filter = filter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> rateLimit() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        RateLimitFilter rateLimitFilter = filter.getIfAvailable();
+        result.put("enabled", rateLimitFilter != null);
+        if (rateLimitFilter != null) {
+            result.put("cheap", describe(rateLimitFilter.cheapBuckets()));
+            result.put("expensive", describe(rateLimitFilter.expensiveBuckets()));
+        }
+        return result;
+    }
+
+    private static Map<String, Object> describe(TokenBuckets buckets) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("ratePerSecond", buckets.ratePerSecond());
+        description.put("burst", buckets.burst());
+        description.put("trackedClients", buckets.size());
+        description.put("topRejected", buckets.topRejected(TOP_CLIENTS));
+        return description;
+    }
+}
@@ -0,0 +1,112 @@
+package com.usersapi.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usersapi.web.errors.Errors.ErrorResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-client token-bucket rate limiting for {@code /api/**}.
+ * <p>
+ * A plain servlet filter, not part of the Spring Security chain: it runs right after {@link TraceIdFilter}, and both
+ * are ordered behind the security filter ({@code spring.security.filter.order}, -100 by default), so the
+ * authenticated principal is already known; anonymous requests (public avatar downloads) are keyed by client IP.
+ * Expensive requests (filtered user list, avatar upload) draw from a separate, smaller budget than everything else.
+ * Rejected requests get 429 with {@code Retry-After} and never reach the database.
+ * <p>
+ * Requests that fail authentication are answered with 401 by Spring Security before they get here, so failed-credential
+ * traffic (password guessing, each attempt paying for a bcrypt check) is not throttled by this filter.
+ */
+@Component
+// Servlet filter order, behind the security filter chain
+@Order(2)
+@ConditionalOnProperty(name = "ratelimit.enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final TokenBuckets cheap;
+    private final TokenBuckets expensive;
+    private final Counter cheapRejected;
+    private final Counter expensiveRejected;
+    private final ObjectMapper objectMapper;
+
+    public RateLimitFilter(MeterRegistry meterRegistry, ObjectMapper objectMapper,
+                           @Value("${ratelimit.cheap.rate:50}") double cheapRate,
+                           @Value("${ratelimit.cheap.burst:100}") int cheapBurst,
+                           @Value("${ratelimit.expensive.rate:5}") double expensiveRate,
+                           @Value("${ratelimit.expensive.burst:10}") int expensiveBurst) {
+        this.objectMapper = objectMapper;
+        this.cheap = new TokenBuckets("cheap", cheapRate, cheapBurst);
+        this.expensive = new TokenBuckets("expensive", expensiveRate, expensiveBurst);
+        this.cheapRejected = rejectedCounter(meterRegistry, cheap);
+        this.expensiveRejected = rejectedCounter(meterRegistry, expensive);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, TokenBuckets buckets) {
+        return Counter.builder("ratelimit.rejected")
+                .description("Requests rejected with 429 by the per-client rate limiter")
+                .tag("class", buckets.name())
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        TokenBuckets buckets = RequestClass.of(request) == RequestClass.EXPENSIVE ? expensive : cheap;
+        long waitNanos = buckets.tryAcquire(clientKey(request), System.nanoTime());
+        if (waitNanos == 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        (buckets == expensive ? expensiveRejected : cheapRejected).increment();
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse("TOO_MANY_REQUESTS",
+                "Rate limit exceeded for " + buckets.name() + " requests, retry in " + retryAfterSeconds + "s"));
+    }
+
+    static String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return authentication.getName();
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    @Scheduled(fixedDelayString = "${ratelimit.eviction-interval:PT1M}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        cheap.evictIdle(now);
+        expensive.evictIdle(now);
+    }
+
+    TokenBuckets cheapBuckets() { return cheap; }
+    TokenBuckets expensiveBuckets() { return expensive; }
+}
@@ -0,0 +1,66 @@
+package com.usersapi.config;
+
+import com.usersapi.repository.ChangeSequence;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read/write splitting ({@code --spring.profiles.active=replicas}): the application data source becomes a
+ * {@link ReplicaRoutingDataSource} over the primary configured by {@code spring.datasource.*} and
+ * {@code datasource.replicas.count} replicas, which the {@link ReplicaReplicator} fills from the primary.
+ * <p>
+ * Replica URLs come from {@code datasource.replicas.url-template} with {@code {n}} replaced by the replica number;
+ * the default gives separate in-memory H2 databases, so the whole setup runs in one process.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "datasource.replicas.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    ReplicaSet replicaSet(DataSourceProperties properties,
+                          @Value("${datasource.replicas.count:2}") int count,
+                          @Value("${datasource.replicas.url-template:jdbc:h2:mem:users-replica-{n};DB_CLOSE_DELAY=-1}") String urlTemplate,
+                          @Value("${datasource.replicas.pool-size:10}") int poolSize,
+                          @Value("${datasource.replicas.connection-timeout:PT1S}") Duration connectionTimeout,
+                          @Value("${datasource.replicas.max-lag:PT2S}") Duration maxLag) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        List<ReplicaSet.Replica> replicas = new ArrayList<>();
+        for (int n = 1; n <= count; n++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + n);
+            replica.setJdbcUrl(urlTemplate.replace("{n}", Integer.toString(n)));
+            replica.setUsername(properties.determineUsername());
+            replica.setPassword(properties.determinePassword());
+            replica.setMaximumPoolSize(poolSize);
+            // A replica that does not answer quickly is failed over, not waited for
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            replicas.add(new ReplicaSet.Replica(replica.getPoolName(), replica));
+        }
+        return new ReplicaSet(primary, replicas, maxLag);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(ReplicaSet replicaSet) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(replicaSet));
+    }
+
+    @Bean
+    ReplicaReplicator replicaReplicator(ReplicaSet replicaSet, ChangeSequence changeSequence, MeterRegistry meterRegistry,
+                                        @Value("${datasource.replicas.batch-size:5000}") int batchSize) {
+        return new ReplicaReplicator(replicaSet, changeSequence, meterRegistry, batchSize);
+    }
+}
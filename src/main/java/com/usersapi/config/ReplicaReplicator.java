@@ -0,0 +1,233 @@
+package com.usersapi.config;
+
+import com.usersapi.repository.ChangeSequence;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the replicas of a {@link ReplicaSet} up to date by shipping committed changes from the primary.
+ * <p>
+ * Every poll takes the primary change watermark (see {@link ChangeSequence#watermark()}) and copies the users rows
+ * with a {@code change_seq} between the replica's applied position and the watermark, their phones, and deletions
+ * from {@code user_tombstones}, in one transaction per batch. A replica that has applied everything up to the
+ * watermark counts as caught up; the router uses that time to judge replica lag.
+ * <p>
+ * A fresh or failed replica is rebuilt from scratch: the primary schema is copied without constraints that only
+ * the primary has to enforce (unique keys, foreign keys), then all rows are shipped. Any error takes the replica
+ * out of service until a rebuild succeeds.
+ */
+public class ReplicaReplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaReplicator.class);
+
+    private final ReplicaSet replicaSet;
+    private final ChangeSequence changeSequence;
+    private final int batchSize;
+
+    public ReplicaReplicator(ReplicaSet replicaSet, ChangeSequence changeSequence, MeterRegistry meterRegistry,
+                             int batchSize) {
+        this.replicaSet = replicaSet;
+        this.changeSequence = changeSequence;
+        this.batchSize = batchSize;
+        for (ReplicaSet.Replica replica : replicaSet.replicas()) {
+            Gauge.builder("datasource.replica.lag", replica, this::lagChanges)
+                    .description("Changes committed on the primary but not yet applied by the replica")
+                    .tag("replica", replica.name())
+                    .register(meterRegistry);
+            Gauge.builder("datasource.replica.healthy", replica, r -> r.healthy() && r.online() ? 1 : 0)
+                    .description("1 while the replica may serve reads")
+                    .tag("replica", replica.name())
+                    .register(meterRegistry);
+            FunctionCounter.builder("datasource.reads", replica, ReplicaSet.Replica::reads)
+                    .description("Read-only transactions by the database that served them")
+                    .tag("target", replica.name())
+                    .tag("reason", "replica")
+                    .register(meterRegistry);
+        }
+        replicaSet.primaryReads().forEach((reason, count) ->
+                FunctionCounter.builder("datasource.reads", count, c -> c.sum())
+                        .description("Read-only transactions by the database that served them")
+                        .tag("target", "primary")
+                        .tag("reason", reason)
+                        .register(meterRegistry));
+    }
+
+    /** Changes the replica is behind the primary watermark, -1 while it has no data. */
+    long lagChanges(ReplicaSet.Replica replica) {
+        long applied = replica.appliedSeq();
+        return applied < 0 ? -1 : Math.max(0, changeSequence.watermark() - applied);
+    }
+
+    @Scheduled(initialDelayString = "${datasource.replicas.poll-interval:PT0.2S}",
+            fixedDelayString = "${datasource.replicas.poll-interval:PT0.2S}")
+    public void replicate() {
+        for (ReplicaSet.Replica replica : replicaSet.replicas()) {
+            if (!replica.online()) {
+                continue;
+            }
+            try {
+                catchUp(replica);
+            } catch (SQLException | RuntimeException ex) {
+                replicaSet.failed(replica, ex);
+            }
+        }
+    }
+
+    private void catchUp(ReplicaSet.Replica replica) throws SQLException {
+        long upTo = changeSequence.watermark();
+        long from = replica.appliedSeq();
+        if (from < 0) {
+            long started = System.nanoTime();
+            copySchema(replica);
+            from = 0;
+            logger.info("Replica {} schema copied in {} ms, shipping rows up to change {}",
+                    replica.name(), (System.nanoTime() - started) / 1_000_000, upTo);
+        }
+        while (true) {
+            long batchEnd = from < upTo ? ship(replica, from, upTo) : upTo;
+            replica.applied(batchEnd, batchEnd == upTo);
+            if (batchEnd == upTo) {
+                return;
+            }
+            from = batchEnd;
+        }
+    }
+
+    // Ships changes in (from, upTo], at most batchSize users; returns the change number the replica has reached
+    private long ship(ReplicaSet.Replica replica, long from, long upTo) throws SQLException {
+        long batchEnd = upTo;
+        List<Object[]> phones;
+        List<Object[]> users;
+        List<Integer> deleted = new ArrayList<>();
+        List<String> phoneColumns = new ArrayList<>();
+        List<String> userColumns = new ArrayList<>();
+        try (Connection primary = replicaSet.primary().getConnection()) {
+            primary.setReadOnly(true);
+            primary.setAutoCommit(false);
+            // One snapshot for users, phones and tombstones: a phone always matches the users row shipped with it
+            primary.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try {
+                try (PreparedStatement statement = primary.prepareStatement(
+                        "select change_seq from users where change_seq > ? and change_seq <= ? "
+                                + "order by change_seq offset ? rows fetch next 1 row only")) {
+                    statement.setLong(1, from);
+                    statement.setLong(2, upTo);
+                    statement.setInt(3, batchSize - 1);
+                    try (ResultSet rows = statement.executeQuery()) {
+                        if (rows.next()) {
+                            batchEnd = rows.getLong(1);
+                        }
+                    }
+                }
+                phones = select(primary, "select p.* from phones p join users u on u.phone_id = p.id "
+                        + "where u.change_seq > ? and u.change_seq <= ?", from, batchEnd, phoneColumns);
+                users = select(primary, "select * from users where change_seq > ? and change_seq <= ? order by change_seq",
+                        from, batchEnd, userColumns);
+                try (PreparedStatement statement = primary.prepareStatement(
+                        "select user_id from user_tombstones where change_seq > ? and change_seq <= ?")) {
+                    statement.setLong(1, from);
+                    statement.setLong(2, batchEnd);
+                    try (ResultSet rows = statement.executeQuery()) {
+                        while (rows.next()) {
+                            deleted.add(rows.getInt(1));
+                        }
+                    }
+                }
+            } finally {
+                primary.rollback();
+            }
+        }
+
+        try (Connection target = replica.dataSource().getConnection()) {
+            target.setAutoCommit(false);
+            try {
+                merge(target, "phones", phoneColumns, phones);
+                merge(target, "users", userColumns, users);
+                delete(target, deleted);
+                target.commit();
+            } catch (SQLException | RuntimeException ex) {
+                target.rollback();
+                throw ex;
+            }
+        }
+        return batchEnd;
+    }
+
+    private static List<Object[]> select(Connection connection, String sql, long from, long to, List<String> columns)
+            throws SQLException {
+        List<Object[]> result = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, from);
+            statement.setLong(2, to);
+            try (ResultSet rows = statement.executeQuery()) {
+                ResultSetMetaData metaData = rows.getMetaData();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    columns.add(metaData.getColumnName(i));
+                }
+                while (rows.next()) {
+                    Object[] row = new Object[columns.size()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rows.getObject(i + 1);
+                    }
+                    result.add(row);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void merge(Connection connection, String table, List<String> columns, List<Object[]> rows)
+            throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        String sql = "merge into " + table + " (" + String.join(", ", columns) + ") key (id) values ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    statement.setObject(i + 1, row[i]);
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void delete(Connection connection, List<Integer> userIds) throws SQLException {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement phones = connection.prepareStatement(
+                "delete from phones where id = (select phone_id from users where id = ?)");
+             PreparedStatement users = connection.prepareStatement("delete from users where id = ?")) {
+            for (Integer id : userIds) {
+                phones.setInt(1, id);
+                phones.addBatch();
+                users.setInt(1, id);
+                users.addBatch();
+            }
+            phones.executeBatch();
+            users.executeBatch();
+        }
+    }
+
+    private void copySchema(ReplicaSet.Replica replica) throws SQLException {
+        // Uniqueness and references are enforced by the primary; a replica applies whole rows in change order
+        H2Schema.copy(replicaSet.primary(), replica.dataSource(),
+                sql -> !sql.contains("FOREIGN KEY") && !sql.contains("UNIQUE"));
+    }
+}
@@ -0,0 +1,52 @@
+package com.usersapi.config;
+
+import com.usersapi.repository.ReplicaReads;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Sends read-only transactions of API requests to a replica from the {@link ReplicaSet} and everything else
+ * to the primary.
+ * <p>
+ * The decision is made when a connection is requested, so this data source has to sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the transaction manager asks for a
+ * connection before the read-only flag of the new transaction is published, the proxy defers that until the first
+ * statement. A replica that fails to hand out a connection is taken out of service and the read goes to the primary.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final ReplicaSet replicaSet;
+
+    public ReplicaRoutingDataSource(ReplicaSet replicaSet) {
+        this.replicaSet = replicaSet;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        ReplicaSet.Replica replica = route();
+        if (replica != null) {
+            try {
+                return replica.dataSource().getConnection();
+            } catch (SQLException ex) {
+                replicaSet.failed(replica, ex);
+            }
+        }
+        return replicaSet.primary().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return replicaSet.primary().getConnection(username, password);
+    }
+
+    private ReplicaSet.Replica route() {
+        Long minSeq = ReplicaReads.minSeq();
+        if (minSeq == null || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return null;
+        }
+        return replicaSet.choose(minSeq);
+    }
+}
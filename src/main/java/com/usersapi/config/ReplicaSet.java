@@ -0,0 +1,176 @@
+package com.usersapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The primary database and its read replicas, with the replication state the router needs.
+ * <p>
+ * A replica serves reads only while it is healthy, online and fresh: it has applied everything up to the primary
+ * watermark within the last {@code maxLag}. Reads that must see a client's own write additionally need the replica
+ * to have applied that write's change number. Among eligible replicas reads are spread round-robin.
+ */
+public class ReplicaSet implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaSet.class);
+
+    // Why a read-only transaction went to the primary
+    static final String READ_YOUR_WRITES = "read-your-writes";
+    static final String LAGGING = "lagging";
+    static final String UNAVAILABLE = "unavailable";
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<String, LongAdder> primaryReads = new LinkedHashMap<>();
+
+    public ReplicaSet(HikariDataSource primary, List<Replica> replicas, Duration maxLag) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.maxLagNanos = maxLag.toNanos();
+        for (String reason : List.of(READ_YOUR_WRITES, LAGGING, UNAVAILABLE)) {
+            primaryReads.put(reason, new LongAdder());
+        }
+    }
+
+    public static final class Replica {
+        private final String name;
+        private final HikariDataSource dataSource;
+        private final LongAdder reads = new LongAdder();
+        // -1: schema and data have to be copied from scratch
+        private volatile long appliedSeq = -1;
+        // System.nanoTime() when the replica last reached the primary watermark; 0: never or since it went down
+        private volatile long caughtUpAt;
+        private volatile boolean healthy = true;
+        private volatile boolean online = true;
+        private volatile String lastError;
+
+        public Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public String name() { return name; }
+        public DataSource dataSource() { return dataSource; }
+        public long appliedSeq() { return appliedSeq; }
+        public boolean healthy() { return healthy; }
+        public boolean online() { return online; }
+        public String lastError() { return lastError; }
+        public long reads() { return reads.sum(); }
+
+        /** Milliseconds since the replica was last caught up with the primary, -1 if it is not caught up yet. */
+        public long lagMillis() {
+            long at = caughtUpAt;
+            return at == 0 ? -1 : Duration.ofNanos(System.nanoTime() - at).toMillis();
+        }
+
+        void applied(long seq, boolean caughtUp) {
+            appliedSeq = seq;
+            if (caughtUp) {
+                caughtUpAt = System.nanoTime();
+            }
+            if (!healthy) {
+                healthy = true;
+                lastError = null;
+                logger.info("Replica {} is back in service at change {}", name, seq);
+            }
+        }
+
+        void failed(Throwable error) {
+            // After a failure the replica's contents are unknown: it is rebuilt before serving reads again
+            appliedSeq = -1;
+            caughtUpAt = 0;
+            lastError = error.toString();
+            if (healthy) {
+                healthy = false;
+                logger.warn("Replica {} taken out of service: {}", name, error.toString());
+            }
+        }
+    }
+
+    public DataSource primary() {
+        return primary;
+    }
+
+    public List<Replica> replicas() {
+        return replicas;
+    }
+
+    /**
+     * A replica for a read that must include change {@code minSeq}, or null to read the primary; reason
+     * is counted in {@link #primaryReads()}.
+     */
+    Replica choose(long minSeq) {
+        long now = System.nanoTime();
+        boolean behindClient = false;
+        boolean lagging = false;
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.healthy || !replica.online || replica.appliedSeq < 0) {
+                continue;
+            }
+            long caughtUpAt = replica.caughtUpAt;
+            if (caughtUpAt == 0 || now - caughtUpAt > maxLagNanos) {
+                lagging = true;
+            } else if (replica.appliedSeq < minSeq) {
+                behindClient = true;
+            } else {
+                replica.reads.increment();
+                return replica;
+            }
+        }
+        primaryReads.get(behindClient ? READ_YOUR_WRITES : lagging ? LAGGING : UNAVAILABLE).increment();
+        return null;
+    }
+
+    /** Smallest change number applied by every replica that may serve reads, -1 if none may. */
+    long minAppliedSeq() {
+        long min = Long.MAX_VALUE;
+        for (Replica replica : replicas) {
+            if (replica.healthy && replica.online && replica.appliedSeq >= 0) {
+                min = Math.min(min, replica.appliedSeq);
+            }
+        }
+        return min == Long.MAX_VALUE ? -1 : min;
+    }
+
+    void failed(Replica replica, Throwable error) {
+        replica.failed(error);
+    }
+
+    /** Takes a replica out of routing and replication (or back); it catches up before serving reads again. */
+    void setOnline(Replica replica, boolean online) {
+        if (replica.online != online) {
+            replica.caughtUpAt = 0;
+            replica.online = online;
+            logger.info("Replica {} set {}", replica.name, online ? "online" : "offline");
+        }
+    }
+
+    Replica replica(String name) {
+        return replicas.stream().filter(replica -> replica.name.equals(name)).findFirst().orElse(null);
+    }
+
+    /** Read-only transactions sent to the primary, by reason. */
+    Map<String, LongAdder> primaryReads() {
+        return primaryReads;
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(replica -> replica.dataSource.close());
+        primary.close();
+    }
+}
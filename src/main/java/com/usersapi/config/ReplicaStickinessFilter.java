@@ -0,0 +1,76 @@
+package com.usersapi.config;
+
+import com.usersapi.repository.ChangeSequence;
+import com.usersapi.repository.ReplicaReads;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets read-only transactions of {@code /api/**} requests use replicas, with read-your-writes per client.
+ * <p>
+ * After a client's mutating request the filter remembers the highest change number handed out so far; the client's
+ * reads may then only go to replicas that have applied it (see {@link ReplicaReads}). Other clients are unaffected.
+ * The entry is dropped once every replica in service has caught up past it. Clients are keyed the same way as
+ * in {@link RateLimitFilter}.
+ */
+@Component
+@Order(4)
+@ConditionalOnProperty(name = "datasource.replicas.enabled", havingValue = "true")
+public class ReplicaStickinessFilter extends OncePerRequestFilter {
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final ReplicaSet replicaSet;
+    private final ChangeSequence changeSequence;
+    private final ConcurrentHashMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    public ReplicaStickinessFilter(ReplicaSet replicaSet, ChangeSequence changeSequence) {
+        this.replicaSet = replicaSet;
+        this.changeSequence = changeSequence;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        String client = RateLimitFilter.clientKey(request);
+        ReplicaReads.allow(lastWrites.getOrDefault(client, 0L));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaReads.clear();
+            // Failed writes are remembered as well: the client is sent to the primary a little longer, nothing more
+            if (!SAFE_METHODS.contains(request.getMethod())) {
+                lastWrites.merge(client, changeSequence.lastAllocated(), Math::max);
+            }
+        }
+    }
+
+    int stickyClients() {
+        return lastWrites.size();
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replicas.sticky-cleanup-interval:PT10S}")
+    public void forgetReplicatedWrites() {
+        long applied = replicaSet.minAppliedSeq();
+        if (applied >= 0) {
+            lastWrites.values().removeIf(seq -> seq <= applied);
+        }
+    }
+}
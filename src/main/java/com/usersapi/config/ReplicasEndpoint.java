@@ -0,0 +1,79 @@
+package com.usersapi.config;
+
+import com.usersapi.repository.ChangeSequence;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/replicas}: replication position, lag and health of each read replica and where read-only
+ * transactions went. {@code POST /actuator/replicas/{name}} with {@code {"online": false}} takes a replica out of
+ * service (for maintenance or failover drills); with {@code true} it catches up and serves reads again.
+ */
+@Component
+@Endpoint(id = "replicas")
+public class ReplicasEndpoint {
+
+    private final ObjectProvider<ReplicaSet> replicaSet;
+    private final ObjectProvider<ReplicaReplicator> replicator;
+    private final ObjectProvider<ReplicaStickinessFilter> stickiness;
+    private final ChangeSequence changeSequence;
+
+    public ReplicasEndpoint(ObjectProvider<ReplicaSet> replicaSet, ObjectProvider<ReplicaReplicator> replicator,
+                            ObjectProvider<ReplicaStickinessFilter> stickiness, ChangeSequence changeSequence) {
+        this.replicaSet = replicaSet;
+        this.replicator = replicator;
+        this.stickiness = stickiness;
+        this.changeSequence = changeSequence;
+    }
+
+    @ReadOperation
+    public Map<String, Object> replicas() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        ReplicaSet replicas = replicaSet.getIfAvailable();
+        result.put("enabled", replicas != null);
+        if (replicas == null) {
+            return result;
+        }
+        result.put("primaryWatermark", changeSequence.watermark());
+        List<Map<String, Object>> descriptions = new ArrayList<>();
+        for (ReplicaSet.Replica replica : replicas.replicas()) {
+            Map<String, Object> description = new LinkedHashMap<>();
+            description.put("name", replica.name());
+            description.put("online", replica.online());
+            description.put("healthy", replica.healthy());
+            description.put("appliedSeq", replica.appliedSeq());
+            description.put("lagChanges", replicator.getObject().lagChanges(replica));
+            description.put("sinceCaughtUpMillis", replica.lagMillis());
+            description.put("reads", replica.reads());
+            description.put("lastError", replica.lastError());
+            descriptions.add(description);
+        }
+        result.put("replicas", descriptions);
+        Map<String, Object> primaryReads = new LinkedHashMap<>();
+        replicas.primaryReads().forEach((reason, count) -> primaryReads.put(reason, count.sum()));
+        result.put("primaryReads", primaryReads);
+        ReplicaStickinessFilter filter = stickiness.getIfAvailable();
+        result.put("stickyClients", filter != null ? filter.stickyClients() : 0);
+        return result;
+    }
+
+    @WriteOperation
+    public Map<String, Object> setOnline(@Selector String name, boolean online) {
+        ReplicaSet replicas = replicaSet.getIfAvailable();
+        ReplicaSet.Replica replica = replicas != null ? replicas.replica(name) : null;
+        if (replica == null) {
+            return null;
+        }
+        replicas.setOnline(replica, online);
+        return replicas();
+    }
+}
@@ -0,0 +1,41 @@
+package com.usersapi.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.List;
+
+/**
+ * Cost class of an {@code /api/**} request, shared by the rate limiter and the concurrency limiter.
+ */
+enum RequestClass {
+
+    /** Lock and unlock: short, and clients rely on them to get out of trouble. */
+    CRITICAL,
+    /** Lookups by id, writes of a single user and other bounded requests. */
+    CHEAP,
+    /** Filtered list scans, fuzzy search and avatar uploads. */
+    EXPENSIVE;
+
+    private static final List<String> LIST_FILTERS = List.of("firstName", "lastName", "email", "phoneBrand", "phoneNumber", "fuzzy");
+
+    // Substring filters and fuzzy search scan far more rows than a lookup by id; uploads hit the disk
+    static RequestClass of(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        String method = request.getMethod();
+        if ("POST".equals(method)) {
+            if (uri.endsWith("/lock") || uri.endsWith("/unlock")) {
+                return CRITICAL;
+            }
+            return uri.endsWith("/avatar") ? EXPENSIVE : CHEAP;
+        }
+        if (!"GET".equals(method) || !uri.equals("/api/v1/users")) {
+            return CHEAP;
+        }
+        for (String filter : LIST_FILTERS) {
+            if (request.getParameter(filter) != null) {
+                return EXPENSIVE;
+            }
+        }
+        return CHEAP;
+    }
+}
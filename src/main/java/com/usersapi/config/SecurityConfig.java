@@ -30,7 +30,7 @@ public class SecurityConfig {
                         // Swagger and H2 console
                         .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html", "/h2-console/**").permitAll()
                         // Actuator endpoints
-                        .requestMatchers("/actuator/health", "/actuator/info").permitAll()
+                        .requestMatchers("/actuator/health", "/actuator/health/**", "/actuator/info").permitAll()
                         .requestMatchers("/actuator/**").hasRole("ADMIN")
                         // File uploads
                         .requestMatchers(HttpMethod.POST, "/api/users/{id}/avatar").hasRole("ADMIN")
@@ -0,0 +1,97 @@
+package com.usersapi.config;
+
+import com.usersapi.repository.UserDirectory;
+import com.usersapi.repository.UserShards;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hash-sharded user storage ({@code --spring.profiles.active=shards}): the application data source becomes a
+ * {@link ShardRoutingDataSource} over {@code datasource.shards.count} databases, plus a directory database for
+ * email uniqueness and the change sequence (see {@link UserDirectory}).
+ * <p>
+ * Shard URLs come from {@code datasource.shards.url-template} with {@code {n}} replaced by the shard number;
+ * the default gives file-backed H2 databases under {@code ./data/shards}, so the whole setup runs in one process.
+ * Cannot be combined with the {@code replicas} profile: both replace the application data source.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "datasource.shards.enabled", havingValue = "true")
+public class ShardDataSourceConfig {
+
+    @Bean
+    ShardSet shardSet(DataSourceProperties properties, UserShards userShards,
+                      @Value("${datasource.shards.url-template:jdbc:h2:file:./data/shards/shard-{n}}") String urlTemplate,
+                      @Value("${datasource.shards.directory-url:jdbc:h2:file:./data/shards/directory}") String directoryUrl,
+                      @Value("${datasource.shards.pool-size:10}") int poolSize) {
+        List<HikariDataSource> shards = new ArrayList<>();
+        for (int n = 0; n < userShards.count(); n++) {
+            shards.add(pool("shard-" + n, urlTemplate.replace("{n}", Integer.toString(n)), properties, poolSize));
+        }
+        // The directory is written outside shard transactions, on its own connections: a separate pool,
+        // so a request holding a shard connection never waits for one the directory needs
+        return new ShardSet(shards, pool("shard-directory", directoryUrl, properties, poolSize));
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(ShardSet shardSet) {
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shardSet));
+    }
+
+    @Bean
+    UserDirectory userDirectory(ShardSet shardSet) {
+        return new UserDirectory(shardSet.directory(), shardSet.shards());
+    }
+
+    // Runs once Hibernate has created or updated the schema on shard 0, before the data loader writes anything
+    @Bean
+    SmartInitializingSingleton shardSchemaInitializer(ShardSet shardSet, UserDirectory userDirectory,
+                                                      EntityManagerFactory entityManagerFactory) {
+        return () -> {
+            try {
+                shardSet.prepareSchema();
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Could not prepare the shard schema", ex);
+            }
+            userDirectory.prepare();
+        };
+    }
+
+    // Outermost advice on UserService: the shard is chosen before the transaction starts
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static DefaultPointcutAdvisor shardRoutingAdvisor(ObjectProvider<UserShards> userShards) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                new ShardRoutingInterceptor.Pointcut(), new ShardRoutingInterceptor(userShards));
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+
+    private static HikariDataSource pool(String name, String url, DataSourceProperties properties, int poolSize) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(name);
+        pool.setJdbcUrl(url);
+        pool.setUsername(properties.determineUsername());
+        pool.setPassword(properties.determinePassword());
+        pool.setMaximumPoolSize(poolSize);
+        return pool;
+    }
+}
@@ -0,0 +1,35 @@
+package com.usersapi.config;
+
+import com.usersapi.repository.UserShards;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Hands out connections of the shard selected for the current thread (see {@link UserShards}), shard 0 when none is.
+ * <p>
+ * Like {@link ReplicaRoutingDataSource} it sits behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, so a transaction gets its connection
+ * at the first statement, after the service has selected the shard.
+ */
+public class ShardRoutingDataSource extends AbstractDataSource {
+
+    private final ShardSet shardSet;
+
+    public ShardRoutingDataSource(ShardSet shardSet) {
+        this.shardSet = shardSet;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Integer shard = UserShards.current();
+        return shardSet.shard(shard != null ? shard : 0).getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Integer shard = UserShards.current();
+        return shardSet.shard(shard != null ? shard : 0).getConnection(username, password);
+    }
+}
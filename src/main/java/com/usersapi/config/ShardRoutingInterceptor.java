@@ -0,0 +1,54 @@
+package com.usersapi.config;
+
+import com.usersapi.repository.UserShards;
+import com.usersapi.service.UserService;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+
+import java.lang.reflect.Method;
+
+/**
+ * Selects the shard for {@link UserService} calls that address one user: methods whose first argument is the user id
+ * go to the shard owning that id, {@code create} to the next shard in turn. Applied outside the transaction advice,
+ * so the whole transaction, including its commit, runs against that shard.
+ */
+public class ShardRoutingInterceptor implements MethodInterceptor {
+
+    // Resolved on first call: advisors are created before ordinary beans
+    private final ObjectProvider<UserShards> shards;
+
+    public ShardRoutingInterceptor(ObjectProvider<UserShards> shards) {
+        this.shards = shards;
+    }
+
+    static final class Pointcut extends StaticMethodMatcherPointcut {
+        @Override
+        public boolean matches(Method method, Class<?> targetClass) {
+            return UserService.class.isAssignableFrom(targetClass)
+                    && (method.getName().equals("create")
+                    || (method.getParameterCount() > 0 && method.getParameterTypes()[0] == Integer.class));
+        }
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Integer shard;
+        if (invocation.getMethod().getName().equals("create")) {
+            shard = shards.getObject().shardForCreate();
+        } else {
+            Object id = invocation.getArguments()[0];
+            shard = id != null ? shards.getObject().shardOf((Integer) id) : null;
+        }
+        if (shard == null) {
+            return invocation.proceed();
+        }
+        Integer previous = UserShards.select(shard);
+        try {
+            return invocation.proceed();
+        } finally {
+            UserShards.restore(previous);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.usersapi.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The user shards and the directory database of the {@code shards} profile.
+ * <p>
+ * Hibernate creates and updates the schema on shard 0 only (it is where connections go without a shard selected);
+ * {@link #prepareSchema()} copies that schema to shards that do not have it yet and interleaves the identity
+ * columns, so shard k hands out ids {@code k + 1 + N * i} for users and phones.
+ */
+public class ShardSet implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardSet.class);
+
+    // Tables whose ids must stay globally unique across shards
+    private static final List<String> INTERLEAVED_TABLES = List.of("users", "phones");
+
+    private final List<HikariDataSource> shards;
+    private final HikariDataSource directory;
+
+    public ShardSet(List<HikariDataSource> shards, HikariDataSource directory) {
+        this.shards = List.copyOf(shards);
+        this.directory = directory;
+    }
+
+    public List<HikariDataSource> shards() {
+        return shards;
+    }
+
+    public HikariDataSource shard(int shard) {
+        return shards.get(shard);
+    }
+
+    public HikariDataSource directory() {
+        return directory;
+    }
+
+    void prepareSchema() throws SQLException {
+        for (int shard = 1; shard < shards.size(); shard++) {
+            if (!hasUsersTable(shards.get(shard))) {
+                H2Schema.copy(shards.get(0), shards.get(shard), sql -> true);
+                logger.info("Schema copied from shard 0 to shard {}", shard);
+            }
+        }
+        for (int shard = 0; shard < shards.size(); shard++) {
+            JdbcTemplate jdbc = new JdbcTemplate(shards.get(shard));
+            for (String table : INTERLEAVED_TABLES) {
+                interleave(jdbc, table, shard);
+            }
+        }
+    }
+
+    // Identity of shard k: step N, next value the first k + 1 (mod N) above every id the shard has used
+    private void interleave(JdbcTemplate jdbc, String table, int shard) {
+        int count = shards.size();
+        Long increment = jdbc.queryForObject("select identity_increment from information_schema.columns "
+                + "where table_schema = 'PUBLIC' and table_name = ? and column_name = 'ID'", Long.class, table.toUpperCase(Locale.ROOT));
+        if (increment != null && increment == count) {
+            return;
+        }
+        Long base = jdbc.queryForObject("select identity_base from information_schema.columns "
+                + "where table_schema = 'PUBLIC' and table_name = ? and column_name = 'ID'", Long.class, table.toUpperCase(Locale.ROOT));
+        Long maxId = jdbc.queryForObject("select coalesce(max(id), 0) from " + table, Long.class);
+        long floor = Math.max(base != null ? base : 1, maxId + 1);
+        long next = floor + Math.floorMod(shard + 1 - floor, count);
+        jdbc.execute("alter table " + table + " alter column id restart with " + next);
+        jdbc.execute("alter table " + table + " alter column id set increment by " + count);
+        logger.info("Shard {}: {}.id continues at {} with step {}", shard, table, next, count);
+    }
+
+    private static boolean hasUsersTable(HikariDataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet tables = statement.executeQuery(
+                     "select count(*) from information_schema.tables where table_schema = 'PUBLIC' and table_name = 'USERS'")) {
+            return tables.next() && tables.getInt(1) > 0;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        shards.forEach(HikariDataSource::close);
+        directory.close();
+    }
+}
@@ -0,0 +1,91 @@
+package com.usersapi.config;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets keyed by client, implemented as GCRA (generic cell rate algorithm): each key keeps a single
+ * "theoretical arrival time" and a request is admitted by one CAS on it. No locks, no refill timers.
+ * <p>
+ * A bucket whose arrival time is in the past is full and behaves exactly like a missing one,
+ * so {@link #evictIdle(long)} can drop it at any time without changing decisions.
+ */
+final class TokenBuckets {
+
+    private final String name;
+    private final int burst;
+    private final double ratePerSecond;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    TokenBuckets(String name, double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate limit '" + name + "' needs a positive rate and burst");
+        }
+        this.name = name;
+        this.burst = burst;
+        this.ratePerSecond = ratePerSecond;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.toleranceNanos = intervalNanos * burst;
+    }
+
+    String name() { return name; }
+    int burst() { return burst; }
+    double ratePerSecond() { return ratePerSecond; }
+
+    /** 0 if the request is admitted, otherwise how long (ns) until one token is available for this key. */
+    long tryAcquire(String key, long nowNanos) {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(nowNanos));
+        }
+        for (;;) {
+            long tat = bucket.arrival.get();
+            long next = Math.max(tat, nowNanos) + intervalNanos;
+            long wait = next - nowNanos - toleranceNanos;
+            if (wait > 0) {
+                bucket.rejected.incrementAndGet();
+                return wait;
+            }
+            if (bucket.arrival.compareAndSet(tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Full buckets carry no state that affects decisions. Their per-key rejection counts go with them;
+    // cumulative totals per class stay in the ratelimit.rejected counter
+    int evictIdle(long nowNanos) {
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> bucket.arrival.get() < nowNanos);
+        return before - buckets.size();
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    Map<String, Long> topRejected(int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        buckets.entrySet().stream()
+                .filter(entry -> entry.getValue().rejected.get() > 0)
+                .sorted(Comparator.comparingLong((Map.Entry<String, Bucket> entry) -> entry.getValue().rejected.get()).reversed())
+                .limit(limit)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue().rejected.get()));
+        return top;
+    }
+
+    private static final class Bucket {
+        private final AtomicLong arrival;
+        private final AtomicLong rejected = new AtomicLong();
+
+        Bucket(long nowNanos) {
+            this.arrival = new AtomicLong(nowNanos);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.usersapi.config;
+
+import com.usersapi.service.UserReadModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/readmodel}: size and estimated memory of the in-memory list read model and the last
+ * consistency check against the database. {@code POST} runs the check now and rebuilds the model if it diverged.
+ */
+@Component
+@Endpoint(id = "readmodel")
+public class UserReadModelEndpoint {
+
+    private final ObjectProvider<UserReadModel> readModel;
+
+    public UserReadModelEndpoint(ObjectProvider<UserReadModel> readModel) {
+        this.readModel = readModel;
+    }
+
+    @ReadOperation
+    public Map<String, Object> readModel() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        UserReadModel model = readModel.getIfAvailable();
+        result.put("enabled", model != null);
+        if (model == null) {
+            return result;
+        }
+        int rows = model.rows();
+        long bytes = model.estimatedBytes();
+        result.put("ready", model.isReady());
+        result.put("rows", rows);
+        result.put("estimatedBytes", bytes);
+        result.put("bytesPerUser", rows > 0 ? bytes / rows : 0);
+        UserReadModel.Verification verification = model.lastVerification();
+        result.put("lastVerification", verification != null ? verification.toMap() : null);
+        return result;
+    }
+
+    @WriteOperation
+    public Map<String, Object> verify() {
+        UserReadModel model = readModel.getIfAvailable();
+        if (model == null) {
+            return Map.of("enabled", false);
+        }
+        return model.verifyAndRepair().toMap();
+    }
+}
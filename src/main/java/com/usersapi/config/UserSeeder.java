@@ -0,0 +1,352 @@
+package com.usersapi.config;
+
+import com.usersapi.model.Gender;
+import com.usersapi.model.PhoneNumbers;
+import com.usersapi.repository.ChangeSequence;
+import com.usersapi.repository.UserDirectory;
+import com.usersapi.repository.UserRepository;
+import com.usersapi.repository.UserShards;
+import com.usersapi.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Synthetic data for load and scale testing: {@code --seed.users=5000000} fills the database with that many users
+ * before the application reports ready.
+ * <p>
+ * User {@code i} is generated from {@code seed.random-seed} and {@code i} alone, so every environment seeded with the
+ * same settings holds the same data, whatever the number of workers. Names, genders and phone brands follow skewed
+ * distributions (a few very common values and a long tail) so that filters and facets see realistic selectivity;
+ * {@code seed.avatar-ratio} of the users get a small avatar file.
+ * <p>
+ * Users are written with batched JDBC in chunks of {@code seed.batch-size}, one transaction per chunk, on
+ * {@code seed.workers} threads. Each user still takes a number from the {@link ChangeSequence}, so the change feed and
+ * replicas see seeded users like any other write. A chunk whose last user already exists is skipped, so an
+ * interrupted run can be repeated to finish the job. Ids come from the database, so they match between environments
+ * only when seeded with a single worker.
+ * <p>
+ * Runs before {@link DataLoader}, so a seeded database does not get the two demo users.
+ */
+@Component
+@Order(0)
+public class UserSeeder implements CommandLineRunner, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSeeder.class);
+
+    private static final String[] FIRST_NAMES = {
+            "Ivan", "Anna", "Alexander", "Maria", "Dmitry", "Elena", "Sergey", "Olga", "Andrey", "Natalia",
+            "Alexey", "Tatiana", "Mikhail", "Irina", "Nikolai", "Svetlana", "Pavel", "Ekaterina", "Vladimir", "Yulia",
+            "Artem", "Daria", "Maxim", "Polina", "Roman", "Ksenia", "Egor", "Alina", "Kirill", "Sofia",
+            "John", "Emma", "Liam", "Olivia", "Noah", "Ava", "Lucas", "Mia", "Mateo", "Zoe"};
+    private static final String[] LAST_NAMES = {
+            "Ivanov", "Smirnov", "Kuznetsov", "Popov", "Vasiliev", "Petrov", "Sokolov", "Mikhailov", "Novikov",
+            "Fedorov", "Morozov", "Volkov", "Alekseev", "Lebedev", "Semenov", "Egorov", "Pavlov", "Kozlov", "Stepanov",
+            "Nikolaev", "Orlov", "Andreev", "Makarov", "Nikitin", "Zakharov", "Zaitsev", "Soloviev", "Borisov",
+            "Smith", "Johnson", "Garcia", "Muller", "Rossi", "Kowalski", "Nguyen", "Kim", "Tanaka", "Silva"};
+    // Brand shares in percent; the long tail is what makes brand filters selective
+    private static final String[] BRANDS = {"Samsung", "Apple", "Xiaomi", "Huawei", "realme", "Nokia", "Google", "OnePlus"};
+    private static final int[] BRAND_SHARES = {34, 30, 16, 8, 5, 3, 2, 2};
+    private static final int PHONE_PERCENT = 85;
+    private static final int OTHER_GENDER_PERCENT = 4;
+    // Smallest valid PNG (1x1, transparent)
+    private static final byte[] AVATAR = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0x0d, 'I', 'H', 'D', 'R', 0, 0, 0, 1, 0, 0, 0,
+            1, 8, 6, 0, 0, 0, 0x1f, 0x15, (byte) 0xc4, (byte) 0x89, 0, 0, 0, 0x0d, 'I', 'D', 'A', 'T', 0x78,
+            (byte) 0x9c, 0x63, 0, 1, 0, 0, 5, 0, 1, 0x0d, 0x0a, 0x2d, (byte) 0xb4, 0, 0, 0, 0, 'I', 'E', 'N', 'D',
+            (byte) 0xae, 0x42, 0x60, (byte) 0x82};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+    private final ChangeSequence changeSequence;
+    private final UserShards shards;
+    private final UserDirectory directory;
+    private final TransactionTemplate transaction;
+    private final Path avatarDirectory;
+    private final long users;
+    private final long randomSeed;
+    private final int batchSize;
+    private final int workers;
+    private final double avatarRatio;
+    // Set on shutdown: workers finish the chunk in hand and stop, so no transaction outlives the connection pool
+    private volatile boolean stopping;
+    private volatile ExecutorService running;
+
+    public UserSeeder(JdbcTemplate jdbcTemplate, UserRepository userRepository, ChangeSequence changeSequence,
+                      UserShards shards, ObjectProvider<UserDirectory> directory,
+                      PlatformTransactionManager transactionManager,
+                      @Value("${seed.users:0}") long users,
+                      @Value("${seed.random-seed:42}") long randomSeed,
+                      @Value("${seed.batch-size:1000}") int batchSize,
+                      @Value("${seed.workers:0}") int workers,
+                      @Value("${seed.avatar-ratio:0}") double avatarRatio) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userRepository = userRepository;
+        this.changeSequence = changeSequence;
+        this.shards = shards;
+        this.directory = directory.getIfAvailable();
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.avatarDirectory = Paths.get(UserService.AVATAR_DIR).toAbsolutePath().normalize();
+        this.users = users;
+        this.randomSeed = randomSeed;
+        this.batchSize = batchSize;
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.avatarRatio = avatarRatio;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        if (users <= 0) {
+            return;
+        }
+        if (avatarRatio > 0) {
+            Files.createDirectories(avatarDirectory);
+        }
+        long chunks = (users + batchSize - 1) / batchSize;
+        logger.info("Seeding {} users in {} chunks of {} on {} workers", users, chunks, batchSize, workers);
+
+        AtomicLong nextChunk = new AtomicLong();
+        AtomicLong inserted = new AtomicLong();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "user-seeder-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = executor;
+        long started = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int worker = 0; worker < workers; worker++) {
+                futures.add(executor.submit(() -> {
+                    for (long chunk = nextChunk.getAndIncrement(); chunk < chunks && !stopping;
+                         chunk = nextChunk.getAndIncrement()) {
+                        int rows = seedChunk(chunk);
+                        if (rows == 0) {
+                            skipped.incrementAndGet();
+                        }
+                        inserted.addAndGet(rows);
+                    }
+                    return null;
+                }));
+            }
+            executor.shutdown();
+            long reported = 0;
+            while (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                long rows = inserted.get();
+                logger.info("Seeded {} of {} users, {} rows/s", rows, users, perSecond(rows - reported, 5_000_000_000L));
+                reported = rows;
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            running = null;
+        }
+        if (stopping) {
+            logger.info("Seeding stopped at {} of {} users; run again with the same settings to continue",
+                    inserted.get(), users);
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        logger.info("Seeding finished: {} users inserted, {} chunks already present, {} s, {} rows/s",
+                inserted.get(), skipped.get(), elapsed / 1_000_000_000, perSecond(inserted.get(), elapsed));
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        stopping = true;
+        ExecutorService executor = running;
+        if (executor != null && !executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            logger.warn("Seeding workers did not stop within 30 s");
+        }
+    }
+
+    // Writes users [chunk * batchSize, ...) on the shard the chunk belongs to; 0 if the chunk is already there
+    private int seedChunk(long chunk) {
+        long from = chunk * batchSize;
+        long to = Math.min(users, from + batchSize);
+        List<SeedUser> batch = new ArrayList<>((int) (to - from));
+        for (long i = from; i < to; i++) {
+            batch.add(SeedUser.generate(randomSeed, i, avatarRatio));
+        }
+        // With shards the directory keeps emails unique; it has to know them before they reach a shard
+        if (directory != null) {
+            directory.registerEmails(batch.stream().map(user -> user.email).toList());
+        }
+        Integer rows = UserShards.on((int) (chunk % shards.count()), () -> transaction.execute(status -> {
+            if (userRepository.existsByEmail(batch.get(batch.size() - 1).email)) {
+                return 0;
+            }
+            insertPhones(batch);
+            for (SeedUser user : batch) {
+                user.changeSeq = changeSequence.next();
+                if (user.avatarFileName != null) {
+                    writeAvatar(user.avatarFileName);
+                }
+            }
+            insertUsers(batch);
+            return batch.size();
+        }));
+        return rows != null ? rows : 0;
+    }
+
+    private void insertPhones(List<SeedUser> batch) {
+        List<SeedUser> withPhone = batch.stream().filter(user -> user.phoneNumber != null).toList();
+        if (withPhone.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "insert into phones (number, number_digits, brand, brand_lc) values (?, ?, ?, ?)",
+                    new String[]{"id"})) {
+                for (SeedUser user : withPhone) {
+                    statement.setString(1, user.phoneNumber);
+                    statement.setString(2, PhoneNumbers.normalize(user.phoneNumber));
+                    statement.setString(3, user.phoneBrand);
+                    statement.setString(4, user.phoneBrand.toLowerCase(Locale.ROOT));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (SeedUser user : withPhone) {
+                        if (!keys.next()) {
+                            throw new SQLException("Phone ids were not returned for the whole batch");
+                        }
+                        user.phoneId = keys.getInt(1);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private void insertUsers(List<SeedUser> batch) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("insert into users (version, first_name, "
+                    + "last_name, email, gender, phone_id, first_name_lc, last_name_lc, change_seq, "
+                    + "avatar_file_name, avatar_content_type, avatar_file_size) "
+                    + "values (0, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (SeedUser user : batch) {
+                    statement.setString(1, user.firstName);
+                    statement.setString(2, user.lastName);
+                    statement.setString(3, user.email);
+                    statement.setString(4, user.gender.name());
+                    setNullable(statement, 5, user.phoneId, Types.INTEGER);
+                    statement.setString(6, user.firstName.toLowerCase(Locale.ROOT));
+                    statement.setString(7, user.lastName.toLowerCase(Locale.ROOT));
+                    statement.setLong(8, user.changeSeq);
+                    statement.setString(9, user.avatarFileName);
+                    statement.setString(10, user.avatarFileName != null ? "image/png" : null);
+                    setNullable(statement, 11, user.avatarFileName != null ? (long) AVATAR.length : null, Types.BIGINT);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    private static void setNullable(PreparedStatement statement, int index, Object value, int sqlType)
+            throws SQLException {
+        if (value == null) {
+            statement.setNull(index, sqlType);
+        } else {
+            statement.setObject(index, value, sqlType);
+        }
+    }
+
+    private void writeAvatar(String fileName) {
+        try {
+            Files.write(avatarDirectory.resolve(fileName), AVATAR);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static long perSecond(long rows, long nanos) {
+        return nanos > 0 ? rows * 1_000_000_000L / nanos : 0;
+    }
+
+    /** One generated user; the same index and seed always give the same user. */
+    static final class SeedUser {
+        String firstName;
+        String lastName;
+        String email;
+        Gender gender;
+        String phoneNumber;
+        String phoneBrand;
+        String avatarFileName;
+        Integer phoneId;
+        long changeSeq;
+
+        static SeedUser generate(long randomSeed, long index, double avatarRatio) {
+            SplittableRandom random = new SplittableRandom(randomSeed * 0x9E3779B97F4A7C15L + index);
+            SeedUser user = new SeedUser();
+            user.firstName = skewed(random, FIRST_NAMES);
+            user.lastName = skewed(random, LAST_NAMES);
+            // The index keeps emails unique; the names keep them realistic for substring search
+            user.email = (user.firstName + "." + user.lastName + "." + index + "@seed.example.com").toLowerCase(Locale.ROOT);
+            int genderRoll = random.nextInt(100);
+            user.gender = genderRoll < OTHER_GENDER_PERCENT ? Gender.OTHER
+                    : genderRoll % 2 == 0 ? Gender.MALE : Gender.FEMALE;
+            if (random.nextInt(100) < PHONE_PERCENT) {
+                user.phoneBrand = weighted(random, BRANDS, BRAND_SHARES);
+                user.phoneNumber = String.format(Locale.ROOT, "+7-9%02d-%03d-%02d-%02d",
+                        random.nextInt(100), random.nextInt(1000), random.nextInt(100), random.nextInt(100));
+            }
+            if (random.nextDouble() < avatarRatio) {
+                user.avatarFileName = "seed-" + index + ".png";
+            }
+            return user;
+        }
+
+        // Power-law pick: the first values are far more common than the last ones
+        private static String skewed(SplittableRandom random, String[] values) {
+            double u = random.nextDouble();
+            return values[(int) (values.length * u * u * u)];
+        }
+
+        private static String weighted(SplittableRandom random, String[] values, int[] shares) {
+            int roll = random.nextInt(100);
+            for (int i = 0; i < values.length; i++) {
+                roll -= shares[i];
+                if (roll < 0) {
+                    return values[i];
+                }
+            }
+            return values[values.length - 1];
+        }
+    }
+}
@@ -2,9 +2,19 @@ package com.usersapi.model;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import java.util.Locale;
 
 @Entity
-@Table(name = "phones")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "phones",
+        indexes = {
+                @Index(name = "idx_phones_number_digits", columnList = "number_digits"),
+                @Index(name = "idx_phones_brand_lc", columnList = "brand_lc")
+        })
 public class Phone {
 
     @Id
@@ -15,16 +25,32 @@ public class Phone {
     @Column(name = "number", nullable = false)
     private String number;
 
+    // Номер в канонической форме (только цифры) для индексного поиска
+    @Column(name = "number_digits", length = 20)
+    private String numberDigits;
+
     @Size(max = 50)
     @Column(name = "brand", nullable = false)
     private String brand;
 
+    @Column(name = "brand_lc", length = 50)
+    private String brandLc;
+
     public Integer getId() { return id; }
     public void setId(Integer id) { this.id = id; }
 
     public String getNumber() { return number; }
     public void setNumber(String number) { this.number = number; }
 
+    public String getNumberDigits() { return numberDigits; }
+
     public String getBrand() { return brand; }
     public void setBrand(String brand) { this.brand = brand; }
+
+    @PrePersist
+    @PreUpdate
+    void normalizeSearchColumns() {
+        this.numberDigits = PhoneNumbers.normalize(number);
+        this.brandLc = brand == null ? null : brand.toLowerCase(Locale.ROOT);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.usersapi.model;
+
+/**
+ * Разбор и нормализация телефонных номеров без регулярных выражений.
+ * <p>
+ * Каноническая форма — только цифры номера в том порядке, в каком они записаны, без "+" и разделителей:
+ * {@code +7-999-111-22-33} и {@code 7 (999) 111 22 33} оба дают {@code 79991112233}. Код страны и префиксы
+ * не приводятся к E.164: {@code 8 (999) 111-22-33} даёт {@code 89991112233}, и поиск по цифрам его с
+ * {@code +7 999...} не сопоставит.
+ * Проверка формата не выделяет память, нормализация возвращает исходную строку, если она уже каноническая.
+ */
+public final class PhoneNumbers {
+
+    private PhoneNumbers() {
+    }
+
+    /**
+     * Номер допустим, если он не пустой и содержит только цифры, '+', '-', скобки и пробельные символы
+     * (та же грамматика, что и у {@code @Pattern} в DTO телефона).
+     */
+    public static boolean isAcceptable(CharSequence number) {
+        if (number == null || number.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (!isDigit(c) && !isSeparator(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Каноническая форма номера: только цифры. Для {@code null} возвращает {@code null},
+     * для строки без цифр — пустую строку.
+     */
+    public static String normalize(String number) {
+        if (number == null) {
+            return null;
+        }
+        int length = number.length();
+        int digits = 0;
+        for (int i = 0; i < length; i++) {
+            if (isDigit(number.charAt(i))) {
+                digits++;
+            }
+        }
+        if (digits == length) {
+            return number;
+        }
+        if (digits == 0) {
+            return "";
+        }
+        char[] buffer = new char[digits];
+        int position = 0;
+        for (int i = 0; i < length; i++) {
+            char c = number.charAt(i);
+            if (isDigit(c)) {
+                buffer[position++] = c;
+            }
+        }
+        return new String(buffer);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '+' || c == '-' || c == '(' || c == ')'
+                || c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -1,19 +1,35 @@
 package com.usersapi.model;
 
+import com.usersapi.repository.ChangeSequenceListener;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import java.util.Locale;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@EntityListeners(ChangeSequenceListener.class)
+@NamedEntityGraph(name = User.WITH_PHONE, attributeNodes = @NamedAttributeNode("phone"))
 @Table(name = "users",
         indexes = {
                 @Index(name = "idx_users_email", columnList = "email", unique = true),
-                @Index(name = "idx_users_last_first", columnList = "last_name, first_name")
+                @Index(name = "idx_users_last_first", columnList = "last_name, first_name"),
+                @Index(name = "idx_users_last_first_lc", columnList = "last_name_lc, first_name_lc"),
+                @Index(name = "idx_users_first_lc", columnList = "first_name_lc"),
+                @Index(name = "idx_users_avatar_file_name", columnList = "avatar_file_name"),
+                @Index(name = "idx_users_change_seq", columnList = "change_seq")
         })
 public class User {
 
+    // Граф для сценариев, которым нужен телефон; остальные читают пользователя без join
+    public static final String WITH_PHONE = "User.phone";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
@@ -42,10 +58,21 @@ public class User {
     @Column(name = "gender", nullable = false)
     private Gender gender;
 
-    @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
+    @OneToOne(cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     @JoinColumn(name = "phone_id")
     private Phone phone;
 
+    // Нормализованные копии для регистронезависимого поиска по индексам
+    @Column(name = "first_name_lc", length = 100)
+    private String firstNameLc;
+
+    @Column(name = "last_name_lc", length = 100)
+    private String lastNameLc;
+
+    // Глобальный номер последнего изменения строки (см. ChangeSequence), для GET /users:changes
+    @Column(name = "change_seq")
+    private Long changeSeq;
+
     @Column(name = "avatar_file_name")
     private String avatarFileName;
 
@@ -55,7 +82,14 @@ public class User {
     @Column(name = "avatar_content_type")
     private String avatarContentType;
 
+    // Отметить изменение, не затрагивающее колонки users (например, телефона): строка станет «грязной»
+    // и при flush получит новые change_seq и version
+    public void markChanged() { this.changeSeq = null; }
+
     // Геттеры и сеттеры
+    public Long getChangeSeq() { return changeSeq; }
+    public void setChangeSeq(Long changeSeq) { this.changeSeq = changeSeq; }
+
     public Integer getId() { return id; }
     public void setId(Integer id) { this.id = id; }
 
@@ -85,4 +119,11 @@ public class User {
 
     public String getAvatarContentType() { return avatarContentType; }
     public void setAvatarContentType(String avatarContentType) { this.avatarContentType = avatarContentType; }
-}
\ No newline at end of file
+
+    @PrePersist
+    @PreUpdate
+    void normalizeSearchColumns() {
+        this.firstNameLc = firstName == null ? null : firstName.toLowerCase(Locale.ROOT);
+        this.lastNameLc = lastName == null ? null : lastName.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,51 @@
+package com.usersapi.model;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+// След удалённого пользователя для дельта-синхронизации (GET /api/v1/users:changes)
+@Entity
+@Table(name = "user_tombstones",
+        indexes = @Index(name = "idx_user_tombstones_change_seq", columnList = "change_seq"))
+public class UserTombstone implements Persistable<Integer> {
+
+    // id пользователей не переиспользуются (identity), поэтому он же ключ
+    @Id
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq;
+
+    @Column(name = "deleted_at", nullable = false)
+    private Instant deletedAt;
+
+    // Id назначается вручную, поэтому save() без этого флага делал бы merge с лишним SELECT перед INSERT
+    @Transient
+    private boolean isNew = true;
+
+    protected UserTombstone() {
+    }
+
+    public UserTombstone(Integer userId, Long changeSeq, Instant deletedAt) {
+        this.userId = userId;
+        this.changeSeq = changeSeq;
+        this.deletedAt = deletedAt;
+    }
+
+    @PostPersist
+    @PostLoad
+    void markNotNew() { this.isNew = false; }
+
+    @Override
+    public Integer getId() { return userId; }
+
+    @Override
+    public boolean isNew() { return isNew; }
+
+    public Integer getUserId() { return userId; }
+    public Long getChangeSeq() { return changeSeq; }
+    public Instant getDeletedAt() { return deletedAt; }
+}
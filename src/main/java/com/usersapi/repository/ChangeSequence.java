@@ -0,0 +1,98 @@
+package com.usersapi.repository;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Глобальный номер изменения для {@code users.change_seq} и {@code user_tombstones.change_seq}.
+ * <p>
+ * Номера берутся из последовательности H2 блоками по {@link #BLOCK_SIZE} и раздаются из памяти.
+ * Транзакции коммитятся не в порядке номеров, поэтому номер остаётся «в полёте» до завершения своей
+ * транзакции, а {@link #watermark()} не заходит за наименьший такой номер: всё, что не больше
+ * водяного знака, уже закоммичено или откачено, и клиент дельта-синхронизации ничего не пропустит.
+ * <p>
+ * С шардами последовательность одна на все шарды и живёт в каталоге ({@link UserDirectory}): номера блоков
+ * растут монотонно, какой бы шард ни писал.
+ */
+@Component
+public class ChangeSequence {
+
+    static final int BLOCK_SIZE = 50;
+
+    static final String COMMITTED_MAX_SQL = "select greatest(coalesce((select max(change_seq) from users), 0), "
+            + "coalesce((select max(change_seq) from user_tombstones), 0))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserDirectory directory;
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private long next;
+    private long blockEnd = -1;
+    // Наибольший выданный номер; -1 — в этом процессе ещё ничего не выдавалось
+    private volatile long allocatedMax = -1;
+
+    public ChangeSequence(JdbcTemplate jdbcTemplate, ObjectProvider<UserDirectory> directory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.directory = directory.getIfAvailable();
+        jdbcTemplate.execute("create sequence if not exists user_change_seq start with 1 increment by " + BLOCK_SIZE);
+    }
+
+    /** Следующий номер; вызывать внутри транзакции, в которой он будет записан. */
+    public long next() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Change sequence numbers must be taken inside a transaction");
+        }
+        long value;
+        synchronized (this) {
+            if (next > blockEnd) {
+                Long base = directory != null
+                        ? directory.nextChangeBlock()
+                        : jdbcTemplate.queryForObject("select next value for user_change_seq", Long.class);
+                next = base;
+                blockEnd = base + BLOCK_SIZE - 1;
+            }
+            value = next++;
+            // Сначала «в полёте», потом максимум — watermark() читает их в обратном порядке
+            inFlight.add(value);
+            allocatedMax = Math.max(allocatedMax, value);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                inFlight.remove(value);
+            }
+        });
+        return value;
+    }
+
+    /** Наибольший номер, до которого включительно все изменения уже видны читателям. */
+    public long watermark() {
+        long max = allocatedMax;
+        if (max < 0) {
+            max = committedMax();
+        }
+        Long lowestInFlight = inFlight.isEmpty() ? null : inFlight.first();
+        return lowestInFlight != null ? Math.min(max, lowestInFlight - 1) : max;
+    }
+
+    /**
+     * Наибольший выданный номер (-1 — в этом процессе ещё не выдавались): после коммита записи он не меньше
+     * её номера, поэтому реплика, применившая изменения до него, эту запись уже содержит.
+     */
+    public long lastAllocated() {
+        return allocatedMax;
+    }
+
+    // После рестарта с файловой базой: номера прошлых запусков уже в таблицах (с шардами — во всех шардах)
+    private long committedMax() {
+        if (directory != null) {
+            return directory.committedMaxChangeSeq();
+        }
+        Long max = jdbcTemplate.queryForObject(COMMITTED_MAX_SQL, Long.class);
+        return max != null ? max : 0;
+    }
+}
@@ -0,0 +1,25 @@
+package com.usersapi.repository;
+
+import com.usersapi.model.User;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+
+/**
+ * Проставляет {@code change_seq} при каждой вставке и изменении строки пользователя,
+ * включая записи в обход сервиса (DataLoader). Массовые JPQL-обновления сюда не попадают —
+ * они выставляют номер сами (см. {@link UserPatchRepository}).
+ */
+public class ChangeSequenceListener {
+
+    private final ChangeSequence changeSequence;
+
+    public ChangeSequenceListener(ChangeSequence changeSequence) {
+        this.changeSequence = changeSequence;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void assign(User user) {
+        user.setChangeSeq(changeSequence.next());
+    }
+}
@@ -0,0 +1,16 @@
+package com.usersapi.repository;
+
+/**
+ * Режим сравнения текстовых фильтров списка пользователей.
+ * Все режимы регистронезависимы и работают по нормализованным (lower-case) колонкам: для имён и бренда — по
+ * колонкам *_lc, для email — по самой колонке email, она хранится в нижнем регистре. PREFIX и EXACT используют
+ * индексы, CONTAINS остаётся полным сканированием.
+ * <p>
+ * Режим один на запрос и относится ко всем текстовым фильтрам: вместо отдельных параметров вида
+ * {@code firstNamePrefix} или {@code emailEquals} фильтр задаётся как {@code firstName=...&match=PREFIX}.
+ * Так шаблоны запроса списка, модель чтения и битовые индексы держат один режим, а не комбинацию режимов по полям;
+ * разные режимы для разных полей в одном запросе не поддерживаются.
+ */
+public enum MatchMode {
+    CONTAINS, PREFIX, EXACT
+}
@@ -0,0 +1,29 @@
+package com.usersapi.repository;
+
+/**
+ * Разрешение читать из реплик для текущего потока (профиль {@code replicas}).
+ * <p>
+ * Read-only транзакции уходят в реплику, только если поток обрабатывает запрос API и фильтр разрешил это
+ * вызовом {@link #allow(long)}; фоновые проходы по таблице (индексы, сверки) всегда читают основную БД.
+ * minSeq — номер последнего изменения этого клиента: реплика, не применившая его, не годится (read-your-writes).
+ */
+public final class ReplicaReads {
+
+    private static final ThreadLocal<Long> MIN_SEQ = new ThreadLocal<>();
+
+    private ReplicaReads() {
+    }
+
+    public static void allow(long minSeq) {
+        MIN_SEQ.set(minSeq);
+    }
+
+    public static void clear() {
+        MIN_SEQ.remove();
+    }
+
+    /** Наименьший номер изменения, который должна содержать реплика; null — читать только основную БД. */
+    public static Long minSeq() {
+        return MIN_SEQ.get();
+    }
+}
@@ -0,0 +1,188 @@
+package com.usersapi.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Каталог шардированного хранилища (профиль {@code shards}): отдельная БД с глобальным состоянием,
+ * которое нельзя держать в одном шарде, — уникальностью email и последовательностью номеров изменений.
+ * <p>
+ * Уникальный индекс шарда видит только свой шард, поэтому email резервируется в каталоге до записи в шард
+ * (первичный ключ — атомарная проверка на все шарды) и освобождается после коммита удаления или смены email.
+ * Каталог пишется своими соединениями вне транзакции шарда: резерв откатывается по исходу этой транзакции,
+ * а запись, оставшаяся после падения процесса, считается свободной, если email нет ни в одном шарде.
+ * <p>
+ * Записи в обход сервиса (DataLoader, UserSeeder) регистрируют свои email сами, через {@link #registerEmails}.
+ * Все email шардов переносятся в каталог только один раз, когда каталог новый: отметка об этом хранится в нём же.
+ */
+public class UserDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDirectory.class);
+
+    private static final int BATCH_SIZE = 1000;
+    private static final String EMAILS_REGISTERED = "emails-registered";
+
+    private final JdbcTemplate directory;
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+    // Email, резерв которых ждёт исхода транзакции в этом процессе
+    private final Set<String> reserving = ConcurrentHashMap.newKeySet();
+
+    public UserDirectory(DataSource directory, List<? extends DataSource> shards) {
+        this.directory = new JdbcTemplate(directory);
+        shards.forEach(shard -> this.shards.add(new JdbcTemplate(shard)));
+    }
+
+    /** Создаёт таблицы каталога; номера изменений продолжаются после наибольшего уже записанного в шарды. */
+    public void prepare() {
+        long committedMaxChangeSeq = committedMaxChangeSeq();
+        directory.execute("create table if not exists user_emails (email varchar(255) primary key)");
+        directory.execute("create table if not exists directory_markers (name varchar(64) primary key)");
+        directory.execute("create sequence if not exists user_change_seq start with 1 increment by "
+                + ChangeSequence.BLOCK_SIZE);
+        // Каталог мог быть пересоздан при живых шардах: последовательность не должна вернуться к выданным номерам
+        if (nextChangeBlock() <= committedMaxChangeSeq) {
+            directory.execute("alter sequence user_change_seq restart with " + (committedMaxChangeSeq + 1));
+        }
+    }
+
+    /** Наибольший номер изменения во всех шардах; читается соединениями шардов вне текущей транзакции. */
+    public long committedMaxChangeSeq() {
+        long max = 0;
+        for (JdbcTemplate shard : shards) {
+            Long shardMax = shard.queryForObject(ChangeSequence.COMMITTED_MAX_SQL, Long.class);
+            max = Math.max(max, shardMax != null ? shardMax : 0);
+        }
+        return max;
+    }
+
+    /** Начало следующего блока номеров изменений (см. {@link ChangeSequence}). */
+    public long nextChangeBlock() {
+        Long base = directory.queryForObject("select next value for user_change_seq", Long.class);
+        return base != null ? base : 0;
+    }
+
+    /**
+     * Резервирует email для записи в текущей транзакции шарда; false — email занят.
+     * Если транзакция не закоммитится, резерв снимается.
+     */
+    public boolean reserveEmail(String email) {
+        if (!reserving.add(email)) {
+            return false;
+        }
+        boolean reserved = false;
+        try {
+            try {
+                directory.update("insert into user_emails (email) values (?)", email);
+                reserved = true;
+            } catch (DuplicateKeyException ex) {
+                // Чужих незавершённых резервов в этом процессе нет (reserving): запись либо принадлежит
+                // существующему пользователю, либо осталась от упавшей транзакции
+                reserved = !existsInShards(email);
+            }
+        } finally {
+            if (!reserved) {
+                reserving.remove(email);
+            }
+        }
+        if (reserved) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    try {
+                        if (status != STATUS_COMMITTED) {
+                            directory.update("delete from user_emails where email = ?", email);
+                        }
+                    } finally {
+                        reserving.remove(email);
+                    }
+                }
+            });
+        }
+        return reserved;
+    }
+
+    /** Освобождает email после коммита текущей транзакции: пользователь удалён или сменил email. */
+    public void releaseEmailAfterCommit(String email) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                directory.update("delete from user_emails where email = ?", email);
+            }
+        });
+    }
+
+    /**
+     * Регистрирует email, которые пишутся в шарды в обход сервиса; вызывать до записи в шард. Запись,
+     * до шарда так и не дошедшая, считается свободной (см. {@link #reserveEmail}).
+     */
+    public void registerEmails(Collection<String> emails) {
+        List<Object[]> batch = new ArrayList<>(Math.min(emails.size(), BATCH_SIZE));
+        for (String email : emails) {
+            batch.add(new Object[]{email});
+            if (batch.size() == BATCH_SIZE) {
+                directory.batchUpdate("merge into user_emails key (email) values (?)", batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            directory.batchUpdate("merge into user_emails key (email) values (?)", batch);
+        }
+    }
+
+    // Новый каталог при живых шардах (или шарды от версии без регистрации в DataLoader/UserSeeder):
+    // email переносятся один раз, потоком, пачками
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerExistingEmails() {
+        Integer registered = directory.queryForObject("select count(*) from directory_markers where name = ?",
+                Integer.class, EMAILS_REGISTERED);
+        if (registered != null && registered > 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        long[] emails = {0};
+        for (JdbcTemplate shard : shards) {
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            shard.query(connection -> {
+                var statement = connection.prepareStatement("select email from users");
+                statement.setFetchSize(BATCH_SIZE);
+                return statement;
+            }, (RowCallbackHandler) row -> {
+                batch.add(row.getString(1));
+                if (batch.size() == BATCH_SIZE) {
+                    registerEmails(batch);
+                    emails[0] += batch.size();
+                    batch.clear();
+                }
+            });
+            registerEmails(batch);
+            emails[0] += batch.size();
+        }
+        directory.update("merge into directory_markers key (name) values (?)", EMAILS_REGISTERED);
+        logger.info("User directory registered {} existing emails from {} shards in {} ms",
+                emails[0], shards.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private boolean existsInShards(String email) {
+        for (JdbcTemplate shard : shards) {
+            Integer found = shard.queryForObject("select count(*) from users where email = ?", Integer.class, email);
+            if (found != null && found > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,84 @@
+package com.usersapi.repository;
+
+import com.usersapi.model.Gender;
+
+import java.util.Objects;
+
+/**
+ * Набор фильтров списка пользователей. Текстовые значения передаются как ввёл клиент,
+ * номер телефона — уже в канонической форме (см. PhoneNumbers.normalize).
+ */
+public final class UserListFilter {
+
+    static final int FIRST_NAME = 1;
+    static final int LAST_NAME = 1 << 1;
+    static final int EMAIL = 1 << 2;
+    static final int GENDER = 1 << 3;
+    static final int PHONE_BRAND = 1 << 4;
+    static final int PHONE_DIGITS = 1 << 5;
+    static final int COMBINATIONS = 1 << 6;
+
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final Gender gender;
+    private final String phoneBrand;
+    private final String phoneDigits;
+    private final MatchMode match;
+
+    public UserListFilter(String firstName, String lastName, String email, Gender gender,
+                          String phoneBrand, String phoneDigits, MatchMode match) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.gender = gender;
+        this.phoneBrand = phoneBrand;
+        this.phoneDigits = phoneDigits;
+        this.match = match != null ? match : MatchMode.CONTAINS;
+    }
+
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public String getEmail() { return email; }
+    public Gender getGender() { return gender; }
+    public String getPhoneBrand() { return phoneBrand; }
+    public String getPhoneDigits() { return phoneDigits; }
+    public MatchMode getMatch() { return match; }
+
+    // Битовая маска заданных фильтров: 2^6 комбинаций
+    int mask() {
+        int mask = 0;
+        if (firstName != null) mask |= FIRST_NAME;
+        if (lastName != null) mask |= LAST_NAME;
+        if (email != null) mask |= EMAIL;
+        if (gender != null) mask |= GENDER;
+        if (phoneBrand != null) mask |= PHONE_BRAND;
+        if (phoneDigits != null) mask |= PHONE_DIGITS;
+        return mask;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UserListFilter that)) return false;
+        return Objects.equals(firstName, that.firstName)
+                && Objects.equals(lastName, that.lastName)
+                && Objects.equals(email, that.email)
+                && gender == that.gender
+                && Objects.equals(phoneBrand, that.phoneBrand)
+                && Objects.equals(phoneDigits, that.phoneDigits)
+                && match == that.match;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(firstName, lastName, email, gender, phoneBrand, phoneDigits, match);
+    }
+
+    @Override
+    public String toString() {
+        return "UserListFilter{firstName=" + firstName + ", lastName=" + lastName + ", email=" + email
+                + ", gender=" + gender + ", phoneBrand=" + phoneBrand + ", phoneDigits=" + phoneDigits
+                + ", match=" + match + "}";
+    }
+}
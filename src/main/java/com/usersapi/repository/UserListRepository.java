@@ -0,0 +1,24 @@
+package com.usersapi.repository;
+
+import com.usersapi.model.User;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+public interface UserListRepository {
+    // includePhone — подтянуть телефон тем же запросом (fetch join); иначе связь не трогается
+    Page<User> findPage(UserListFilter filter, boolean includePhone, Pageable pageable);
+
+    // Все id, подходящие под фильтр, без загрузки сущностей (для фасетов)
+    List<Integer> findIds(UserListFilter filter);
+
+    // Поля строки в findSortKeys, по порядку
+    List<String> SORT_KEYS = List.of("id", "firstName", "lastName", "email", "gender");
+
+    // Первые limit строк в порядке sort как значения SORT_KEYS, без сущностей: по ним сливаются страницы шардов
+    List<Object[]> findSortKeys(UserListFilter filter, Sort sort, int limit);
+
+    long count(UserListFilter filter);
+}
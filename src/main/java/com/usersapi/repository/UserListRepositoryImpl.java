@@ -0,0 +1,233 @@
+package com.usersapi.repository;
+
+import com.usersapi.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Список пользователей по заранее собранным JPQL-шаблонам.
+ * <p>
+ * Для каждой комбинации заданных фильтров (2^6), режима сравнения и признака «с телефоном» текст запроса строится один раз
+ * и дальше переиспользуется, поэтому Hibernate берёт разобранный запрос и SQL из своего кэша планов,
+ * а не строит Criteria-дерево на каждый вызов. Телефон подтягивается одним fetch join (или join без fetch,
+ * если телефон нужен только для фильтра), который используют оба телефонных фильтра; связь один-к-одному,
+ * поэтому DISTINCT не нужен.
+ */
+public class UserListRepositoryImpl implements UserListRepository {
+
+    private static final Set<String> SORTABLE = Set.copyOf(SORT_KEYS);
+    private static final int MAX_ORDERINGS_PER_TEMPLATE = 64;
+    private static final char LIKE_ESCAPE = '\\';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final AtomicReferenceArray<Template> templates =
+            new AtomicReferenceArray<>(UserListFilter.COMBINATIONS * MatchMode.values().length * 2);
+    private final Counter templateHits;
+    private final Counter templateMisses;
+
+    public UserListRepositoryImpl(MeterRegistry meterRegistry) {
+        this.templateHits = Counter.builder("users.list.templates")
+                .description("List query template cache lookups")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.templateMisses = Counter.builder("users.list.templates")
+                .description("List query template cache lookups")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Page<User> findPage(UserListFilter filter, boolean includePhone, Pageable pageable) {
+        Template template = template(filter, includePhone);
+
+        TypedQuery<User> query = entityManager.createQuery(template.select(pageable.getSort()), User.class);
+        bind(query, template.mask, filter);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        List<User> content = query.getResultList();
+
+        return PageableExecutionUtils.getPage(content, pageable, () -> {
+            TypedQuery<Long> count = entityManager.createQuery(template.count, Long.class);
+            bind(count, template.mask, filter);
+            return count.getSingleResult();
+        });
+    }
+
+    @Override
+    public List<Integer> findIds(UserListFilter filter) {
+        Template template = template(filter, false);
+        TypedQuery<Integer> query = entityManager.createQuery(template.ids, Integer.class);
+        bind(query, template.mask, filter);
+        return query.getResultList();
+    }
+
+    @Override
+    public List<Object[]> findSortKeys(UserListFilter filter, Sort sort, int limit) {
+        Template template = template(filter, false);
+        TypedQuery<Object[]> query = entityManager.createQuery(template.keys + Template.orderBy(sort), Object[].class);
+        bind(query, template.mask, filter);
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    @Override
+    public long count(UserListFilter filter) {
+        Template template = template(filter, false);
+        TypedQuery<Long> query = entityManager.createQuery(template.count, Long.class);
+        bind(query, template.mask, filter);
+        return query.getSingleResult();
+    }
+
+    private Template template(UserListFilter filter, boolean includePhone) {
+        int mask = filter.mask();
+        int slot = ((includePhone ? 1 : 0) * MatchMode.values().length + filter.getMatch().ordinal())
+                * UserListFilter.COMBINATIONS + mask;
+        Template template = templates.get(slot);
+        if (template != null) {
+            templateHits.increment();
+            return template;
+        }
+        templateMisses.increment();
+        // Гонка безопасна: шаблоны неизменяемы, лишний экземпляр просто отбрасывается
+        templates.compareAndSet(slot, null, new Template(mask, filter.getMatch(), includePhone));
+        return templates.get(slot);
+    }
+
+    private static void bind(TypedQuery<?> query, int mask, UserListFilter filter) {
+        MatchMode match = filter.getMatch();
+        if ((mask & UserListFilter.FIRST_NAME) != 0) {
+            query.setParameter("firstName", textValue(filter.getFirstName(), match));
+        }
+        if ((mask & UserListFilter.LAST_NAME) != 0) {
+            query.setParameter("lastName", textValue(filter.getLastName(), match));
+        }
+        if ((mask & UserListFilter.EMAIL) != 0) {
+            query.setParameter("email", textValue(filter.getEmail(), match));
+        }
+        if ((mask & UserListFilter.GENDER) != 0) {
+            query.setParameter("gender", filter.getGender());
+        }
+        if ((mask & UserListFilter.PHONE_BRAND) != 0) {
+            query.setParameter("phoneBrand", textValue(filter.getPhoneBrand(), match));
+        }
+        if ((mask & UserListFilter.PHONE_DIGITS) != 0) {
+            String digits = filter.getPhoneDigits();
+            query.setParameter("phoneDigits", match == MatchMode.EXACT ? digits : digits + "%");
+        }
+    }
+
+    private static String textValue(String q, MatchMode match) {
+        String value = q.toLowerCase(Locale.ROOT);
+        return switch (match) {
+            case EXACT -> value;
+            case PREFIX -> escapeLike(value) + "%";
+            case CONTAINS -> "%" + escapeLike(value) + "%";
+        };
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static final class Template {
+        private final int mask;
+        private final String selectPrefix;
+        private final String count;
+        private final String ids;
+        private final String keys;
+        private final Map<Sort, String> selects = new ConcurrentHashMap<>();
+
+        Template(int mask, MatchMode match, boolean includePhone) {
+            this.mask = mask;
+            String where = where(mask, match);
+            boolean filtersPhone = (mask & (UserListFilter.PHONE_BRAND | UserListFilter.PHONE_DIGITS)) != 0;
+            String phoneJoin = filtersPhone ? " left join u.phone p" : "";
+            this.selectPrefix = "select u from User u" + (includePhone ? " left join fetch u.phone p" : phoneJoin) + where;
+            this.count = "select count(u) from User u" + phoneJoin + where;
+            this.ids = "select u.id from User u" + phoneJoin + where;
+            this.keys = "select " + String.join(", ", SORT_KEYS.stream().map(key -> "u." + key).toList())
+                    + " from User u" + phoneJoin + where;
+        }
+
+        String select(Sort sort) {
+            String jpql = selects.get(sort);
+            if (jpql == null) {
+                jpql = selectPrefix + orderBy(sort);
+                // Набор сортировок ограничен белым списком, но повторы полей делают его формально бесконечным
+                if (selects.size() < MAX_ORDERINGS_PER_TEMPLATE) {
+                    selects.putIfAbsent(sort, jpql);
+                }
+            }
+            return jpql;
+        }
+
+        private static String where(int mask, MatchMode match) {
+            StringBuilder where = new StringBuilder();
+            String textOperator = match == MatchMode.EXACT ? " = " : " like ";
+            String textEscape = match == MatchMode.EXACT ? "" : " escape '\\'";
+            appendText(where, mask, UserListFilter.FIRST_NAME, "u.firstNameLc", "firstName", textOperator, textEscape);
+            appendText(where, mask, UserListFilter.LAST_NAME, "u.lastNameLc", "lastName", textOperator, textEscape);
+            appendText(where, mask, UserListFilter.EMAIL, "u.email", "email", textOperator, textEscape);
+            if ((mask & UserListFilter.GENDER) != 0) {
+                where.append(where.isEmpty() ? " where " : " and ").append("u.gender = :gender");
+            }
+            appendText(where, mask, UserListFilter.PHONE_BRAND, "p.brandLc", "phoneBrand", textOperator, textEscape);
+            // Цифры номера не экранируются: в канонической форме там нет спецсимволов LIKE
+            appendText(where, mask, UserListFilter.PHONE_DIGITS, "p.numberDigits", "phoneDigits", textOperator, "");
+            return where.toString();
+        }
+
+        private static void appendText(StringBuilder where, int mask, int bit, String column, String parameter,
+                                       String operator, String escape) {
+            if ((mask & bit) != 0) {
+                where.append(where.isEmpty() ? " where " : " and ")
+                        .append(column).append(operator).append(':').append(parameter).append(escape);
+            }
+        }
+
+        private static String orderBy(Sort sort) {
+            if (sort.isUnsorted()) {
+                return "";
+            }
+            StringBuilder orderBy = new StringBuilder(" order by ");
+            boolean first = true;
+            for (Sort.Order order : sort) {
+                if (!SORTABLE.contains(order.getProperty())) {
+                    throw new IllegalArgumentException("Unsupported sort property: " + order.getProperty());
+                }
+                if (!first) {
+                    orderBy.append(", ");
+                }
+                orderBy.append("u.").append(order.getProperty()).append(order.isAscending() ? " asc" : " desc");
+                first = false;
+            }
+            return orderBy.toString();
+        }
+    }
+}
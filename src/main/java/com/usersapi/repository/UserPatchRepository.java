@@ -0,0 +1,12 @@
+package com.usersapi.repository;
+
+import com.usersapi.model.Gender;
+
+import java.util.Optional;
+
+public interface UserPatchRepository {
+    // Один UPDATE без чтения сущности: null-поля не меняются, версия увеличивается на 1.
+    // expectedVersion = null — без проверки версии (If-Match: *). changeSeq — номер из ChangeSequence.
+    // Возвращает пол, который был у строки до обновления; пусто, если ни одна строка не обновлена.
+    Optional<Gender> patch(Integer id, Integer expectedVersion, long changeSeq, String firstName, String lastName, String email, Gender gender);
+}
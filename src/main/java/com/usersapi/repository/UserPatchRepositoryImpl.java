@@ -0,0 +1,111 @@
+package com.usersapi.repository;
+
+import com.usersapi.model.Gender;
+import com.usersapi.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Условное обновление пользователя одним запросом
+ * {@code select gender from old table (update users ... where id = ? and version = ?)}.
+ * <p>
+ * H2 возвращает строку в том виде, в каком она была до UPDATE: прежний пол нужен статистике, и отдельный
+ * {@code select ... for update} не требуется. {@code @PreUpdate} здесь не вызывается, поэтому колонки *_lc и
+ * change_seq выставляются в самом запросе.
+ * <p>
+ * Кэш второго уровня (профиль cache) Hibernate о таком запросе не знает, и весь регион User он бы не сбросил, а
+ * JPQL {@code update} сбрасывал бы именно весь регион. Здесь затрагивается одна запись: до запроса она
+ * блокируется в кэше (soft lock, как при обычном обновлении сущности), после завершения транзакции блокировка
+ * снимается, и загрузки, начатые до этого, старое состояние в кэш не положат. Метки таблицы users для кэша
+ * запросов (existsByEmail) инвалидируются так же.
+ */
+public class UserPatchRepositoryImpl implements UserPatchRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<Gender> patch(Integer id, Integer expectedVersion, long changeSeq,
+                                  String firstName, String lastName, String email, Gender gender) {
+        StringBuilder sql = new StringBuilder(
+                "select gender from old table (update users set version = version + 1, change_seq = :changeSeq");
+        if (firstName != null) {
+            sql.append(", first_name = :firstName, first_name_lc = :firstNameLc");
+        }
+        if (lastName != null) {
+            sql.append(", last_name = :lastName, last_name_lc = :lastNameLc");
+        }
+        if (email != null) {
+            sql.append(", email = :email");
+        }
+        if (gender != null) {
+            sql.append(", gender = :gender");
+        }
+        sql.append(" where id = :id");
+        if (expectedVersion != null) {
+            sql.append(" and version = :version");
+        }
+        sql.append(")");
+
+        lockCacheEntry(id);
+        Query query = entityManager.createNativeQuery(sql.toString());
+        query.setParameter("changeSeq", changeSeq);
+        if (firstName != null) {
+            query.setParameter("firstName", firstName);
+            query.setParameter("firstNameLc", firstName.toLowerCase(Locale.ROOT));
+        }
+        if (lastName != null) {
+            query.setParameter("lastName", lastName);
+            query.setParameter("lastNameLc", lastName.toLowerCase(Locale.ROOT));
+        }
+        if (email != null) {
+            query.setParameter("email", email);
+        }
+        if (gender != null) {
+            query.setParameter("gender", gender.name());
+        }
+        query.setParameter("id", id);
+        if (expectedVersion != null) {
+            query.setParameter("version", expectedVersion);
+        }
+        List<?> previous = query.getResultList();
+        return previous.isEmpty() ? Optional.empty() : Optional.of(Gender.valueOf(previous.get(0).toString()));
+    }
+
+    // Блокировка записи User в кэше и меток таблицы до конца транзакции; без кэша ничего не делает
+    private void lockCacheEntry(Integer id) {
+        EventSource session = entityManager.unwrap(EventSource.class);
+        SessionFactoryImplementor factory = session.getFactory();
+        EntityPersister persister = factory.getMappingMetamodel().getEntityDescriptor(User.class);
+        String[] spaces = persister.getSynchronizedQuerySpaces();
+        boolean queryCache = factory.getSessionFactoryOptions().isQueryCacheEnabled();
+        if (!persister.canWriteToCache() && !queryCache) {
+            return;
+        }
+        EntityDataAccess cache = persister.canWriteToCache() ? persister.getCacheAccessStrategy() : null;
+        Object key = cache != null ? cache.generateCacheKey(id, persister, factory, session.getTenantIdentifier()) : null;
+        SoftLock lock = cache != null ? cache.lockItem(session, key, null) : null;
+        if (queryCache) {
+            factory.getCache().getTimestampsCache().preInvalidate(spaces, session);
+        }
+        // И при откате: блокировку нужно снять, иначе запись не кэшируется до истечения её таймаута
+        session.getActionQueue().registerProcess((success, completed) -> {
+            if (cache != null) {
+                cache.unlockItem(completed, key, lock);
+            }
+            if (queryCache) {
+                factory.getCache().getTimestampsCache().invalidate(spaces, completed);
+            }
+        });
+    }
+}
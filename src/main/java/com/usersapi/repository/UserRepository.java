@@ -1,9 +1,65 @@
 package com.usersapi.repository;
 
 import com.usersapi.model.User;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
-public interface UserRepository extends JpaRepository<User, Integer>, JpaSpecificationExecutor<User> {
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+
+public interface UserRepository extends JpaRepository<User, Integer>, UserListRepository,
+        UserPatchRepository {
+    // Результат попадает в кэш запросов (профиль cache); любая запись в users его инвалидирует
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     boolean existsByEmail(String email);
-}
\ No newline at end of file
+
+    // Есть ли хоть один пользователь: в отличие от count() читает не больше одной строки
+    boolean existsBy();
+
+    // findById читает только пользователя (телефон ленивый), этот метод — вместе с телефоном одним запросом
+    @EntityGraph(User.WITH_PHONE)
+    Optional<User> findWithPhoneById(Integer id);
+
+    @Query("select u from User u left join fetch u.phone where u.id in :ids")
+    List<User> findAllWithPhoneByIdIn(Collection<Integer> ids);
+
+    // Плоская строка одного пользователя: имя файла аватара и поля для статистики при удалении
+    @Query("select new com.usersapi.repository.UserRow(u.id, u.version, u.firstName, u.lastName, u.email, u.gender, "
+            + "p.id, p.number, p.brand, u.avatarFileName, u.avatarFileSize, u.changeSeq) "
+            + "from User u left join u.phone p where u.id = :id")
+    Optional<UserRow> findRowById(Integer id);
+
+    // Какие из имён файлов ещё принадлежат пользователям (по индексу idx_users_avatar_file_name)
+    @Query("select u.avatarFileName from User u where u.avatarFileName in :fileNames")
+    Set<String> findReferencedAvatarFileNames(Collection<String> fileNames);
+
+    @Query("select u.version from User u where u.id = :id")
+    int findVersionById(Integer id);
+
+    @Query("select u from User u where u.id in :ids")
+    List<User> findAllByIdIn(Collection<Integer> ids);
+
+    // Дельта-синхронизация: изменённые в (since, upTo] по индексу idx_users_change_seq
+    @Query("select u from User u left join fetch u.phone where u.changeSeq > :since and u.changeSeq <= :upTo order by u.changeSeq")
+    List<User> findChanges(long since, long upTo, Pageable limit);
+
+    @Query("select u from User u where u.changeSeq > :since and u.changeSeq <= :upTo order by u.changeSeq")
+    List<User> findChangesWithoutPhone(long since, long upTo, Pageable limit);
+
+    // Потоковое чтение всех пользователей для построения in-memory индексов; вызывать внутри транзакции
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.usersapi.repository.UserRow(u.id, u.version, u.firstName, u.lastName, u.email, u.gender, "
+            + "p.id, p.number, p.brand, u.avatarFileName, u.avatarFileSize, u.changeSeq) "
+            + "from User u left join u.phone p")
+    Stream<UserRow> streamRows();
+}
@@ -0,0 +1,52 @@
+package com.usersapi.repository;
+
+import com.usersapi.model.Gender;
+
+/**
+ * Плоская строка пользователя с телефоном для потокового чтения всей таблицы
+ * (не попадает в persistence context, поэтому память не растёт с размером таблицы).
+ */
+public class UserRow {
+    private final Integer id;
+    private final Integer version;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final Gender gender;
+    private final Integer phoneId;
+    private final String phoneNumber;
+    private final String phoneBrand;
+    private final String avatarFileName;
+    private final Long avatarFileSize;
+    private final Long changeSeq;
+
+    public UserRow(Integer id, Integer version, String firstName, String lastName, String email, Gender gender,
+                   Integer phoneId, String phoneNumber, String phoneBrand,
+                   String avatarFileName, Long avatarFileSize, Long changeSeq) {
+        this.id = id;
+        this.version = version;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.gender = gender;
+        this.phoneId = phoneId;
+        this.phoneNumber = phoneNumber;
+        this.phoneBrand = phoneBrand;
+        this.avatarFileName = avatarFileName;
+        this.avatarFileSize = avatarFileSize;
+        this.changeSeq = changeSeq;
+    }
+
+    public Integer getId() { return id; }
+    public Integer getVersion() { return version; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public String getEmail() { return email; }
+    public Gender getGender() { return gender; }
+    public Integer getPhoneId() { return phoneId; }
+    public String getPhoneNumber() { return phoneNumber; }
+    public String getPhoneBrand() { return phoneBrand; }
+    public String getAvatarFileName() { return avatarFileName; }
+    public Long getAvatarFileSize() { return avatarFileSize; }
+    public Long getChangeSeq() { return changeSeq; }
+}
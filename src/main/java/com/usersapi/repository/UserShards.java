@@ -0,0 +1,79 @@
+package com.usersapi.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Шарды пользователей (профиль {@code shards}): номер шарда по id и шард текущего потока.
+ * <p>
+ * Шард k выдаёт id вида k + 1 + N·i (identity-столбцы шардов идут с шагом N и разными началами), поэтому id
+ * глобально уникальны без координации, а шард пользователя — остаток id по модулю N. Число шардов нельзя менять
+ * на существующих данных. Без шардов count = 1 и всё работает с одной БД, как раньше.
+ * <p>
+ * Соединение берётся из шарда, выбранного для потока ({@link #on(int, Supplier)}); без выбора — из шарда 0.
+ */
+@Component
+public class UserShards {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final int count;
+    private final AtomicInteger nextForCreate = new AtomicInteger();
+
+    public UserShards(@Value("${datasource.shards.enabled:false}") boolean enabled,
+                      @Value("${datasource.shards.count:1}") int count) {
+        if (enabled && count < 1) {
+            throw new IllegalStateException("datasource.shards.count must be positive, got " + count);
+        }
+        this.count = enabled ? count : 1;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    public int shardOf(int userId) {
+        return Math.floorMod(userId - 1, count);
+    }
+
+    // Новые пользователи распределяются по шардам по кругу
+    public int shardForCreate() {
+        return Math.floorMod(nextForCreate.getAndIncrement(), count);
+    }
+
+    /** Шард, выбранный для текущего потока; null — не выбран. */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /** Выбирает шард для потока и возвращает прежний выбор для {@link #restore(Integer)}. */
+    public static Integer select(Integer shard) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        return previous;
+    }
+
+    public static void restore(Integer previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public static <T> T on(int shard, Supplier<T> call) {
+        Integer previous = select(shard);
+        try {
+            return call.get();
+        } finally {
+            restore(previous);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.usersapi.repository;
+
+import com.usersapi.model.UserTombstone;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface UserTombstoneRepository extends JpaRepository<UserTombstone, Integer> {
+
+    @Query("select t from UserTombstone t where t.changeSeq > :since and t.changeSeq <= :upTo order by t.changeSeq")
+    List<UserTombstone> findChanges(long since, long upTo, Pageable limit);
+}
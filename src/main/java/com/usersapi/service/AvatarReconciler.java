@@ -0,0 +1,148 @@
+package com.usersapi.service;
+
+import com.usersapi.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Фоновая сверка каталога аватаров с колонкой {@code avatar_file_name}: удаляет файлы, на которые
+ * не ссылается ни один пользователь (остались после сбоя между копированием файла и коммитом).
+ * <p>
+ * Каталог читается потоково, имена проверяются пачками одним IN-запросом по индексу. Файлы моложе
+ * grace-периода не трогаются — это могут быть загрузки, транзакция которых ещё не закоммичена.
+ * Обход ограничен по скорости, чтобы не конкурировать с запросами за диск.
+ */
+@Component
+public class AvatarReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarReconciler.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final UserRepository userRepository;
+    private final UserShardReads shardReads;
+    private final Path avatarDirectory;
+    private final Duration gracePeriod;
+    private final long nanosPerFile;
+    private final Counter reclaimedBytes;
+    private final Counter reclaimedFiles;
+
+    public AvatarReconciler(UserRepository userRepository, UserShardReads shardReads, MeterRegistry meterRegistry,
+                            @Value("${avatars.gc.grace-period:PT24H}") Duration gracePeriod,
+                            @Value("${avatars.gc.max-files-per-second:200}") int maxFilesPerSecond) {
+        this.userRepository = userRepository;
+        this.shardReads = shardReads;
+        this.avatarDirectory = Paths.get(UserService.AVATAR_DIR).toAbsolutePath().normalize();
+        this.gracePeriod = gracePeriod;
+        this.nanosPerFile = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxFilesPerSecond);
+        this.reclaimedBytes = Counter.builder("avatars.gc.reclaimed")
+                .description("Bytes freed by deleting orphaned avatar files")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.reclaimedFiles = Counter.builder("avatars.gc.deleted")
+                .description("Orphaned avatar files deleted")
+                .baseUnit("files")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${avatars.gc.initial-delay:PT5M}", fixedDelayString = "${avatars.gc.interval:PT1H}")
+    public void reconcile() {
+        if (!Files.isDirectory(avatarDirectory)) {
+            return;
+        }
+        long started = System.nanoTime();
+        Instant cutoff = Instant.now().minus(gracePeriod);
+        Result result = new Result();
+
+        // Имя файла → размер; только файлы старше grace-периода
+        Map<String, Long> batch = new LinkedHashMap<>();
+        long nextSlot = System.nanoTime();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(avatarDirectory)) {
+            for (Path file : files) {
+                nextSlot = pace(nextSlot);
+                result.scanned++;
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (!attributes.isRegularFile() || attributes.lastModifiedTime().toInstant().isAfter(cutoff)) {
+                    continue;
+                }
+                batch.put(file.getFileName().toString(), attributes.size());
+                if (batch.size() == BATCH_SIZE) {
+                    deleteOrphans(batch, result);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                deleteOrphans(batch, result);
+            }
+        } catch (IOException e) {
+            logger.warn("Avatar reconciliation aborted: {}", e.getMessage());
+        }
+
+        logger.info("Avatar reconciliation: {} files scanned, {} orphans deleted, {} bytes reclaimed in {} ms",
+                result.scanned, result.deleted, result.bytes, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Новые имена файлов генерируются через UUID, поэтому неиспользуемый старый файл
+    // не может снова стать чьим-то аватаром между проверкой и удалением
+    private void deleteOrphans(Map<String, Long> batch, Result result) {
+        Set<String> referenced = new HashSet<>();
+        shardReads.onEachShard(shard -> userRepository.findReferencedAvatarFileNames(batch.keySet())).forEach(referenced::addAll);
+        batch.forEach((fileName, size) -> {
+            if (referenced.contains(fileName)) {
+                return;
+            }
+            try {
+                if (Files.deleteIfExists(avatarDirectory.resolve(fileName))) {
+                    result.deleted++;
+                    result.bytes += size;
+                    reclaimedFiles.increment();
+                    reclaimedBytes.increment(size);
+                }
+            } catch (IOException e) {
+                logger.warn("Could not delete orphaned avatar {}: {}", fileName, e.getMessage());
+            }
+        });
+    }
+
+    // Не больше maxFilesPerSecond обращений к диску: ждём свой слот, пропущенные слоты не накапливаются
+    private long pace(long nextSlot) {
+        long now = System.nanoTime();
+        if (nextSlot > now) {
+            LockSupport.parkNanos(nextSlot - now);
+            return nextSlot + nanosPerFile;
+        }
+        return now + nanosPerFile;
+    }
+
+    private static final class Result {
+        private long scanned;
+        private long deleted;
+        private long bytes;
+    }
+}
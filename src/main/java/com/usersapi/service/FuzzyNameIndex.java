@@ -0,0 +1,332 @@
+package com.usersapi.service;
+
+import com.usersapi.web.dto.UserResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Нечёткий поиск по имени и фамилии с ограниченным расстоянием правки (Левенштейн с перестановками).
+ * <p>
+ * Для каждого поля держится словарь различных значений (терм → id пользователей), триграммный
+ * индекс (триграмма → термы) и термы по длине. Кандидаты берутся из термов с достаточным числом общих
+ * триграмм с запросом — одна правка портит не больше четырёх триграмм, — и лишь они проверяются
+ * точным расстоянием с ранним выходом. У коротких запросов допустимые правки могут испортить все
+ * триграммы ("bob" → "bab"), и тогда кандидаты — все термы с длиной в пределах допустимого расстояния.
+ * Строки таблицы при поиске не перебираются.
+ */
+@Component
+public class FuzzyNameIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(FuzzyNameIndex.class);
+
+    /** Не больше стольких лучших совпадений участвуют в ранжировании и пагинации. */
+    public static final int MAX_MATCHES = 1000;
+
+    // Сколько триграмм может испортить одна правка (перестановка соседних символов — до четырёх)
+    private static final int GRAMS_PER_EDIT = 4;
+
+    private final UserScanner userScanner;
+    private final TermDictionary firstNames = new TermDictionary();
+    private final TermDictionary lastNames = new TermDictionary();
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Integer> deletedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuilding;
+
+    public FuzzyNameIndex(UserScanner userScanner) {
+        this.userScanner = userScanner;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long started = System.nanoTime();
+        rebuilding = true;
+        try {
+            long rows = userScanner.scan(row -> put(row.getId(), row.getVersion(), row.getFirstName(), row.getLastName()));
+            logger.info("Fuzzy name index built: {} users, {} first names, {} last names in {} ms",
+                    rows, firstNames.size(), lastNames.size(), (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            rebuilding = false;
+            deletedDuringRebuild.clear();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onUserChanged(UserChangedEvent event) {
+        switch (event.getType()) {
+            case DELETED -> remove(event.getUserId());
+            case PATCHED -> patch(event.getUserId(), event.getPatch());
+            // Блокировка имён не меняет
+            case LOCKED, UNLOCKED -> { }
+            default -> {
+                UserResponse user = event.getUser();
+                put(user.getId(), user.getVersion(), user.getFirstName(), user.getLastName());
+            }
+        }
+    }
+
+    /**
+     * Пользователи, у которых заданные поля отличаются от запроса не больше чем на допустимое число правок,
+     * от наиболее похожих к наименее. Незаданное поле (null) не ограничивает выборку.
+     */
+    public List<Match> search(String firstName, String lastName) {
+        Map<Integer, Integer> byFirst = firstName != null ? firstNames.search(normalize(firstName)) : null;
+        Map<Integer, Integer> byLast = lastName != null ? lastNames.search(normalize(lastName)) : null;
+
+        List<Match> matches = new ArrayList<>();
+        if (byFirst != null && byLast != null) {
+            Map<Integer, Integer> smaller = byFirst.size() <= byLast.size() ? byFirst : byLast;
+            Map<Integer, Integer> larger = smaller == byFirst ? byLast : byFirst;
+            smaller.forEach((id, distance) -> {
+                Integer other = larger.get(id);
+                if (other != null) {
+                    matches.add(new Match(id, distance + other));
+                }
+            });
+        } else {
+            Map<Integer, Integer> only = byFirst != null ? byFirst : byLast;
+            if (only != null) {
+                only.forEach((id, distance) -> matches.add(new Match(id, distance)));
+            }
+        }
+
+        matches.sort(Comparator.comparingInt(Match::getDistance).thenComparingInt(Match::getUserId));
+        return matches.size() > MAX_MATCHES ? new ArrayList<>(matches.subList(0, MAX_MATCHES)) : matches;
+    }
+
+    private void put(Integer id, Integer version, String firstName, String lastName) {
+        entries.compute(id, (key, current) -> {
+            if (rebuilding && deletedDuringRebuild.contains(key)) {
+                return current;
+            }
+            if (current != null && current.version != null && version != null && current.version > version) {
+                return current;
+            }
+            Entry entry = new Entry(version, normalize(firstName), normalize(lastName));
+            if (current != null) {
+                firstNames.remove(current.firstName, key);
+                lastNames.remove(current.lastName, key);
+            }
+            firstNames.add(entry.firstName, key);
+            lastNames.add(entry.lastName, key);
+            return entry;
+        });
+    }
+
+    private void patch(Integer id, UserPatch patch) {
+        if (patch.getFirstName() == null && patch.getLastName() == null) {
+            return;
+        }
+        Entry current = entries.get(id);
+        if (current != null) {
+            put(id, patch.getVersion(),
+                    UserPatch.merge(patch.getFirstName(), current.firstName),
+                    UserPatch.merge(patch.getLastName(), current.lastName));
+        }
+    }
+
+    private void remove(Integer id) {
+        entries.compute(id, (key, current) -> {
+            if (current != null) {
+                firstNames.remove(current.firstName, key);
+                lastNames.remove(current.lastName, key);
+            }
+            if (rebuilding) {
+                deletedDuringRebuild.add(key);
+            }
+            return null;
+        });
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Допустимое число правок растёт с длиной: в коротком слове две правки меняют его целиком
+    static int maxDistance(int length) {
+        if (length <= 2) return 0;
+        if (length <= 5) return 1;
+        return 2;
+    }
+
+    // Расстояние Левенштейна с перестановкой соседних символов ("Ivna" → "Ivan" — одна правка),
+    // но не больше limit + 1: строка матрицы с минимумом выше limit обрывает расчёт
+    static int boundedDistance(String a, String b, int limit) {
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return limit + 1;
+        }
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                char cb = b.charAt(j - 1);
+                int cost = ca == cb ? 0 : 1;
+                int distance = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    distance = Math.min(distance, beforePrevious[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    // Триграммы с границами слова: "$pe", "pet", ..., "ov$"
+    static List<String> trigrams(String term) {
+        String padded = "$" + term + "$";
+        List<String> grams = new ArrayList<>(Math.max(1, padded.length() - 2));
+        if (padded.length() < 3) {
+            grams.add(padded);
+            return grams;
+        }
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    public static final class Match {
+        private final int userId;
+        private final int distance;
+
+        Match(int userId, int distance) {
+            this.userId = userId;
+            this.distance = distance;
+        }
+
+        public int getUserId() { return userId; }
+        public int getDistance() { return distance; }
+    }
+
+    private static final class Entry {
+        private final Integer version;
+        private final String firstName;
+        private final String lastName;
+
+        Entry(Integer version, String firstName, String lastName) {
+            this.version = version;
+            this.firstName = firstName;
+            this.lastName = lastName;
+        }
+    }
+
+    private static final class TermDictionary {
+        private final ConcurrentHashMap<String, Set<Integer>> postings = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Set<String>> grams = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Integer, Set<String>> byLength = new ConcurrentHashMap<>();
+
+        int size() {
+            return postings.size();
+        }
+
+        void add(String term, Integer userId) {
+            postings.compute(term, (key, ids) -> {
+                if (ids == null) {
+                    ids = ConcurrentHashMap.newKeySet();
+                    for (String gram : trigrams(key)) {
+                        grams.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(key);
+                    }
+                    byLength.computeIfAbsent(key.length(), length -> ConcurrentHashMap.newKeySet()).add(key);
+                }
+                ids.add(userId);
+                return ids;
+            });
+        }
+
+        void remove(String term, Integer userId) {
+            postings.computeIfPresent(term, (key, ids) -> {
+                ids.remove(userId);
+                if (!ids.isEmpty()) {
+                    return ids;
+                }
+                for (String gram : trigrams(key)) {
+                    grams.computeIfPresent(gram, (g, terms) -> {
+                        terms.remove(key);
+                        return terms.isEmpty() ? null : terms;
+                    });
+                }
+                byLength.computeIfPresent(key.length(), (length, terms) -> {
+                    terms.remove(key);
+                    return terms.isEmpty() ? null : terms;
+                });
+                return null;
+            });
+        }
+
+        // id пользователя → лучшее расстояние среди его термов (у пользователя терм один)
+        Map<Integer, Integer> search(String query) {
+            int limit = maxDistance(query.length());
+            List<String> queryGrams = trigrams(query);
+            int required = queryGrams.size() - GRAMS_PER_EDIT * limit;
+
+            List<String> candidates = new ArrayList<>();
+            if (required <= 0) {
+                // Общих триграмм может не быть вовсе: перебираются термы подходящей длины
+                for (int length = Math.max(0, query.length() - limit); length <= query.length() + limit; length++) {
+                    Set<String> terms = byLength.get(length);
+                    if (terms != null) {
+                        candidates.addAll(terms);
+                    }
+                }
+            } else {
+                Map<String, Integer> shared = new HashMap<>();
+                for (String gram : queryGrams) {
+                    Set<String> terms = grams.get(gram);
+                    if (terms != null) {
+                        for (String term : terms) {
+                            shared.merge(term, 1, Integer::sum);
+                        }
+                    }
+                }
+                shared.forEach((term, count) -> {
+                    if (count >= required) {
+                        candidates.add(term);
+                    }
+                });
+            }
+
+            Map<Integer, Integer> result = new HashMap<>();
+            for (String term : candidates) {
+                int distance = boundedDistance(query, term, limit);
+                if (distance > limit) {
+                    continue;
+                }
+                Set<Integer> ids = postings.get(term);
+                if (ids != null) {
+                    for (Integer id : ids) {
+                        result.merge(id, distance, Math::min);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
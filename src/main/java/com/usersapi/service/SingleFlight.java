@@ -0,0 +1,82 @@
+package com.usersapi.service;
+
+import com.usersapi.web.errors.Errors.InternalErrorException;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одинаковых одновременных вызовов: первый вызов с ключом выполняется, остальные с тем же ключом
+ * ждут его результата (или исключения) вместо повторного выполнения. После завершения ключ сразу удаляется —
+ * это не кэш, следующий вызов снова идёт в источник.
+ * <p>
+ * Ожидание ограничено timeout: если ведущий вызов завис, ожидающий выполняет вызов сам.
+ */
+final class SingleFlight<K> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutNanos;
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    SingleFlight(Duration timeout) {
+        this.timeoutNanos = timeout.toNanos();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T execute(K key, Supplier<T> call) {
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, own);
+        if (leader == null) {
+            executed.increment();
+            try {
+                T result = call.get();
+                own.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                own.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, own);
+            }
+        }
+
+        try {
+            T result = (T) leader.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            joined.increment();
+            return result;
+        } catch (ExecutionException e) {
+            joined.increment();
+            // Исключение ведущего (например, NotFoundException) получают все ожидающие
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new InternalErrorException("Coalesced call failed: " + e.getCause());
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            return call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalErrorException("Interrupted while waiting for a coalesced call");
+        }
+    }
+
+    int size() {
+        return inFlight.size();
+    }
+
+    // Счётчики с момента старта: выполненные вызовы, присоединившиеся к чужому вызову и не дождавшиеся его
+    long executed() { return executed.sum(); }
+    long joined() { return joined.sum(); }
+    long timedOut() { return timedOut.sum(); }
+}
@@ -0,0 +1,298 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+import com.usersapi.repository.MatchMode;
+import com.usersapi.repository.UserRow;
+import com.usersapi.web.dto.UserFacets;
+import com.usersapi.web.dto.UserResponse;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Сжатые битовые индексы (Roaring) по id пользователей для полей с малым числом значений:
+ * пол, бренд телефона, наличие телефона и аватара.
+ * <p>
+ * Фильтр по полу и бренду превращается в пересечение/объединение битмапов без обхода строк,
+ * а число пользователей каждого пола и бренда внутри выборки (фасеты) — в подсчёт мощности пересечения
+ * без выделения памяти. Бренд ищется с тем же режимом сравнения, что и в SQL: подходящие бренды
+ * находятся по словарю, их битмапы объединяются. Бренды различаются без учёта регистра, как в SQL (brand_lc):
+ * «Apple» и «apple» — один битмап и один фасет под написанием, встреченным первым.
+ * <p>
+ * Индекс строится одним проходом при старте и обновляется изменениями {@link UserService} после коммита.
+ * Версия строки хранится в массиве по id (id плотные), чтобы запоздавшее событие не откатило более новое.
+ * Удаление оставляет в массиве отметку {@link #DELETED}: id не переиспользуются, и событие создания или изменения,
+ * пришедшее после удаления (или строка прохода, прочитанная до него), пользователя не вернёт.
+ * <p>
+ * Память на пользователя — около 5–11 байт, и больше всего занимает массив версий: 4 байта на каждый id до
+ * максимального, включая удалённые, и до 8 байт с запасом после удвоения массива. Плотные битмапы (все, пол, телефон,
+ * аватар) стоят по биту на id, битмап бренда — до 2 байт на пользователя, если его контейнеры разрежены.
+ * Размер самих битмапов выводится в лог при построении.
+ */
+@Component
+public class UserBitmapIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserBitmapIndex.class);
+
+    private static final Gender[] GENDERS = Gender.values();
+    // Больше любой версии + 1: advance отклоняет все изменения удалённой строки
+    private static final int DELETED = Integer.MAX_VALUE;
+
+    private final UserScanner userScanner;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Защищены lock
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final RoaringBitmap[] genders = new RoaringBitmap[GENDERS.length];
+    // Ключ — бренд в нижнем регистре
+    private final Map<String, Brand> brands = new TreeMap<>();
+    private final RoaringBitmap withPhone = new RoaringBitmap();
+    private final RoaringBitmap withAvatar = new RoaringBitmap();
+    // Версия + 1 по id; 0 — строка индексу неизвестна, DELETED — удалена
+    private int[] versions = new int[1024];
+
+    private volatile boolean ready;
+
+    public UserBitmapIndex(UserScanner userScanner) {
+        this.userScanner = userScanner;
+        for (int i = 0; i < genders.length; i++) {
+            genders[i] = new RoaringBitmap();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long started = System.nanoTime();
+        long rows = userScanner.scan(row -> put(row.getId(), row.getVersion(), row.getGender(),
+                row.getPhoneId() != null, row.getPhoneBrand(), row.getAvatarFileName() != null));
+        lock.writeLock().lock();
+        try {
+            all.runOptimize();
+            Arrays.stream(genders).forEach(RoaringBitmap::runOptimize);
+            brands.values().forEach(brand -> brand.ids.runOptimize());
+            withPhone.runOptimize();
+            withAvatar.runOptimize();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        ready = true;
+        logger.info("User bitmap index built: {} users, {} brands, {} bytes in {} ms",
+                rows, brands.size(), serializedBytes(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onUserChanged(UserChangedEvent event) {
+        switch (event.getType()) {
+            case DELETED -> remove(event.getUserId());
+            case PATCHED -> patchGender(event.getUserId(), event.getPatch());
+            case AVATAR_UPLOADED -> avatarUploaded(event.getUserId(), event.getUser().getVersion());
+            // Блокировка в индексах не участвует
+            case LOCKED, UNLOCKED -> { }
+            default -> {
+                UserResponse user = event.getUser();
+                put(user.getId(), user.getVersion(), user.getGender(), user.getPhone() != null,
+                        user.getPhone() != null ? user.getPhone().getBrand() : null, user.getAvatarFileName() != null);
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Пользователи с заданным полом и брендом (незаданное условие не ограничивает); бренд сравнивается
+     * без учёта регистра в режиме match. Возвращает копию, которую вызывающий может изменять.
+     */
+    public RoaringBitmap candidates(Gender gender, String phoneBrand, MatchMode match) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap result = gender != null ? genders[gender.ordinal()].clone() : all.clone();
+            if (phoneBrand != null) {
+                String query = phoneBrand.toLowerCase(Locale.ROOT);
+                RoaringBitmap branded = new RoaringBitmap();
+                brands.forEach((key, brand) -> {
+                    if (matches(key, query, match)) {
+                        branded.or(brand.ids);
+                    }
+                });
+                result.and(branded);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Число пользователей каждого пола, бренда, с телефоном и с аватаром внутри выборки within. */
+    public UserFacets facets(RoaringBitmap within) {
+        lock.readLock().lock();
+        try {
+            Map<Gender, Long> byGender = new LinkedHashMap<>();
+            for (Gender gender : GENDERS) {
+                byGender.put(gender, (long) RoaringBitmap.andCardinality(within, genders[gender.ordinal()]));
+            }
+            Map<String, Long> byBrand = new LinkedHashMap<>();
+            brands.values().forEach(brand -> {
+                int count = RoaringBitmap.andCardinality(within, brand.ids);
+                if (count > 0) {
+                    byBrand.put(brand.name, (long) count);
+                }
+            });
+            return new UserFacets(within.getLongCardinality(), byGender, byBrand,
+                    RoaringBitmap.andCardinality(within, withPhone),
+                    RoaringBitmap.andCardinality(within, withAvatar));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(int id, Integer version, Gender gender, boolean hasPhone, String phoneBrand, boolean hasAvatar) {
+        lock.writeLock().lock();
+        try {
+            if (!advance(id, version)) {
+                return;
+            }
+            all.add(id);
+            setGender(id, gender);
+            String brandKey = hasPhone && phoneBrand != null ? phoneBrand.toLowerCase(Locale.ROOT) : null;
+            Iterator<Map.Entry<String, Brand>> entries = brands.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, Brand> entry = entries.next();
+                RoaringBitmap ids = entry.getValue().ids;
+                if (!entry.getKey().equals(brandKey) && ids.checkedRemove(id) && ids.isEmpty()) {
+                    entries.remove();
+                }
+            }
+            if (hasPhone) {
+                withPhone.add(id);
+                if (brandKey != null) {
+                    brands.computeIfAbsent(brandKey, key -> new Brand(phoneBrand)).ids.add(id);
+                }
+            } else {
+                withPhone.remove(id);
+            }
+            if (hasAvatar) {
+                withAvatar.add(id);
+            } else {
+                withAvatar.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void patchGender(int id, UserPatch patch) {
+        lock.writeLock().lock();
+        try {
+            if (all.contains(id) && advance(id, patch.getVersion()) && patch.getGender() != null) {
+                setGender(id, patch.getGender());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Аватар загружается, но не удаляется: флаг только ставится
+    private void avatarUploaded(int id, Integer version) {
+        lock.writeLock().lock();
+        try {
+            if (all.contains(id) && advance(id, version)) {
+                withAvatar.add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            all.remove(id);
+            for (RoaringBitmap ids : genders) {
+                ids.remove(id);
+            }
+            brands.values().removeIf(brand -> brand.ids.checkedRemove(id) && brand.ids.isEmpty());
+            withPhone.remove(id);
+            withAvatar.remove(id);
+            ensureCapacity(id);
+            versions[id] = DELETED;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void setGender(int id, Gender gender) {
+        for (Gender candidate : GENDERS) {
+            if (candidate == gender) {
+                genders[candidate.ordinal()].add(id);
+            } else {
+                genders[candidate.ordinal()].remove(id);
+            }
+        }
+    }
+
+    // false — у индекса уже более новая версия строки или строка удалена
+    private boolean advance(int id, Integer version) {
+        ensureCapacity(id);
+        int next = (version != null ? version : 0) + 1;
+        if (versions[id] > next) {
+            return false;
+        }
+        versions[id] = next;
+        return true;
+    }
+
+    private void ensureCapacity(int id) {
+        if (id >= versions.length) {
+            versions = Arrays.copyOf(versions, Math.max(id + 1, versions.length * 2));
+        }
+    }
+
+    private long serializedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = all.serializedSizeInBytes() + withPhone.serializedSizeInBytes() + withAvatar.serializedSizeInBytes();
+            for (RoaringBitmap ids : genders) {
+                bytes += ids.serializedSizeInBytes();
+            }
+            for (Brand brand : brands.values()) {
+                bytes += brand.ids.serializedSizeInBytes();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean matches(String value, String query, MatchMode match) {
+        return switch (match) {
+            case EXACT -> value.equals(query);
+            case PREFIX -> value.startsWith(query);
+            case CONTAINS -> value.contains(query);
+        };
+    }
+
+    /** Пользователи одного бренда; name — написание для фасетов. */
+    private static final class Brand {
+        private final String name;
+        private final RoaringBitmap ids = new RoaringBitmap();
+
+        Brand(String name) {
+            this.name = name;
+        }
+    }
+}
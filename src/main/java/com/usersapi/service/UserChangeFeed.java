@@ -0,0 +1,404 @@
+package com.usersapi.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.usersapi.web.dto.UserChangeNotification;
+import com.usersapi.web.dto.UserResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter.DataWithMediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Лента изменений пользователей для SSE-подписчиков ({@code GET /api/v1/users:stream}).
+ * <p>
+ * События {@link UserChangedEvent} после коммита нумеруются, сериализуются один раз и раскладываются
+ * по ограниченным очередям подписчиков. Отправку выполняет общий небольшой пул: подписчик занимает поток,
+ * только пока у него есть что отправить, поэтому тысячи простаивающих соединений потоков не держат.
+ * Медленный подписчик при переполнении очереди теряет самые старые события (DROP, с уведомлением
+ * {@code overflow}) или отключается (DISCONNECT) и переподключается с {@code Last-Event-ID}.
+ * <p>
+ * Клиент, который перестал читать, блокирует запись в сокет до таймаута записи коннектора. Если отправка
+ * длится дольше {@code users.stream.send-timeout}, подписчик отключается, а пул на время такой отправки
+ * получает дополнительный поток (не больше {@code users.stream.max-stalled-senders}), так что зависшие
+ * клиенты не занимают все потоки отправки.
+ * <p>
+ * Последние события хранятся в кольцевом буфере для возобновления по {@code Last-Event-ID}; если нужного
+ * события там уже нет, подписчик получает {@code reset} и должен перечитать данные целиком. Номера событий
+ * живут в памяти, поэтому id события — {@code <эпоха>-<номер>}, где эпоха случайна для каждого запуска:
+ * id из прошлого запуска или с другого экземпляра не совпадает по эпохе и тоже даёт {@code reset}.
+ */
+@Component
+public class UserChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeFeed.class);
+
+    private static final MediaType TEXT_PLAIN_UTF8 = new MediaType("text", "plain", StandardCharsets.UTF_8);
+    private static final Frame HEARTBEAT = new Frame(-1, ":\n\n");
+
+    public enum Overflow { DROP, DISCONNECT }
+
+    private final ObjectMapper objectMapper;
+    private final int bufferSize;
+    private final int historySize;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final int maxStalledSenders;
+    private final ThreadPoolExecutor sender;
+    // Потоки, добавленные в пул взамен занятых зависшими отправками
+    private int stalledSenders;
+    // Случайная для каждого запуска часть id событий
+    private final String epoch = UUID.randomUUID().toString().substring(0, 8);
+
+    // Нумерация, история и раскладка по подписчикам идут под одной блокировкой:
+    // каждый подписчик видит события строго по порядку, без пропусков на стыке истории и живого потока
+    private final Object lock = new Object();
+    private final ArrayDeque<Frame> history;
+    private long sequence;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    private final Counter droppedEvents;
+    private final Counter slowDisconnects;
+    private final Counter stalledDisconnects;
+
+    public UserChangeFeed(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                          @Value("${users.stream.buffer-size:256}") int bufferSize,
+                          @Value("${users.stream.history-size:1024}") int historySize,
+                          @Value("${users.stream.timeout:PT30M}") Duration timeout,
+                          @Value("${users.stream.sender-threads:4}") int senderThreads,
+                          @Value("${users.stream.send-timeout:PT10S}") Duration sendTimeout,
+                          @Value("${users.stream.max-stalled-senders:16}") int maxStalledSenders) {
+        this.objectMapper = objectMapper;
+        this.bufferSize = bufferSize;
+        this.historySize = historySize;
+        this.history = new ArrayDeque<>(historySize);
+        this.timeoutMillis = timeout.toMillis();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.maxStalledSenders = maxStalledSenders;
+        AtomicInteger threads = new AtomicInteger();
+        this.sender = new ThreadPoolExecutor(senderThreads, senderThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+            Thread thread = new Thread(task, "users-stream-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("users.stream.subscribers", subscribers, Set::size)
+                .description("Open SSE subscriptions to the user change feed")
+                .register(meterRegistry);
+        this.droppedEvents = Counter.builder("users.stream.dropped")
+                .description("Events dropped from full subscriber buffers")
+                .register(meterRegistry);
+        this.slowDisconnects = Counter.builder("users.stream.disconnected")
+                .description("Subscribers disconnected because their buffer overflowed")
+                .register(meterRegistry);
+        this.stalledDisconnects = Counter.builder("users.stream.stalled")
+                .description("Subscribers disconnected because a send to them exceeded the send timeout")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    /**
+     * Новая подписка. lastEventId — id последнего полученного события (заголовок Last-Event-ID) или null.
+     */
+    public SseEmitter subscribe(String lastEventId, Overflow overflow) {
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeoutMillis), overflow);
+        subscriber.emitter.onCompletion(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscriber.emitter.onError(error -> subscribers.remove(subscriber));
+
+        synchronized (lock) {
+            if (lastEventId != null) {
+                Long resumeFrom = sequenceOf(lastEventId);
+                List<Frame> missed = resumeFrom != null ? missedSince(resumeFrom) : null;
+                // Заголовок клиента в JSON не попадает: причина — фиксированный текст
+                if (resumeFrom == null) {
+                    subscriber.enqueue(resetFrame("last event id is from another run"));
+                } else if (missed == null || missed.size() > bufferSize) {
+                    subscriber.enqueue(resetFrame("history no longer contains the last event"));
+                } else {
+                    missed.forEach(subscriber::enqueue);
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        // Ответ с заголовками уходит сразу, не дожидаясь первого события
+        subscriber.enqueue(HEARTBEAT);
+        return subscriber.emitter;
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(toNotification(event));
+        } catch (JsonProcessingException e) {
+            logger.error("Could not serialize change event for user {}", event.getUserId(), e);
+            return;
+        }
+        synchronized (lock) {
+            long id = ++sequence;
+            Frame frame = new Frame(id, "id:" + eventId(id) + "\nevent:" + event.getType() + "\ndata:" + json + "\n\n");
+            if (history.size() == historySize) {
+                history.removeFirst();
+            }
+            history.addLast(frame);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.enqueue(frame);
+            }
+        }
+    }
+
+    // Держит соединения живыми через прокси и выявляет отвалившихся клиентов; занятым подписчикам не нужен
+    @Scheduled(fixedRateString = "${users.stream.heartbeat:PT20S}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.queue.isEmpty()) {
+                subscriber.enqueue(HEARTBEAT);
+            }
+        }
+    }
+
+    // Зависшие отправки: подписчик отключается, пул получает поток на время, пока отправка не вернётся
+    @Scheduled(fixedRateString = "${users.stream.stall-check:PT1S}")
+    public void disconnectStalled() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.disconnectIfStalled(now);
+        }
+    }
+
+    // Поток взамен занятого зависшей отправкой; false — предел max-stalled-senders исчерпан
+    private boolean addStalledSender() {
+        synchronized (sender) {
+            if (stalledSenders >= maxStalledSenders) {
+                return false;
+            }
+            stalledSenders++;
+            // Ядро не может быть больше максимума: при росте сначала максимум, при сокращении — ядро
+            sender.setMaximumPoolSize(sender.getMaximumPoolSize() + 1);
+            sender.setCorePoolSize(sender.getCorePoolSize() + 1);
+            return true;
+        }
+    }
+
+    private void removeStalledSender() {
+        synchronized (sender) {
+            stalledSenders--;
+            sender.setCorePoolSize(sender.getCorePoolSize() - 1);
+            sender.setMaximumPoolSize(sender.getMaximumPoolSize() - 1);
+        }
+    }
+
+    private String eventId(long id) {
+        return epoch + "-" + id;
+    }
+
+    // Номер события этого запуска; null — id из другого запуска или не наш
+    private Long sequenceOf(String eventId) {
+        String prefix = epoch + "-";
+        if (!eventId.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return Long.valueOf(eventId.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // null — продолжить с lastEventId нельзя
+    private List<Frame> missedSince(long lastEventId) {
+        if (lastEventId > sequence) {
+            return null;
+        }
+        long oldestAvailable = history.isEmpty() ? sequence + 1 : history.peekFirst().id;
+        if (lastEventId + 1 < oldestAvailable) {
+            return null;
+        }
+        List<Frame> missed = new ArrayList<>();
+        for (Frame frame : history) {
+            if (frame.id > lastEventId) {
+                missed.add(frame);
+            }
+        }
+        return missed;
+    }
+
+    // id = текущий номер, чтобы следующее переподключение продолжало уже с него
+    private Frame resetFrame(String reason) {
+        return new Frame(sequence, "id:" + eventId(sequence) + "\nevent:reset\ndata:{\"reason\":\"" + reason + "\"}\n\n");
+    }
+
+    private static UserChangeNotification toNotification(UserChangedEvent event) {
+        UserResponse user = event.getUser();
+        UserPatch patch = event.getPatch();
+        Integer version = user != null ? user.getVersion() : patch != null ? Integer.valueOf(patch.getVersion()) : null;
+        Map<String, Object> changes = null;
+        if (patch != null) {
+            changes = new LinkedHashMap<>();
+            putIfPresent(changes, "firstName", patch.getFirstName());
+            putIfPresent(changes, "lastName", patch.getLastName());
+            putIfPresent(changes, "email", patch.getEmail());
+            putIfPresent(changes, "gender", patch.getGender());
+        }
+        return new UserChangeNotification(event.getType().name(), event.getUserId(), version, user, changes);
+    }
+
+    private static void putIfPresent(Map<String, Object> changes, String field, Object value) {
+        if (value != null) {
+            changes.put(field, value);
+        }
+    }
+
+    private static final class Frame {
+        private final long id;
+        private final Set<DataWithMediaType> data;
+
+        Frame(long id, String text) {
+            this.id = id;
+            this.data = Set.of(new DataWithMediaType(text, TEXT_PLAIN_UTF8));
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Overflow overflow;
+        private final ArrayBlockingQueue<Frame> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean closed;
+        // Начало текущей send(); 0 — сейчас не отправляется
+        private volatile long sendingSince;
+        // Отправка признана зависшей, и пул получил вместо неё поток
+        private boolean compensated;
+
+        Subscriber(SseEmitter emitter, Overflow overflow) {
+            this.emitter = emitter;
+            this.overflow = overflow;
+        }
+
+        void enqueue(Frame frame) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(frame)) {
+                if (frame == HEARTBEAT) {
+                    return;
+                }
+                if (overflow == Overflow.DISCONNECT) {
+                    slowDisconnects.increment();
+                    close();
+                    return;
+                }
+                // Вытесняем самое старое: клиенту важнее свежее состояние, пропуск он увидит по overflow
+                if (queue.poll() != null) {
+                    dropped.incrementAndGet();
+                    droppedEvents.increment();
+                }
+                queue.offer(frame);
+            }
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                while (!closed) {
+                    Frame frame = queue.poll();
+                    if (frame == null) {
+                        draining.set(false);
+                        // Событие или закрытие могли прийти между poll и сбросом флага
+                        if ((queue.isEmpty() && !closed) || !draining.compareAndSet(false, true)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    long lost = dropped.getAndSet(0);
+                    if (lost > 0) {
+                        send(new Frame(-1, "event:overflow\ndata:{\"dropped\":" + lost + "}\n\n").data);
+                    }
+                    send(frame.data);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Клиент ушёл или эмиттер уже завершён
+                close();
+            }
+            // Завершение только здесь: complete() ждёт, пока закончится текущая send()
+            emitter.complete();
+        }
+
+        private void send(Set<DataWithMediaType> data) throws IOException {
+            sendingSince = System.nanoTime();
+            try {
+                emitter.send(data);
+            } finally {
+                synchronized (this) {
+                    sendingSince = 0;
+                    if (compensated) {
+                        compensated = false;
+                        removeStalledSender();
+                    }
+                }
+            }
+        }
+
+        void disconnectIfStalled(long now) {
+            synchronized (this) {
+                long since = sendingSince;
+                if (since == 0 || now - since < sendTimeoutNanos || compensated) {
+                    return;
+                }
+                stalledDisconnects.increment();
+                logger.warn("Disconnecting change feed subscriber: send in progress for {} ms",
+                        TimeUnit.NANOSECONDS.toMillis(now - since));
+                compensated = addStalledSender();
+            }
+            close();
+        }
+
+        // Дальше подписчику ничего не отправляется; эмиттер завершит поток отправки
+        private void close() {
+            closed = true;
+            subscribers.remove(this);
+            queue.clear();
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+    }
+}
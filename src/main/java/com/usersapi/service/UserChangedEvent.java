@@ -0,0 +1,40 @@
+package com.usersapi.service;
+
+import com.usersapi.web.dto.UserResponse;
+
+/**
+ * Изменение пользователя, публикуемое {@link UserService} внутри транзакции.
+ * Слушатели получают его через {@code @TransactionalEventListener} только после коммита.
+ */
+public class UserChangedEvent {
+
+    public enum Type {
+        CREATED, UPDATED, PATCHED, PHONE_UPDATED, AVATAR_UPLOADED, DELETED, LOCKED, UNLOCKED
+    }
+
+    private final Type type;
+    private final Integer userId;
+    private final UserResponse user;
+    private final UserPatch patch;
+
+    public UserChangedEvent(Type type, Integer userId, UserResponse user) {
+        this(type, userId, user, null);
+    }
+
+    public UserChangedEvent(Type type, Integer userId, UserResponse user, UserPatch patch) {
+        this.type = type;
+        this.userId = userId;
+        this.user = user;
+        this.patch = patch;
+    }
+
+    public Type getType() { return type; }
+    public Integer getUserId() { return userId; }
+
+    // Состояние пользователя после изменения; null для DELETED, PATCHED, LOCKED и UNLOCKED.
+    // Для AVATAR_UPLOADED телефон не загружается и phone = null — это не означает, что телефона нет.
+    public UserResponse getUser() { return user; }
+
+    // Только для PATCHED: изменённые поля и новая версия
+    public UserPatch getPatch() { return patch; }
+}
@@ -0,0 +1,35 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+
+/**
+ * Изменённые поля условного обновления (PATCH) и новая версия строки. Незаданные поля — null.
+ * Полного снимка пользователя у PATCH нет: строка обновляется без чтения.
+ */
+public final class UserPatch {
+
+    private final int version;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final Gender gender;
+
+    public UserPatch(int version, String firstName, String lastName, String email, Gender gender) {
+        this.version = version;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.gender = gender;
+    }
+
+    public int getVersion() { return version; }
+    public String getFirstName() { return firstName; }
+    public String getLastName() { return lastName; }
+    public String getEmail() { return email; }
+    public Gender getGender() { return gender; }
+
+    // Значение поля после изменения: новое, если оно есть в патче, иначе текущее
+    static <T> T merge(T patched, T current) {
+        return patched != null ? patched : current;
+    }
+}
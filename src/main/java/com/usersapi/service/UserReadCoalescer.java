@@ -0,0 +1,96 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+import com.usersapi.model.PhoneNumbers;
+import com.usersapi.repository.MatchMode;
+import com.usersapi.repository.ReplicaReads;
+import com.usersapi.repository.UserListFilter;
+import com.usersapi.web.dto.UserResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Чтения {@link UserService} с объединением одинаковых одновременных запросов (см. {@link SingleFlight}):
+ * сотни клиентов, одновременно запросивших одного пользователя или первую страницу списка, дают один запрос к БД.
+ * <p>
+ * Объединение идёт снаружи транзакции: ожидающие не держат соединение с БД. В ключ входит поколение данных,
+ * которое увеличивается после коммита любого изменения пользователей, — чтение, начатое после успешной записи,
+ * не присоединится к вызову, стартовавшему до неё, и увидит свою запись.
+ */
+@Component
+public class UserReadCoalescer {
+
+    private final UserService userService;
+    private final boolean enabled;
+    private final SingleFlight<List<Object>> flights;
+    private final AtomicLong generation = new AtomicLong();
+
+    public UserReadCoalescer(UserService userService, MeterRegistry meterRegistry,
+                             @Value("${users.coalescing.enabled:true}") boolean enabled,
+                             @Value("${users.coalescing.timeout:PT2S}") Duration timeout) {
+        this.userService = userService;
+        this.enabled = enabled;
+        this.flights = new SingleFlight<>(timeout);
+        FunctionCounter.builder("users.coalescing.calls", flights, SingleFlight::executed)
+                .description("Reads executed against the database by the single-flight layer")
+                .register(meterRegistry);
+        FunctionCounter.builder("users.coalescing.joined", flights, SingleFlight::joined)
+                .description("Reads served by joining an identical read already in flight")
+                .register(meterRegistry);
+        FunctionCounter.builder("users.coalescing.timeouts", flights, SingleFlight::timedOut)
+                .description("Reads that gave up waiting for an identical read and ran on their own")
+                .register(meterRegistry);
+        Gauge.builder("users.coalescing.inflight", flights, SingleFlight::size)
+                .description("Distinct reads currently in flight")
+                .register(meterRegistry);
+    }
+
+    public UserResponse get(Integer id, boolean includePhone) {
+        return coalesce(() -> userService.get(id, includePhone), "get", id, includePhone);
+    }
+
+    public Page<UserResponse> list(String firstName, String lastName, String email, Gender gender,
+                                   String phoneBrand, String phoneNumber, MatchMode match,
+                                   boolean includePhone, Pageable pageable) {
+        // Ключ по нормализованному фильтру: "+7-999" и "7999" — один и тот же запрос
+        UserListFilter filter = new UserListFilter(firstName, lastName, email, gender, phoneBrand,
+                PhoneNumbers.normalize(phoneNumber), match);
+        return coalesce(() -> userService.list(firstName, lastName, email, gender, phoneBrand, phoneNumber, match,
+                includePhone, pageable), "list", filter, includePhone, pageable);
+    }
+
+    public Page<UserResponse> fuzzyList(String firstName, String lastName, boolean includePhone, Pageable pageable) {
+        return coalesce(() -> userService.fuzzyList(firstName, lastName, includePhone, pageable),
+                "fuzzy", firstName, lastName, includePhone, pageable);
+    }
+
+    // Результат общий для всех ожидающих: вызывающие его не изменяют
+    private <T> T coalesce(Supplier<T> call, Object... key) {
+        if (!enabled) {
+            return call.get();
+        }
+        Object[] fullKey = Arrays.copyOf(key, key.length + 2);
+        fullKey[key.length] = generation.get();
+        // С репликами: клиент, только что записавший данные, не должен получить результат чтения с отстающей реплики
+        fullKey[key.length + 1] = ReplicaReads.minSeq();
+        return flights.execute(Arrays.asList(fullKey), call);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        generation.incrementAndGet();
+    }
+}
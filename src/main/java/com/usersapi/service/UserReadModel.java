@@ -0,0 +1,918 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+import com.usersapi.model.PhoneNumbers;
+import com.usersapi.repository.MatchMode;
+import com.usersapi.repository.UserListFilter;
+import com.usersapi.repository.UserRow;
+import com.usersapi.web.dto.PhoneResponse;
+import com.usersapi.web.dto.UserResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Колоночная модель чтения списка пользователей (CQRS): все пользователи в памяти, фильтр, сортировка,
+ * подсчёт и пагинация {@code GET /api/v1/users} выполняются без SQL. Включается {@code users.read-model.enabled=true}.
+ * <p>
+ * Строки лежат в параллельных массивах, упорядоченных по id (поиск строки — двоичный): id, версии и id телефонов —
+ * {@code int[]}, пол — байтовый код, бренд — код в словаре брендов (брендов мало, фильтр по бренду проверяет
+ * словарь один раз, а строки — по коду). Имена и email хранятся как есть (для ответа) и в нижнем регистре
+ * (для фильтров); если значение уже в нижнем регистре, обе колонки ссылаются на одну строку.
+ * <p>
+ * Память на пользователя (compressed oops, Latin-1 строки): ~60 байт колонок и ~40 байт + длина на каждую
+ * строку — имя и фамилия обычно дважды (как есть и в нижнем регистре), email, номер и его цифры, имя файла аватара.
+ * Для типичных данных это 400–500 байт, т.е. около 50 МБ на 100 тыс. пользователей; точная оценка — {@link #estimatedBytes()}.
+ * <p>
+ * Модель строится одним потоковым проходом при старте и обновляется изменениями {@link UserService} после коммита;
+ * до окончания построения список читается из БД. Проход не упорядочен по id (шарды читаются по очереди), поэтому
+ * строки дописываются в конец колонок и сортируются один раз в конце, а изменения, пришедшие во время построения,
+ * применяются после сортировки. Периодическая сверка с БД перечитывает разошедшиеся строки.
+ */
+@Component
+@ConditionalOnProperty(name = "users.read-model.enabled", havingValue = "true")
+public class UserReadModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserReadModel.class);
+
+    private static final Set<String> SORTABLE = Set.of("id", "firstName", "lastName", "email", "gender");
+    private static final Gender[] GENDERS = Gender.values();
+    // Порядок пола в SQL — по имени константы (EnumType.STRING)
+    private static final int[] GENDER_RANK = genderRanks();
+    private static final int NO_BRAND = -1;
+    private static final int PARALLEL_THRESHOLD = 8192;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Больше разошедшихся строк дешевле перестроить одним проходом, чем перечитывать по одной
+    private static final int MAX_REPAIRED_ROWS = 1000;
+
+    private final UserScanner userScanner;
+    private final Counter mismatches;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Колонки; строки [0, size) упорядочены по id. Защищены lock
+    private int size;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] versions = new int[INITIAL_CAPACITY];
+    private byte[] genders = new byte[INITIAL_CAPACITY];
+    private int[] phoneIds = new int[INITIAL_CAPACITY];
+    private int[] brands = new int[INITIAL_CAPACITY];
+    private String[] firstNames = new String[INITIAL_CAPACITY];
+    private String[] lastNames = new String[INITIAL_CAPACITY];
+    private String[] emails = new String[INITIAL_CAPACITY];
+    private String[] firstNamesLc = new String[INITIAL_CAPACITY];
+    private String[] lastNamesLc = new String[INITIAL_CAPACITY];
+    private String[] emailsLc = new String[INITIAL_CAPACITY];
+    private String[] phoneNumbers = new String[INITIAL_CAPACITY];
+    private String[] phoneDigits = new String[INITIAL_CAPACITY];
+    private String[] avatarFileNames = new String[INITIAL_CAPACITY];
+    // Словарь брендов: код → бренд как есть и в нижнем регистре. Только растёт
+    private final List<String> brandDictionary = new ArrayList<>();
+    private final List<String> brandDictionaryLc = new ArrayList<>();
+    private final Map<String, Integer> brandCodes = new HashMap<>();
+
+    // Изменения, пришедшие во время построения (колонки ещё не упорядочены по id). Защищены lock
+    private final List<UserChangedEvent> changedWhileLoading = new ArrayList<>();
+    private final Set<Integer> deletedWhileRepairing = ConcurrentHashMap.newKeySet();
+    private volatile boolean loading;
+    private volatile boolean repairing;
+    private volatile boolean ready;
+    private volatile Verification lastVerification;
+
+    public UserReadModel(UserScanner userScanner, MeterRegistry meterRegistry) {
+        this.userScanner = userScanner;
+        Gauge.builder("users.readmodel.rows", this, UserReadModel::rows)
+                .description("Users held by the in-memory list read model")
+                .register(meterRegistry);
+        this.mismatches = Counter.builder("users.readmodel.mismatches")
+                .description("Rows found diverged from the database by read model verification")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long started = System.nanoTime();
+        ready = false;
+        lock.writeLock().lock();
+        try {
+            loading = true;
+            size = 0;
+            grow(INITIAL_CAPACITY);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long rows;
+        try {
+            rows = userScanner.scan(this::append);
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                finishLoading();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            sortById();
+            changedWhileLoading.forEach(this::apply);
+        } finally {
+            finishLoading();
+            lock.writeLock().unlock();
+        }
+        ready = true;
+        logger.info("User read model built: {} users, {} brands, ~{} KB in {} ms",
+                rows, brandDictionary.size(), estimatedBytes() / 1024, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void finishLoading() {
+        loading = false;
+        changedWhileLoading.clear();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onUserChanged(UserChangedEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (loading) {
+                changedWhileLoading.add(event);
+                return;
+            }
+            apply(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(UserChangedEvent event) {
+        switch (event.getType()) {
+            case DELETED -> remove(event.getUserId());
+            case PATCHED -> patch(event.getUserId(), event.getPatch());
+            case AVATAR_UPLOADED -> avatar(event.getUserId(), event.getUser());
+            // Блокировка хранится в UserService и подставляется в ответ при чтении
+            case LOCKED, UNLOCKED -> { }
+            default -> put(event.getUser());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int rows() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Страница списка с той же семантикой фильтров и сортировки, что у SQL-запроса списка
+     * (см. UserListRepositoryImpl). candidates — id, заранее отобранные битовыми индексами (или null):
+     * проверяются только они. Статус блокировки в ответах не заполнен.
+     */
+    public Page<UserResponse> list(UserListFilter filter, RoaringBitmap candidates, boolean includePhone, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            int[] matched = scan(new Matcher(filter), candidates);
+            int total = matched.length;
+            int from = pageable.isPaged() ? (int) Math.min(pageable.getOffset(), total) : 0;
+            int to = pageable.isPaged() ? Math.min(from + pageable.getPageSize(), total) : total;
+
+            List<UserResponse> content = new ArrayList<>(to - from);
+            for (int slot : order(matched, pageable.getSort(), to)) {
+                if (from-- > 0) {
+                    continue;
+                }
+                content.add(toResponse(slot, includePhone));
+            }
+            return new PageImpl<>(content, pageable, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Id всех пользователей, подходящих под фильтр (для фасетов). */
+    public RoaringBitmap matchingIds(UserListFilter filter, RoaringBitmap candidates) {
+        lock.readLock().lock();
+        try {
+            int[] matched = scan(new Matcher(filter), candidates);
+            RoaringBitmap result = new RoaringBitmap();
+            for (int slot : matched) {
+                result.add(ids[slot]);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Строки по возрастанию id; на больших таблицах — параллельный проход по колонкам
+    private int[] scan(IntPredicate matcher, RoaringBitmap candidates) {
+        if (candidates != null) {
+            return candidates.stream()
+                    .map(id -> Arrays.binarySearch(ids, 0, size, id))
+                    .filter(slot -> slot >= 0 && matcher.test(slot))
+                    .toArray();
+        }
+        IntStream slots = IntStream.range(0, size);
+        if (size >= PARALLEL_THRESHOLD) {
+            slots = slots.parallel();
+        }
+        return slots.filter(matcher).toArray();
+    }
+
+    // Первые limit строк в порядке сортировки. Строки уже упорядочены по id, поэтому он же — последний критерий
+    private int[] order(int[] matched, Sort sort, int limit) {
+        if (sort.isUnsorted() || isOnlyId(sort, Sort.Direction.ASC)) {
+            return Arrays.copyOf(matched, Math.min(limit, matched.length));
+        }
+        if (isOnlyId(sort, Sort.Direction.DESC)) {
+            int[] reversed = new int[Math.min(limit, matched.length)];
+            for (int i = 0; i < reversed.length; i++) {
+                reversed[i] = matched[matched.length - 1 - i];
+            }
+            return reversed;
+        }
+        // Ограниченная куча на offset + size слотов: O(n log limit) сравнений без упаковки слотов в Integer.
+        // В корне — худшая из отобранных строк, её вытесняет любая строка лучше неё
+        SlotOrder order = new SlotOrder(sort);
+        int[] heap = new int[Math.min(limit, matched.length)];
+        int heapSize = 0;
+        for (int slot : matched) {
+            if (heapSize < heap.length) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++, order);
+            } else if (heapSize > 0 && order.compare(slot, heap[0]) < 0) {
+                heap[0] = slot;
+                siftDown(heap, heapSize, order);
+            }
+        }
+        // Худшая строка уходит в конец, пока куча не опустеет: слоты по возрастанию порядка
+        for (int end = heapSize - 1; end > 0; end--) {
+            swap(heap, 0, end);
+            siftDown(heap, end, order);
+        }
+        return heap;
+    }
+
+    private static void siftUp(int[] heap, int index, SlotOrder order) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (order.compare(heap[index], heap[parent]) <= 0) {
+                return;
+            }
+            swap(heap, index, parent);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, SlotOrder order) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && order.compare(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (order.compare(heap[child], heap[index]) <= 0) {
+                return;
+            }
+            swap(heap, index, child);
+            index = child;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int slot = heap[i];
+        heap[i] = heap[j];
+        heap[j] = slot;
+    }
+
+    private static boolean isOnlyId(Sort sort, Sort.Direction direction) {
+        Sort.Order id = sort.getOrderFor("id");
+        return id != null && id.getDirection() == direction && sort.stream().count() == 1;
+    }
+
+    private UserResponse toResponse(int slot, boolean includePhone) {
+        UserResponse response = new UserResponse();
+        response.setId(ids[slot]);
+        response.setVersion(versions[slot]);
+        response.setFirstName(firstNames[slot]);
+        response.setLastName(lastNames[slot]);
+        response.setEmail(emails[slot]);
+        response.setGender(GENDERS[genders[slot]]);
+        if (includePhone && phoneIds[slot] != 0) {
+            PhoneResponse phone = new PhoneResponse();
+            phone.setId(phoneIds[slot]);
+            phone.setNumber(phoneNumbers[slot]);
+            phone.setBrand(brandDictionary.get(brands[slot]));
+            response.setPhone(phone);
+        }
+        response.setAvatarFileName(avatarFileNames[slot]);
+        response.setHasAvatar(avatarFileNames[slot] != null);
+        response.setLocked(false);
+        return response;
+    }
+
+    // Изменения
+
+    private void put(UserRow row) {
+        put(row.getId(), row.getVersion(), row.getFirstName(), row.getLastName(), row.getEmail(), row.getGender(),
+                row.getPhoneId(), row.getPhoneNumber(), row.getPhoneBrand(), row.getAvatarFileName());
+    }
+
+    private void put(UserResponse user) {
+        PhoneResponse phone = user.getPhone();
+        put(user.getId(), user.getVersion(), user.getFirstName(), user.getLastName(), user.getEmail(), user.getGender(),
+                phone != null ? phone.getId() : null, phone != null ? phone.getNumber() : null,
+                phone != null ? phone.getBrand() : null, user.getAvatarFileName());
+    }
+
+    private void put(int id, Integer version, String firstName, String lastName, String email, Gender gender,
+                     Integer phoneId, String phoneNumber, String phoneBrand, String avatarFileName) {
+        lock.writeLock().lock();
+        try {
+            if (repairing && deletedWhileRepairing.contains(id)) {
+                return;
+            }
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if (slot >= 0) {
+                if (version != null && versions[slot] > version) {
+                    return;
+                }
+            } else {
+                slot = insert(-slot - 1, id);
+            }
+            set(slot, version, firstName, lastName, email, gender, phoneId, phoneNumber, phoneBrand, avatarFileName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Строка прохода при построении: в конец колонок, без поиска; порядок по id наводит sortById
+    private void append(UserRow row) {
+        lock.writeLock().lock();
+        try {
+            if (size == ids.length) {
+                grow(size * 2);
+            }
+            ids[size] = row.getId();
+            set(size++, row.getVersion(), row.getFirstName(), row.getLastName(), row.getEmail(), row.getGender(),
+                    row.getPhoneId(), row.getPhoneNumber(), row.getPhoneBrand(), row.getAvatarFileName());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void set(int slot, Integer version, String firstName, String lastName, String email, Gender gender,
+                     Integer phoneId, String phoneNumber, String phoneBrand, String avatarFileName) {
+        versions[slot] = version != null ? version : 0;
+        firstNames[slot] = firstName;
+        firstNamesLc[slot] = lowerCase(firstName);
+        lastNames[slot] = lastName;
+        lastNamesLc[slot] = lowerCase(lastName);
+        emails[slot] = email;
+        emailsLc[slot] = lowerCase(email);
+        genders[slot] = (byte) gender.ordinal();
+        phoneIds[slot] = phoneId != null ? phoneId : 0;
+        phoneNumbers[slot] = phoneNumber;
+        phoneDigits[slot] = PhoneNumbers.normalize(phoneNumber);
+        brands[slot] = phoneId != null ? brandCode(phoneBrand) : NO_BRAND;
+        avatarFileNames[slot] = avatarFileName;
+    }
+
+    /**
+     * Упорядочивает загруженные строки по id одной примитивной сортировкой пар (id, слот) и переставляет колонки:
+     * O(n log n) вместо сдвига колонок на каждую строку прохода. Id в проходе уникальны; если строка всё же
+     * встретилась дважды, остаётся более новая версия, иначе двоичный поиск по id был бы неоднозначным.
+     */
+    private void sortById() {
+        long[] keys = new long[size];
+        for (int slot = 0; slot < size; slot++) {
+            keys[slot] = (long) ids[slot] << 32 | slot;
+        }
+        if (size >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(keys);
+        } else {
+            Arrays.sort(keys);
+        }
+        int[] order = new int[size];
+        int count = 0;
+        for (long key : keys) {
+            int slot = (int) key;
+            if (count > 0 && ids[order[count - 1]] == ids[slot]) {
+                if (versions[slot] >= versions[order[count - 1]]) {
+                    order[count - 1] = slot;
+                }
+                continue;
+            }
+            order[count++] = slot;
+        }
+        ids = permuted(ids, order, count);
+        versions = permuted(versions, order, count);
+        genders = permuted(genders, order, count);
+        phoneIds = permuted(phoneIds, order, count);
+        brands = permuted(brands, order, count);
+        firstNames = permuted(firstNames, order, count);
+        lastNames = permuted(lastNames, order, count);
+        emails = permuted(emails, order, count);
+        firstNamesLc = permuted(firstNamesLc, order, count);
+        lastNamesLc = permuted(lastNamesLc, order, count);
+        emailsLc = permuted(emailsLc, order, count);
+        phoneNumbers = permuted(phoneNumbers, order, count);
+        phoneDigits = permuted(phoneDigits, order, count);
+        avatarFileNames = permuted(avatarFileNames, order, count);
+        size = count;
+    }
+
+    private static int[] permuted(int[] column, int[] order, int count) {
+        int[] result = new int[column.length];
+        for (int i = 0; i < count; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    private static byte[] permuted(byte[] column, int[] order, int count) {
+        byte[] result = new byte[column.length];
+        for (int i = 0; i < count; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    private static String[] permuted(String[] column, int[] order, int count) {
+        String[] result = new String[column.length];
+        for (int i = 0; i < count; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    private void patch(Integer id, UserPatch patch) {
+        lock.writeLock().lock();
+        try {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if (slot < 0 || versions[slot] > patch.getVersion()) {
+                return;
+            }
+            versions[slot] = patch.getVersion();
+            if (patch.getFirstName() != null) {
+                firstNames[slot] = patch.getFirstName();
+                firstNamesLc[slot] = lowerCase(patch.getFirstName());
+            }
+            if (patch.getLastName() != null) {
+                lastNames[slot] = patch.getLastName();
+                lastNamesLc[slot] = lowerCase(patch.getLastName());
+            }
+            if (patch.getEmail() != null) {
+                emails[slot] = patch.getEmail();
+                emailsLc[slot] = lowerCase(patch.getEmail());
+            }
+            if (patch.getGender() != null) {
+                genders[slot] = (byte) patch.getGender().ordinal();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // В событии загрузки аватара телефон не загружен: меняются только версия и имя файла
+    private void avatar(Integer id, UserResponse user) {
+        lock.writeLock().lock();
+        try {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if (slot < 0 || versions[slot] > user.getVersion()) {
+                return;
+            }
+            versions[slot] = user.getVersion();
+            avatarFileNames[slot] = user.getAvatarFileName();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(Integer id) {
+        lock.writeLock().lock();
+        try {
+            if (repairing) {
+                deletedWhileRepairing.add(id);
+            }
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if (slot < 0) {
+                return;
+            }
+            // Удаления редки: сдвиг колонок дешевле, чем поддерживать дыры в сканировании
+            shift(slot + 1, slot, size - slot - 1);
+            size--;
+            clear(size);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Только для изменений после построения: новые id почти всегда больше всех имеющихся, так что это добавление в конец
+    private int insert(int slot, int id) {
+        if (size == ids.length) {
+            grow(size * 2);
+        }
+        shift(slot, slot + 1, size - slot);
+        size++;
+        ids[slot] = id;
+        return slot;
+    }
+
+    private void shift(int from, int to, int length) {
+        if (length <= 0) {
+            return;
+        }
+        System.arraycopy(ids, from, ids, to, length);
+        System.arraycopy(versions, from, versions, to, length);
+        System.arraycopy(genders, from, genders, to, length);
+        System.arraycopy(phoneIds, from, phoneIds, to, length);
+        System.arraycopy(brands, from, brands, to, length);
+        System.arraycopy(firstNames, from, firstNames, to, length);
+        System.arraycopy(lastNames, from, lastNames, to, length);
+        System.arraycopy(emails, from, emails, to, length);
+        System.arraycopy(firstNamesLc, from, firstNamesLc, to, length);
+        System.arraycopy(lastNamesLc, from, lastNamesLc, to, length);
+        System.arraycopy(emailsLc, from, emailsLc, to, length);
+        System.arraycopy(phoneNumbers, from, phoneNumbers, to, length);
+        System.arraycopy(phoneDigits, from, phoneDigits, to, length);
+        System.arraycopy(avatarFileNames, from, avatarFileNames, to, length);
+    }
+
+    // Освободившаяся ячейка не должна держать строки
+    private void clear(int slot) {
+        firstNames[slot] = lastNames[slot] = emails[slot] = null;
+        firstNamesLc[slot] = lastNamesLc[slot] = emailsLc[slot] = null;
+        phoneNumbers[slot] = phoneDigits[slot] = avatarFileNames[slot] = null;
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        genders = Arrays.copyOf(genders, capacity);
+        phoneIds = Arrays.copyOf(phoneIds, capacity);
+        brands = Arrays.copyOf(brands, capacity);
+        firstNames = Arrays.copyOf(firstNames, capacity);
+        lastNames = Arrays.copyOf(lastNames, capacity);
+        emails = Arrays.copyOf(emails, capacity);
+        firstNamesLc = Arrays.copyOf(firstNamesLc, capacity);
+        lastNamesLc = Arrays.copyOf(lastNamesLc, capacity);
+        emailsLc = Arrays.copyOf(emailsLc, capacity);
+        phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+        phoneDigits = Arrays.copyOf(phoneDigits, capacity);
+        avatarFileNames = Arrays.copyOf(avatarFileNames, capacity);
+    }
+
+    private int brandCode(String brand) {
+        if (brand == null) {
+            return NO_BRAND;
+        }
+        return brandCodes.computeIfAbsent(brand, key -> {
+            brandDictionary.add(key);
+            brandDictionaryLc.add(lowerCase(key));
+            return brandDictionary.size() - 1;
+        });
+    }
+
+    private static String lowerCase(String value) {
+        // Та же нормализация, что у колонок *_lc; уже нормализованная строка не копируется
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    // Сверка с БД
+
+    /**
+     * Сравнивает модель с таблицей одним потоковым проходом и чинит только разошедшиеся строки: каждая перечитывается
+     * из БД по id и заменяет строку модели (или удаляет её, если в БД строки уже нет). Строка, изменённая во время
+     * прохода, может дать ложное расхождение — тогда она просто перечитывается. Если разошлось больше
+     * {@value #MAX_REPAIRED_ROWS} строк, модель перестраивается целиком.
+     */
+    @Scheduled(initialDelayString = "${users.read-model.verify-interval:PT15M}",
+            fixedDelayString = "${users.read-model.verify-interval:PT15M}")
+    public void scheduledVerification() {
+        if (ready) {
+            verifyAndRepair();
+        }
+    }
+
+    public Verification verifyAndRepair() {
+        Verification verification = verify();
+        if (verification.diverged() == 0) {
+            return verification;
+        }
+        mismatches.increment(verification.diverged());
+        if (verification.divergedIds.getCardinality() > MAX_REPAIRED_ROWS) {
+            logger.warn("User read model diverged from the database ({}), loading", verification);
+            rebuild();
+        } else {
+            logger.warn("User read model diverged from the database ({}), reloading these rows", verification);
+            repair(verification.divergedIds);
+        }
+        return verification;
+    }
+
+    // Удаления во время перечитывания запоминаются: прочитанная до удаления строка не вернётся
+    private void repair(RoaringBitmap divergedIds) {
+        repairing = true;
+        try {
+            for (int id : divergedIds) {
+                Optional<UserRow> row = userScanner.row(id);
+                if (row.isPresent()) {
+                    put(row.get());
+                } else {
+                    remove(id);
+                }
+            }
+        } finally {
+            repairing = false;
+            deletedWhileRepairing.clear();
+        }
+    }
+
+    public Verification verify() {
+        long started = System.nanoTime();
+        Verification verification = new Verification();
+        BitSet seen = new BitSet();
+        int[] maxId = {0};
+        verification.databaseRows = userScanner.scan(row -> {
+            seen.set(row.getId());
+            maxId[0] = Math.max(maxId[0], row.getId());
+            lock.readLock().lock();
+            try {
+                int slot = Arrays.binarySearch(ids, 0, size, row.getId());
+                if (slot < 0) {
+                    verification.missing++;
+                    verification.divergedIds.add(row.getId());
+                } else if (versions[slot] < row.getVersion()) {
+                    verification.stale++;
+                    verification.divergedIds.add(row.getId());
+                } else if (versions[slot] == row.getVersion() && !sameValues(slot, row)) {
+                    verification.mismatched++;
+                    verification.divergedIds.add(row.getId());
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+        lock.readLock().lock();
+        try {
+            verification.modelRows = size;
+            // Пользователи, созданные после начала прохода, в нём не видны — их id больше прочитанных
+            for (int slot = 0; slot < size && ids[slot] <= maxId[0]; slot++) {
+                if (!seen.get(ids[slot])) {
+                    verification.extra++;
+                    verification.divergedIds.add(ids[slot]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        verification.millis = (System.nanoTime() - started) / 1_000_000;
+        lastVerification = verification;
+        return verification;
+    }
+
+    public Verification lastVerification() {
+        return lastVerification;
+    }
+
+    private boolean sameValues(int slot, UserRow row) {
+        return Objects.equals(firstNames[slot], row.getFirstName())
+                && Objects.equals(lastNames[slot], row.getLastName())
+                && Objects.equals(emails[slot], row.getEmail())
+                && GENDERS[genders[slot]] == row.getGender()
+                && phoneIds[slot] == (row.getPhoneId() != null ? row.getPhoneId() : 0)
+                && Objects.equals(phoneNumbers[slot], row.getPhoneNumber())
+                && Objects.equals(brands[slot] == NO_BRAND ? null : brandDictionary.get(brands[slot]), row.getPhoneBrand())
+                && Objects.equals(avatarFileNames[slot], row.getAvatarFileName());
+    }
+
+    /**
+     * Оценка занимаемой памяти в байтах: колонки по их ёмкости плюс строки (без учёта их общего использования
+     * с другими объектами приложения).
+     */
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            long capacity = ids.length;
+            // 5 примитивных колонок (4 * int + byte) и 9 ссылочных по 4 байта (compressed oops)
+            long bytes = capacity * (4 * Integer.BYTES + 1) + capacity * 9 * 4;
+            for (int slot = 0; slot < size; slot++) {
+                bytes += stringBytes(firstNames[slot]) + stringBytes(lastNames[slot]) + stringBytes(emails[slot])
+                        + distinctBytes(firstNamesLc[slot], firstNames[slot])
+                        + distinctBytes(lastNamesLc[slot], lastNames[slot])
+                        + distinctBytes(emailsLc[slot], emails[slot])
+                        + stringBytes(phoneNumbers[slot]) + distinctBytes(phoneDigits[slot], phoneNumbers[slot])
+                        + stringBytes(avatarFileNames[slot]);
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long distinctBytes(String value, String original) {
+        return value == original ? 0 : stringBytes(value);
+    }
+
+    // Объект String (24 байта) и byte[] (16 байт заголовка + Latin-1 символы), выровненные до 8
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 24 + ((16 + value.length() + 7) & ~7);
+    }
+
+    private static int[] genderRanks() {
+        Gender[] byName = GENDERS.clone();
+        Arrays.sort(byName, Comparator.comparing(Gender::name));
+        int[] ranks = new int[GENDERS.length];
+        for (int rank = 0; rank < byName.length; rank++) {
+            ranks[byName[rank].ordinal()] = rank;
+        }
+        return ranks;
+    }
+
+    /** Сортировка списка, подготовленная для сравнения строк по колонкам; при равенстве — по id (порядку слотов). */
+    private final class SlotOrder {
+        private static final int ID = 0;
+        private static final int FIRST_NAME = 1;
+        private static final int LAST_NAME = 2;
+        private static final int EMAIL = 3;
+        private static final int GENDER = 4;
+
+        private final int[] columns;
+        private final boolean[] descending;
+
+        SlotOrder(Sort sort) {
+            List<Sort.Order> orders = sort.toList();
+            columns = new int[orders.size()];
+            descending = new boolean[orders.size()];
+            for (int i = 0; i < columns.length; i++) {
+                Sort.Order order = orders.get(i);
+                if (!SORTABLE.contains(order.getProperty())) {
+                    throw new IllegalArgumentException("Unsupported sort property: " + order.getProperty());
+                }
+                columns[i] = switch (order.getProperty()) {
+                    case "firstName" -> FIRST_NAME;
+                    case "lastName" -> LAST_NAME;
+                    case "email" -> EMAIL;
+                    case "gender" -> GENDER;
+                    default -> ID;
+                };
+                descending[i] = order.isDescending();
+            }
+        }
+
+        int compare(int a, int b) {
+            for (int i = 0; i < columns.length; i++) {
+                int result = switch (columns[i]) {
+                    case FIRST_NAME -> firstNames[a].compareTo(firstNames[b]);
+                    case LAST_NAME -> lastNames[a].compareTo(lastNames[b]);
+                    case EMAIL -> emails[a].compareTo(emails[b]);
+                    case GENDER -> Integer.compare(GENDER_RANK[genders[a]], GENDER_RANK[genders[b]]);
+                    default -> Integer.compare(ids[a], ids[b]);
+                };
+                if (result != 0) {
+                    return descending[i] ? -result : result;
+                }
+            }
+            return Integer.compare(a, b);
+        }
+    }
+
+    /** Фильтр списка, подготовленный для проверки строк по колонкам. */
+    private final class Matcher implements IntPredicate {
+        private final MatchMode match;
+        private final String firstName;
+        private final String lastName;
+        private final String email;
+        private final int gender;
+        private final boolean[] brandMatches;
+        private final String phoneDigits;
+
+        Matcher(UserListFilter filter) {
+            this.match = filter.getMatch();
+            this.firstName = lowerCase(filter.getFirstName());
+            this.lastName = lowerCase(filter.getLastName());
+            this.email = lowerCase(filter.getEmail());
+            this.gender = filter.getGender() != null ? filter.getGender().ordinal() : -1;
+            this.phoneDigits = filter.getPhoneDigits();
+            String brand = lowerCase(filter.getPhoneBrand());
+            if (brand != null) {
+                // Бренд проверяется по словарю один раз, строки сравниваются по коду
+                brandMatches = new boolean[brandDictionaryLc.size()];
+                for (int code = 0; code < brandMatches.length; code++) {
+                    brandMatches[code] = matches(brandDictionaryLc.get(code), brand, match);
+                }
+            } else {
+                brandMatches = null;
+            }
+        }
+
+        @Override
+        public boolean test(int slot) {
+            if (gender >= 0 && genders[slot] != gender) {
+                return false;
+            }
+            if (brandMatches != null && (brands[slot] == NO_BRAND || !brandMatches[brands[slot]])) {
+                return false;
+            }
+            if (phoneDigits != null && !digitsMatch(UserReadModel.this.phoneDigits[slot])) {
+                return false;
+            }
+            return (firstName == null || matches(firstNamesLc[slot], firstName, match))
+                    && (lastName == null || matches(lastNamesLc[slot], lastName, match))
+                    && (email == null || matches(emailsLc[slot], email, match));
+        }
+
+        // Как в SQL: цифры номера сравниваются по префиксу (EXACT — целиком)
+        private boolean digitsMatch(String digits) {
+            if (digits == null) {
+                return false;
+            }
+            return match == MatchMode.EXACT ? digits.equals(phoneDigits) : digits.startsWith(phoneDigits);
+        }
+
+        private static boolean matches(String value, String query, MatchMode match) {
+            if (value == null) {
+                return false;
+            }
+            return switch (match) {
+                case EXACT -> value.equals(query);
+                case PREFIX -> value.startsWith(query);
+                case CONTAINS -> value.contains(query);
+            };
+        }
+    }
+
+    /** Результат сверки модели с БД. */
+    public static final class Verification {
+        private long databaseRows;
+        private int modelRows;
+        private long missing;
+        private long stale;
+        private long mismatched;
+        private long extra;
+        private long millis;
+        // Id строк, которые нужно перечитать; в отчёт не попадают
+        private final RoaringBitmap divergedIds = new RoaringBitmap();
+
+        public long diverged() {
+            return missing + stale + mismatched + extra;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("databaseRows", databaseRows);
+            map.put("modelRows", modelRows);
+            map.put("missing", missing);
+            map.put("stale", stale);
+            map.put("mismatched", mismatched);
+            map.put("extra", extra);
+            map.put("millis", millis);
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return "missing=" + missing + ", stale=" + stale + ", mismatched=" + mismatched + ", extra=" + extra;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.usersapi.service;
+
+import com.usersapi.repository.UserRepository;
+import com.usersapi.repository.UserRow;
+import com.usersapi.repository.UserShards;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Один проход по всей таблице пользователей без загрузки сущностей —
+ * общий источник для построения in-memory индексов при старте.
+ */
+@Component
+public class UserScanner {
+
+    private final UserRepository userRepository;
+    private final UserShards shards;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public UserScanner(UserRepository userRepository, UserShards shards, PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.shards = shards;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    // Возвращает число прочитанных строк; с шардами шарды читаются по очереди
+    public long scan(Consumer<UserRow> consumer) {
+        long rows = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            Long shardRows = UserShards.on(shard, () -> readOnlyTransaction.execute(status -> {
+                long count = 0;
+                try (Stream<UserRow> stream = userRepository.streamRows()) {
+                    for (var iterator = stream.iterator(); iterator.hasNext(); count++) {
+                        consumer.accept(iterator.next());
+                    }
+                }
+                return count;
+            }));
+            rows += shardRows != null ? shardRows : 0;
+        }
+        return rows;
+    }
+
+    // Текущая строка одного пользователя с его шарда — для точечной починки индексов
+    public Optional<UserRow> row(int id) {
+        return UserShards.on(shards.shardOf(id),
+                () -> readOnlyTransaction.execute(status -> userRepository.findRowById(id)));
+    }
+}
@@ -2,43 +2,109 @@ package com.usersapi.service;
 
 import com.usersapi.model.Gender;
 import com.usersapi.model.Phone;
+import com.usersapi.model.PhoneNumbers;
 import com.usersapi.model.User;
+import com.usersapi.model.UserTombstone;
+import com.usersapi.repository.ChangeSequence;
+import com.usersapi.repository.UserDirectory;
+import com.usersapi.repository.MatchMode;
+import com.usersapi.repository.UserListFilter;
+import com.usersapi.repository.UserListRepository;
 import com.usersapi.repository.UserRepository;
-import com.usersapi.repository.UserSpecifications;
+import com.usersapi.repository.UserRow;
+import com.usersapi.repository.UserTombstoneRepository;
 import com.usersapi.web.dto.*;
 import com.usersapi.web.errors.Errors.*;
+import org.hibernate.Hibernate;
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
-import static org.springframework.data.jpa.domain.Specification.where;
-
 @Service
 @Transactional
 public class UserService {
 
     private static final Logger logger = LoggerFactory.getLogger(UserService.class);
 
+    public static final int MAX_BATCH_SIZE = 200;
+    public static final String AVATAR_DIR = "uploads/avatars";
+
+    public static final int MAX_CHANGES_LIMIT = 1000;
+
+    // С шардами страница списка не дальше стольких строк от начала: каждый шард отдаёт ключи всего окна
+    public static final int MAX_SHARDED_WINDOW = 10_000;
+
     private final UserRepository userRepository;
+    private final UserTombstoneRepository tombstoneRepository;
+    private final ChangeSequence changeSequence;
+    private final ApplicationEventPublisher eventPublisher;
+    private final FuzzyNameIndex fuzzyNameIndex;
+    private final UserBitmapIndex bitmapIndex;
+    private final UserStatistics statistics;
+    private final ObjectProvider<UserReadModel> readModel;
+    private final UserShardReads shardReads;
+    // Только с шардами (профиль shards)
+    private final UserDirectory directory;
+    private final boolean secondLevelCache;
     private final Path avatarStorageLocation;
     private final ConcurrentHashMap<Integer, ReentrantLock> userLocks = new ConcurrentHashMap<>();
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, UserTombstoneRepository tombstoneRepository,
+                       ChangeSequence changeSequence, ApplicationEventPublisher eventPublisher,
+                       FuzzyNameIndex fuzzyNameIndex, UserBitmapIndex bitmapIndex,
+                       UserStatistics statistics, ObjectProvider<UserReadModel> readModel,
+                       UserShardReads shardReads, ObjectProvider<UserDirectory> directory,
+                       @Value("${spring.jpa.properties.hibernate.cache.use_second_level_cache:false}") boolean secondLevelCache) {
         this.userRepository = userRepository;
-        this.avatarStorageLocation = Paths.get("uploads/avatars").toAbsolutePath().normalize();
+        this.tombstoneRepository = tombstoneRepository;
+        this.changeSequence = changeSequence;
+        this.eventPublisher = eventPublisher;
+        this.fuzzyNameIndex = fuzzyNameIndex;
+        this.bitmapIndex = bitmapIndex;
+        this.statistics = statistics;
+        this.readModel = readModel;
+        this.shardReads = shardReads;
+        this.directory = directory.getIfAvailable();
+        this.secondLevelCache = secondLevelCache;
+        this.avatarStorageLocation = Paths.get(AVATAR_DIR).toAbsolutePath().normalize();
         try {
             Files.createDirectories(this.avatarStorageLocation);
         } catch (IOException ex) {
@@ -57,8 +123,9 @@ public class UserService {
         User user = new User();
         user.setFirstName(createUserRequest.getFirstName().trim());
         user.setLastName(createUserRequest.getLastName().trim());
-        user.setEmail(createUserRequest.getEmail().trim().toLowerCase());
+        user.setEmail(createUserRequest.getEmail().trim().toLowerCase(Locale.ROOT));
         user.setGender(createUserRequest.getGender());
+        reserveEmail(user.getEmail());
 
         if (createUserRequest.getPhone() != null) {
             Phone phone = new Phone();
@@ -70,27 +137,53 @@ public class UserService {
         }
 
         User saved = userRepository.save(user);
+        statistics.record(saved.getId(), saved.getChangeSeq(), null, statsState(saved));
         logger.info("User created successfully with ID: {}", saved.getId());
 
-        return toResponse(saved);
+        return publish(UserChangedEvent.Type.CREATED, toResponse(saved));
     }
 
     @Transactional(readOnly = true)
-    public UserResponse get(Integer id) {
+    public UserResponse get(Integer id, boolean includePhone) {
         logger.debug("Fetching user with ID: {}", id);
 
-        User user = userRepository.findById(id)
+        User user = findUser(id, includePhone)
                 .orElseThrow(() -> new NotFoundException("User not found: " + id));
 
-        return toResponse(user);
+        return toResponse(user, includePhone, isUserLocked(id));
+    }
+
+    // Пачка пользователей одним IN-запросом; порядок как в запросе, повторы схлопываются
+    @Transactional(readOnly = true)
+    public BatchGetUsersResponse batchGet(List<Integer> ids, boolean includePhone) {
+        Set<Integer> requested = new LinkedHashSet<>(ids);
+        if (requested.size() > MAX_BATCH_SIZE) {
+            throw new BadRequestException("At most " + MAX_BATCH_SIZE + " ids per batch, got " + requested.size());
+        }
+        logger.debug("Fetching batch of {} users", requested.size());
+
+        List<User> loaded = findAllById(requested, includePhone);
+        Map<Integer, User> found = loaded.stream().collect(Collectors.toMap(User::getId, Function.identity()));
+        Set<Integer> locked = lockedUserIds(found.keySet());
+
+        List<UserResponse> users = new ArrayList<>(found.size());
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : requested) {
+            User user = found.get(id);
+            if (user != null) {
+                users.add(toResponse(user, includePhone, locked.contains(id)));
+            } else {
+                missing.add(id);
+            }
+        }
+        return new BatchGetUsersResponse(users, missing);
     }
 
     public void delete(Integer id) {
         logger.info("Deleting user with ID: {}", id);
 
-        if (!userRepository.existsById(id)) {
-            throw new NotFoundException("User not found: " + id);
-        }
+        UserRow row = userRepository.findRowById(id)
+                .orElseThrow(() -> new NotFoundException("User not found: " + id));
 
         // Проверка на заблокированного пользователя (423)
         if (isUserLocked(id)) {
@@ -98,14 +191,21 @@ public class UserService {
         }
 
         userRepository.deleteById(id);
+        long changeSeq = changeSequence.next();
+        tombstoneRepository.save(new UserTombstone(id, changeSeq, Instant.now()));
+        releaseEmail(row.getEmail());
+        deleteAvatarFilesAfterCompletion(row.getAvatarFileName(), null);
+        statistics.record(id, changeSeq, UserStatistics.State.of(row), null);
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.DELETED, id, null));
         logger.info("User deleted successfully with ID: {}", id);
     }
 
     public UserResponse update(Integer id, UpdateUserRequest updateUserRequest) {
         logger.info("Updating user with ID: {}", id);
 
-        User user = userRepository.findById(id)
+        User user = findUser(id, true)
                 .orElseThrow(() -> new NotFoundException("User not found: " + id));
+        UserStatistics.State before = statsState(user);
 
         if (updateUserRequest.getFirstName() != null) {
             user.setFirstName(updateUserRequest.getFirstName().trim());
@@ -114,9 +214,13 @@ public class UserService {
             user.setLastName(updateUserRequest.getLastName().trim());
         }
         if (updateUserRequest.getEmail() != null) {
-            String newEmail = updateUserRequest.getEmail().trim().toLowerCase();
-            if (!user.getEmail().equals(newEmail) && userRepository.existsByEmail(newEmail)) {
-                throw new ConflictException("Email already exists: " + newEmail);
+            String newEmail = updateUserRequest.getEmail().trim().toLowerCase(Locale.ROOT);
+            if (!user.getEmail().equals(newEmail)) {
+                if (userRepository.existsByEmail(newEmail)) {
+                    throw new ConflictException("Email already exists: " + newEmail);
+                }
+                reserveEmail(newEmail);
+                releaseEmail(user.getEmail());
             }
             user.setEmail(newEmail);
         }
@@ -124,20 +228,81 @@ public class UserService {
             user.setGender(updateUserRequest.getGender());
         }
 
-        User updated = userRepository.save(user);
+        User updated = userRepository.saveAndFlush(user);
+        statistics.record(id, updated.getChangeSeq(), before, statsState(updated));
         logger.info("User updated successfully with ID: {}", id);
 
-        return toResponse(updated);
+        return publish(UserChangedEvent.Type.UPDATED, toResponse(updated));
+    }
+
+    /**
+     * Условное обновление одним UPDATE без чтения пользователя.
+     * expectedVersion — версия из If-Match, null — обновить при любой версии (If-Match: *).
+     * Возвращает новую версию.
+     */
+    public int patch(Integer id, Integer expectedVersion, UpdateUserRequest request) {
+        logger.info("Patching user with ID: {} (If-Match version: {})", id, expectedVersion);
+
+        String firstName = request.getFirstName() != null ? request.getFirstName().trim() : null;
+        String lastName = request.getLastName() != null ? request.getLastName().trim() : null;
+        String email = request.getEmail() != null ? request.getEmail().trim().toLowerCase(Locale.ROOT) : null;
+        Gender gender = request.getGender();
+        if (firstName == null && lastName == null && email == null && gender == null) {
+            throw new BadRequestException("Nothing to update");
+        }
+
+        if (isUserLocked(id)) {
+            throw new LockedException("User is currently being modified by another request");
+        }
+
+        // С шардами новый email резервируется в каталоге, а прежний нужно знать, чтобы освободить
+        if (email != null && directory != null) {
+            Optional<UserRow> current = userRepository.findRowById(id);
+            if (current.isPresent() && !current.get().getEmail().equals(email)) {
+                reserveEmail(email);
+                releaseEmail(current.get().getEmail());
+            }
+        }
+
+        long changeSeq = changeSequence.next();
+        // Прежний пол для статистики возвращает тот же UPDATE
+        Optional<Gender> previousGender;
+        try {
+            previousGender = userRepository.patch(id, expectedVersion, changeSeq, firstName, lastName, email, gender);
+        } catch (DataIntegrityViolationException ex) {
+            // Уникальность email проверяет индекс, отдельный existsByEmail не нужен
+            throw new ConflictException("Email already exists: " + email);
+        }
+        if (previousGender.isEmpty()) {
+            // Дополнительный запрос только на неуспешном пути
+            if (!userRepository.existsById(id)) {
+                throw new NotFoundException("User not found: " + id);
+            }
+            throw new PreconditionFailedException("Version mismatch for user " + id + ": expected " + expectedVersion);
+        }
+
+        if (gender != null && previousGender.get() != gender) {
+            statistics.record(id, changeSeq, new UserStatistics.State(previousGender.get(), false, null, null),
+                    new UserStatistics.State(gender, false, null, null));
+        }
+
+        // Без If-Match: * новая версия известна заранее; иначе её нужно прочитать
+        int version = expectedVersion != null ? expectedVersion + 1 : userRepository.findVersionById(id);
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.PATCHED, id, null,
+                new UserPatch(version, firstName, lastName, email, gender)));
+        logger.info("User patched successfully with ID: {}, version: {}", id, version);
+        return version;
     }
 
     public UserResponse updatePhone(Integer userId, UpdatePhoneRequest updatePhoneRequest) {
         logger.info("Updating phone for user ID: {}", userId);
 
-        User user = userRepository.findById(userId)
+        User user = findUser(userId, true)
                 .orElseThrow(() -> new NotFoundException("User not found: " + userId));
+        UserStatistics.State before = statsState(user);
 
         // Дополнительная бизнес-валидация номера телефона
-        if (updatePhoneRequest.getNumber() != null && !isAcceptablePhoneNumber(updatePhoneRequest.getNumber())) {
+        if (updatePhoneRequest.getNumber() != null && !PhoneNumbers.isAcceptable(updatePhoneRequest.getNumber())) {
             throw new NotAcceptableException("Phone number format not acceptable");
         }
 
@@ -152,11 +317,14 @@ public class UserService {
         if (updatePhoneRequest.getBrand() != null) {
             phone.setBrand(updatePhoneRequest.getBrand().trim());
         }
+        // Телефон — часть представления пользователя: строка users получает новые change_seq и version
+        user.markChanged();
 
-        User updated = userRepository.save(user);
+        User updated = userRepository.saveAndFlush(user);
+        statistics.record(userId, updated.getChangeSeq(), before, statsState(updated));
         logger.info("Phone updated successfully for user ID: {}", userId);
 
-        return toResponse(updated);
+        return publish(UserChangedEvent.Type.PHONE_UPDATED, toResponse(updated));
     }
 
     public void uploadAvatar(Integer userId, MultipartFile file) {
@@ -179,24 +347,25 @@ public class UserService {
                 .orElseThrow(() -> new NotFoundException("User not found: " + userId));
 
         try {
-            // Delete old avatar if exists
-            if (user.getAvatarFileName() != null) {
-                Path oldFile = avatarStorageLocation.resolve(user.getAvatarFileName());
-                Files.deleteIfExists(oldFile);
-                logger.debug("Deleted old avatar for user ID: {}", userId);
-            }
-
             // Generate unique filename
             String fileName = UUID.randomUUID() + "_" + file.getOriginalFilename();
             Path targetLocation = avatarStorageLocation.resolve(fileName);
             Files.copy(file.getInputStream(), targetLocation);
+            // Old avatar goes away only after commit; on rollback the new file is removed instead
+            deleteAvatarFilesAfterCompletion(user.getAvatarFileName(), fileName);
+
+            // Телефон здесь не загружается и не меняется — в статистике учитывается только аватар
+            UserStatistics.State before = new UserStatistics.State(user.getGender(), false, null,
+                    user.getAvatarFileName() != null ? user.getAvatarFileSize() : null);
 
             // Update user entity
             user.setAvatarFileName(fileName);
             user.setAvatarFileSize(file.getSize());
             user.setAvatarContentType(contentType);
 
-            userRepository.save(user);
+            User updated = userRepository.saveAndFlush(user);
+            statistics.record(userId, updated.getChangeSeq(), before, new UserStatistics.State(updated.getGender(), false, null, updated.getAvatarFileSize()));
+            publish(UserChangedEvent.Type.AVATAR_UPLOADED, toResponse(updated, false, isUserLocked(userId)));
             logger.info("Avatar uploaded successfully for user ID: {}", userId);
 
         } catch (IOException ioException) {
@@ -224,12 +393,33 @@ public class UserService {
         }
     }
 
+    // Файлы удаляются по исходу транзакции: при откате строка по-прежнему ссылается на старый файл.
+    // Если процесс упадёт раньше, осиротевший файл подберёт AvatarReconciler
+    private void deleteAvatarFilesAfterCompletion(String onCommit, String onRollback) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                String fileName = status == STATUS_COMMITTED ? onCommit : onRollback;
+                if (fileName == null) {
+                    return;
+                }
+                try {
+                    Files.deleteIfExists(avatarStorageLocation.resolve(fileName));
+                    logger.debug("Deleted avatar file {}", fileName);
+                } catch (IOException ex) {
+                    logger.warn("Could not delete avatar file {}: {}", fileName, ex.getMessage());
+                }
+            }
+        });
+    }
+
     // Метод для принудительной блокировки пользователя (423)
     public void lockUser(Integer userId) {
         logger.info("Locking user with ID: {}", userId);
 
         ReentrantLock lock = userLocks.computeIfAbsent(userId, k -> new ReentrantLock());
         lock.lock();
+        eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.LOCKED, userId, null));
     }
 
     // Метод для разблокировки пользователя
@@ -240,6 +430,7 @@ public class UserService {
         if (lock != null && lock.isHeldByCurrentThread()) {
             lock.unlock();
             userLocks.remove(userId);
+            eventPublisher.publishEvent(new UserChangedEvent(UserChangedEvent.Type.UNLOCKED, userId, null));
         }
     }
 
@@ -249,18 +440,34 @@ public class UserService {
         return lock != null && lock.isLocked();
     }
 
+    // Заблокированные среди переданных id: обходим меньшую из двух коллекций
+    private Set<Integer> lockedUserIds(Set<Integer> ids) {
+        if (userLocks.isEmpty()) {
+            return Set.of();
+        }
+        Set<Integer> locked = new HashSet<>();
+        if (userLocks.size() < ids.size()) {
+            userLocks.forEach((id, lock) -> {
+                if (lock.isLocked() && ids.contains(id)) {
+                    locked.add(id);
+                }
+            });
+        } else {
+            for (Integer id : ids) {
+                if (isUserLocked(id)) {
+                    locked.add(id);
+                }
+            }
+        }
+        return locked;
+    }
+
     // Метод для симуляции внутренней ошибки (500)
     public void simulateInternalError() {
         logger.error("Simulating internal server error");
         throw new InternalErrorException("Simulated internal server error");
     }
 
-    // Метод для проверки допустимости номера телефона
-    private boolean isAcceptablePhoneNumber(String number) {
-        // Простая валидация - номер должен содержать только цифры, +, -, пробелы и скобки
-        return number != null && number.matches("^[\\d\\+\\-\\(\\)\\s]+$");
-    }
-
     @Transactional(readOnly = true)
     public Page<UserResponse> list(
             String firstName,
@@ -269,26 +476,327 @@ public class UserService {
             Gender gender,
             String phoneBrand,
             String phoneNumber,
+            MatchMode match,
+            boolean includePhone,
             Pageable pageable) {
 
-        logger.debug("Fetching users list with filters - firstName: {}, lastName: {}, email: {}, gender: {}, phoneBrand: {}, phoneNumber: {}, page: {}, size: {}",
-                firstName, lastName, email, gender, phoneBrand, phoneNumber, pageable.getPageNumber(), pageable.getPageSize());
+        logger.debug("Fetching users list with filters - firstName: {}, lastName: {}, email: {}, gender: {}, phoneBrand: {}, phoneNumber: {}, match: {}, page: {}, size: {}",
+                firstName, lastName, email, gender, phoneBrand, phoneNumber, match, pageable.getPageNumber(), pageable.getPageSize());
+
+        // Номер ищем в канонической форме: "+7-999-111" и "7999111" дают одинаковый результат
+        String phoneDigits = PhoneNumbers.normalize(phoneNumber);
+        if (phoneDigits != null && phoneDigits.isEmpty()) {
+            // Во входном номере нет цифр — ни один телефон не подойдёт
+            return Page.empty(pageable);
+        }
+
+        UserListFilter filter = new UserListFilter(firstName, lastName, email, gender, phoneBrand, phoneDigits, match);
 
-        Specification<User> spec = where(UserSpecifications.firstNameContains(firstName))
-                .and(UserSpecifications.lastNameContains(lastName))
-                .and(UserSpecifications.emailContains(email))
-                .and(UserSpecifications.genderEquals(gender))
-                .and(UserSpecifications.phoneBrandContains(phoneBrand))
-                .and(UserSpecifications.phoneNumberContains(phoneNumber));
+        RoaringBitmap candidates = indexedCandidates(filter);
+
+        // Колоночная модель в памяти, если включена и уже построена: без SQL
+        UserReadModel model = readModel.getIfAvailable();
+        if (model != null && model.isReady()) {
+            Page<UserResponse> page = model.list(filter, candidates, includePhone, pageable);
+            page.forEach(user -> user.setLocked(isUserLocked(user.getId())));
+            return page;
+        }
 
-        Page<UserResponse> result = userRepository.findAll(spec, pageable).map(this::toResponse);
+        // Фильтр целиком решён битовыми индексами и порядок по id: страница выбирается по рангу id, без скана и count
+        Sort sort = pageable.getSort();
+        if (candidates != null && onlyIndexedFilters(filter) && pageable.isPaged()
+                && (sort.isUnsorted() || (sort.getOrderFor("id") != null && sort.stream().count() == 1))) {
+            boolean descending = sort.isSorted() && sort.getOrderFor("id").isDescending();
+            return pageByRank(candidates, descending, includePhone, pageable);
+        }
+
+        Page<User> users = shardReads.isSharded()
+                ? findPageOnShards(filter, includePhone, pageable)
+                : userRepository.findPage(filter, includePhone, pageable);
+        Page<UserResponse> result = users.map(user -> toResponse(user, includePhone, isUserLocked(user.getId())));
         logger.debug("Found {} users on page {} of {}",
                 result.getNumberOfElements(), result.getNumber(), result.getTotalPages());
 
         return result;
     }
 
+    /**
+     * Фасеты списка: число пользователей каждого пола, бренда, с телефоном и аватаром внутри того же фильтра,
+     * что у list. Считаются по битовым индексам; текстовые условия сужают выборку колоночной моделью или
+     * одним запросом id. null, пока индексы строятся.
+     */
+    @Transactional(readOnly = true)
+    public UserFacets facets(String firstName, String lastName, String email, Gender gender,
+                             String phoneBrand, String phoneNumber, MatchMode match) {
+        if (!bitmapIndex.isReady()) {
+            return null;
+        }
+        String phoneDigits = PhoneNumbers.normalize(phoneNumber);
+        if (phoneDigits != null && phoneDigits.isEmpty()) {
+            return bitmapIndex.facets(new RoaringBitmap());
+        }
+        UserListFilter filter = new UserListFilter(firstName, lastName, email, gender, phoneBrand, phoneDigits, match);
+
+        RoaringBitmap within = bitmapIndex.candidates(gender, phoneBrand, filter.getMatch());
+        if (!onlyIndexedFilters(filter)) {
+            UserReadModel model = readModel.getIfAvailable();
+            within = model != null && model.isReady()
+                    ? model.matchingIds(filter, within)
+                    : RoaringBitmap.bitmapOfUnordered(shardReads.onEachShard(shard -> userRepository.findIds(filter)).stream()
+                            .flatMap(List::stream).mapToInt(Integer::intValue).toArray());
+        }
+        return bitmapIndex.facets(within);
+    }
+
+    // Кандидаты по полу и бренду из битовых индексов; null — таких условий нет или индексы ещё строятся
+    private RoaringBitmap indexedCandidates(UserListFilter filter) {
+        if ((filter.getGender() == null && filter.getPhoneBrand() == null) || !bitmapIndex.isReady()) {
+            return null;
+        }
+        return bitmapIndex.candidates(filter.getGender(), filter.getPhoneBrand(), filter.getMatch());
+    }
+
+    // Текст имён, email и цифры номера битовые индексы не покрывают
+    private static boolean onlyIndexedFilters(UserListFilter filter) {
+        return filter.getFirstName() == null && filter.getLastName() == null
+                && filter.getEmail() == null && filter.getPhoneDigits() == null;
+    }
+
+    /**
+     * Страница списка со всех шардов. Каждый шард отдаёт только ключи сортировки и id первых offset + size строк
+     * (равные — по id, как без шардов) и своё число строк; уже упорядоченные списки шардов сливаются k-way,
+     * и сущности загружаются только для строк страницы. Окно ограничено {@link #MAX_SHARDED_WINDOW}.
+     */
+    private Page<User> findPageOnShards(UserListFilter filter, boolean includePhone, Pageable pageable) {
+        if (pageable.isUnpaged() || pageable.getOffset() + pageable.getPageSize() > MAX_SHARDED_WINDOW) {
+            throw new BadRequestException("Only the first " + MAX_SHARDED_WINDOW
+                    + " users of a list can be paged through; narrow the filters");
+        }
+        Sort sort = pageable.getSort().getOrderFor("id") != null ? pageable.getSort() : pageable.getSort().and(Sort.by("id"));
+        int window = (int) (pageable.getOffset() + pageable.getPageSize());
+        List<ShardWindow> windows = shardReads.onEachShard(shard -> {
+            List<Object[]> keys = userRepository.findSortKeys(filter, sort, window);
+            // Неполное окно — это и есть все строки шарда
+            return new ShardWindow(keys, keys.size() < window ? keys.size() : userRepository.count(filter));
+        });
+
+        Comparator<Object[]> order = keyOrder(sort);
+        PriorityQueue<int[]> heads = new PriorityQueue<>(windows.size(),
+                (a, b) -> order.compare(windows.get(a[0]).keys.get(a[1]), windows.get(b[0]).keys.get(b[1])));
+        for (int shard = 0; shard < windows.size(); shard++) {
+            if (!windows.get(shard).keys.isEmpty()) {
+                heads.add(new int[]{shard, 0});
+            }
+        }
+        List<Integer> pageIds = new ArrayList<>(pageable.getPageSize());
+        for (long rank = 0; rank < window && !heads.isEmpty(); rank++) {
+            int[] head = heads.poll();
+            List<Object[]> keys = windows.get(head[0]).keys;
+            if (rank >= pageable.getOffset()) {
+                pageIds.add((Integer) keys.get(head[1])[0]);
+            }
+            if (++head[1] < keys.size()) {
+                heads.add(head);
+            }
+        }
+
+        Map<Integer, User> users = findAllById(pageIds, includePhone).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        // Удалённые между двумя запросами пропускаются
+        List<User> content = pageIds.stream().map(users::get).filter(user -> user != null).toList();
+        long total = windows.stream().mapToLong(shardWindow -> shardWindow.total).sum();
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    // Тот же порядок, что у ORDER BY списка, по строкам findSortKeys; пол в SQL сравнивается по имени значения
+    private static Comparator<Object[]> keyOrder(Sort sort) {
+        Comparator<Object[]> comparator = null;
+        for (Sort.Order order : sort) {
+            int column = UserListRepository.SORT_KEYS.indexOf(order.getProperty());
+            Comparator<Object[]> next = (a, b) -> sortValue(a[column]).compareTo(sortValue(b[column]));
+            if (order.isDescending()) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> sortValue(Object value) {
+        return (Comparable<Object>) (value instanceof Gender gender ? gender.name() : value);
+    }
+
+    private static final class ShardWindow {
+        private final List<Object[]> keys;
+        private final long total;
+
+        ShardWindow(List<Object[]> keys, long total) {
+            this.keys = keys;
+            this.total = total;
+        }
+    }
+
+    // Первые limit элементов по change_seq из упорядоченных списков шардов
+    private static <T> List<T> firstByChangeSeq(List<List<T>> perShard, ToLongFunction<T> changeSeq, int limit) {
+        if (perShard.size() == 1) {
+            return perShard.get(0);
+        }
+        return perShard.stream().flatMap(List::stream)
+                .sorted(Comparator.comparingLong(changeSeq)).limit(limit).toList();
+    }
+
+    // Пользователи по id одним IN-запросом; с шардами — запрос на каждый затронутый шард, параллельно
+    private List<User> findAllById(Collection<Integer> ids, boolean includePhone) {
+        if (!shardReads.isSharded()) {
+            return includePhone ? userRepository.findAllWithPhoneByIdIn(ids) : userRepository.findAllByIdIn(ids);
+        }
+        Map<Integer, List<Integer>> byShard = ids.stream()
+                .collect(Collectors.groupingBy(shardReads::shardOf, TreeMap::new, Collectors.toList()));
+        return shardReads.onShards(byShard.keySet(), shard -> includePhone
+                        ? userRepository.findAllWithPhoneByIdIn(byShard.get(shard))
+                        : userRepository.findAllByIdIn(byShard.get(shard)))
+                .stream().flatMap(List::stream).toList();
+    }
+
+    private Page<UserResponse> pageByRank(RoaringBitmap ids, boolean descending, boolean includePhone, Pageable pageable) {
+        int total = ids.getCardinality();
+        int from = (int) Math.min(pageable.getOffset(), total);
+        int to = Math.min(from + pageable.getPageSize(), total);
+        List<Integer> pageIds = new ArrayList<>(to - from);
+        for (int rank = from; rank < to; rank++) {
+            pageIds.add(ids.select(descending ? total - 1 - rank : rank));
+        }
+        return new PageImpl<>(responsesInOrder(pageIds, includePhone), pageable, total);
+    }
+
+    // Пользователи в порядке ids; удалённые к этому моменту пропускаются
+    private List<UserResponse> responsesInOrder(List<Integer> ids, boolean includePhone) {
+        List<User> loaded = findAllById(ids, includePhone);
+        Map<Integer, User> users = loaded.stream().collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<UserResponse> content = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            User user = users.get(id);
+            if (user != null) {
+                content.add(toResponse(user, includePhone, isUserLocked(id)));
+            }
+        }
+        return content;
+    }
+
+    // Нечёткий поиск по имени/фамилии: кандидаты из in-memory словаря, порядок — по похожести, сортировка не применяется
+    @Transactional(readOnly = true)
+    public Page<UserResponse> fuzzyList(String firstName, String lastName, boolean includePhone, Pageable pageable) {
+        logger.debug("Fetching users by fuzzy name - firstName: {}, lastName: {}, page: {}, size: {}",
+                firstName, lastName, pageable.getPageNumber(), pageable.getPageSize());
+
+        List<FuzzyNameIndex.Match> matches = fuzzyNameIndex.search(firstName, lastName);
+        int from = (int) Math.min(pageable.getOffset(), matches.size());
+        int to = Math.min(from + pageable.getPageSize(), matches.size());
+
+        List<Integer> pageIds = matches.subList(from, to).stream().map(FuzzyNameIndex.Match::getUserId).toList();
+        return new PageImpl<>(responsesInOrder(pageIds, includePhone), pageable, matches.size());
+    }
+
+    /**
+     * Изменения после водяного знака since: изменённые пользователи и id удалённых, по возрастанию change_seq.
+     * Новый водяной знак передаётся следующим запросом; hasMore — за ним уже есть изменения.
+     * <p>
+     * Транзакция не read-only, чтобы чтение шло в основную БД: водяной знак берётся из её последовательности,
+     * и отстающая реплика вернула бы не все изменения до него.
+     */
+    @Transactional
+    public UserChangesResponse changesSince(long since, int limit, boolean includePhone) {
+        if (since < 0) {
+            throw new BadRequestException("since must not be negative");
+        }
+        if (limit < 1 || limit > MAX_CHANGES_LIMIT) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_CHANGES_LIMIT);
+        }
+
+        // Водяной знак фиксируется до чтения: всё, что не больше него, уже закоммичено
+        long upTo = changeSequence.watermark();
+        if (upTo <= since) {
+            return new UserChangesResponse(List.of(), List.of(), since, false);
+        }
+        PageRequest window = PageRequest.of(0, limit + 1);
+        List<User> users = firstByChangeSeq(shardReads.onEachShard(shard -> includePhone
+                ? userRepository.findChanges(since, upTo, window)
+                : userRepository.findChangesWithoutPhone(since, upTo, window)), User::getChangeSeq, window.getPageSize());
+        List<UserTombstone> tombstones = firstByChangeSeq(
+                shardReads.onEachShard(shard -> tombstoneRepository.findChanges(since, upTo, window)),
+                UserTombstone::getChangeSeq, window.getPageSize());
+
+        // Слияние двух упорядоченных списков по change_seq, не больше limit элементов
+        List<UserResponse> changed = new ArrayList<>();
+        List<Integer> deleted = new ArrayList<>();
+        int u = 0;
+        int t = 0;
+        long watermark = upTo;
+        while (u < users.size() || t < tombstones.size()) {
+            if (changed.size() + deleted.size() == limit) {
+                return new UserChangesResponse(changed, deleted, watermark, true);
+            }
+            if (t == tombstones.size() || (u < users.size() && users.get(u).getChangeSeq() < tombstones.get(t).getChangeSeq())) {
+                User user = users.get(u++);
+                changed.add(toResponse(user, includePhone, isUserLocked(user.getId())));
+                watermark = user.getChangeSeq();
+            } else {
+                UserTombstone tombstone = tombstones.get(t++);
+                deleted.add(tombstone.getUserId());
+                watermark = tombstone.getChangeSeq();
+            }
+        }
+        return new UserChangesResponse(changed, deleted, upTo, false);
+    }
+
+    // С шардами уникальный индекс видит только свой шард: email резервируется в каталоге на все шарды
+    private void reserveEmail(String email) {
+        if (directory != null && !directory.reserveEmail(email)) {
+            throw new ConflictException("Email already exists: " + email);
+        }
+    }
+
+    private void releaseEmail(String email) {
+        if (directory != null) {
+            directory.releaseEmailAfterCommit(email);
+        }
+    }
+
+    // Слушатели получают событие после коммита (см. @TransactionalEventListener)
+    private UserResponse publish(UserChangedEvent.Type type, UserResponse user) {
+        eventPublisher.publishEvent(new UserChangedEvent(type, user.getId(), user));
+        return user;
+    }
+
+    // Запрос с entity graph обходит кэш второго уровня, поэтому при включённом кэше пользователь
+    // и телефон читаются по id: оба попадания в кэш обходятся без SQL
+    private Optional<User> findUser(Integer id, boolean includePhone) {
+        if (!includePhone) {
+            return userRepository.findById(id);
+        }
+        if (!secondLevelCache) {
+            return userRepository.findWithPhoneById(id);
+        }
+        Optional<User> user = userRepository.findById(id);
+        user.ifPresent(u -> Hibernate.initialize(u.getPhone()));
+        return user;
+    }
+
     private UserResponse toResponse(User user) {
+        return toResponse(user, true, isUserLocked(user.getId()));
+    }
+
+    // includePhone = false не трогает ленивую связь, поле phone в ответе остаётся null
+    // Пользователь должен быть загружен с телефоном
+    private static UserStatistics.State statsState(User user) {
+        Phone phone = user.getPhone();
+        return new UserStatistics.State(user.getGender(), phone != null, phone != null ? phone.getBrand() : null,
+                user.getAvatarFileName() != null ? user.getAvatarFileSize() : null);
+    }
+
+    private UserResponse toResponse(User user, boolean includePhone, boolean locked) {
         UserResponse userResponse = new UserResponse();
         userResponse.setId(user.getId());
         userResponse.setVersion(user.getVersion());
@@ -297,7 +805,7 @@ public class UserService {
         userResponse.setEmail(user.getEmail());
         userResponse.setGender(user.getGender());
 
-        if (user.getPhone() != null) {
+        if (includePhone && user.getPhone() != null) {
             PhoneResponse phoneResponse = new PhoneResponse();
             phoneResponse.setId(user.getPhone().getId());
             phoneResponse.setNumber(user.getPhone().getNumber());
@@ -307,7 +815,7 @@ public class UserService {
 
         userResponse.setAvatarFileName(user.getAvatarFileName());
         userResponse.setHasAvatar(user.getAvatarFileName() != null);
-        userResponse.setLocked(isUserLocked(user.getId()));
+        userResponse.setLocked(locked);
 
         return userResponse;
     }
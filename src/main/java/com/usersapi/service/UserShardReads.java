@@ -0,0 +1,98 @@
+package com.usersapi.service;
+
+import com.usersapi.repository.UserShards;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Чтения, которым нужны все шарды (scatter-gather): список, фасеты, лента изменений, пачка id.
+ * <p>
+ * С шардами чтение каждого шарда идёт в своей read-only транзакции на отдельном потоке, параллельно;
+ * без шардов — один вызов в транзакции вызывающего, как и было. Потоков не больше, чем соединений во всех
+ * пулах шардов: лишний поток всё равно ждал бы соединение, а остальные чтения ждут в очереди.
+ */
+@Component
+public class UserShardReads implements DisposableBean {
+
+    private final UserShards shards;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ExecutorService executor;
+
+    public UserShardReads(UserShards shards, PlatformTransactionManager transactionManager,
+                          @Value("${datasource.shards.pool-size:10}") int connectionsPerShard) {
+        this.shards = shards;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readOnlyTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = shards.isSharded()
+                ? Executors.newFixedThreadPool(shards.count() * connectionsPerShard, task -> {
+                    Thread thread = new Thread(task, "user-shard-read-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+    }
+
+    public boolean isSharded() {
+        return shards.isSharded();
+    }
+
+    public int shardOf(int userId) {
+        return shards.shardOf(userId);
+    }
+
+    /** Результаты read по всем шардам в порядке номеров шардов. */
+    public <T> List<T> onEachShard(IntFunction<T> read) {
+        List<Integer> all = new ArrayList<>();
+        for (int shard = 0; shard < shards.count(); shard++) {
+            all.add(shard);
+        }
+        return onShards(all, read);
+    }
+
+    /** Результаты read по перечисленным шардам, в том же порядке. */
+    public <T> List<T> onShards(Collection<Integer> shardNumbers, IntFunction<T> read) {
+        if (!shards.isSharded()) {
+            return shardNumbers.stream().map(read::apply).toList();
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (int shard : shardNumbers) {
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> UserShards.on(shard, () -> readOnlyTransaction.execute(status -> read.apply(shard))), executor));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+        return results;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
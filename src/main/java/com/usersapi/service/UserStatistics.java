@@ -0,0 +1,331 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+import com.usersapi.repository.ChangeSequence;
+import com.usersapi.repository.UserRow;
+import com.usersapi.web.dto.UserStatsResponse;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Статистика пользователей для {@code GET /api/v1/users:stats}: всего, по полу, по бренду телефона,
+ * с телефоном, с аватаром и суммарный размер аватаров.
+ * <p>
+ * Счётчики — {@link LongAdder}: параллельные записи не конкурируют за одну ячейку. Методы записи
+ * {@link UserService} передают состояние пользователя до и после изменения и его {@code change_seq},
+ * разница применяется только после коммита, так что откаты счётчики не трогают.
+ * <p>
+ * При старте и периодически счётчики строятся заново одним потоковым проходом по таблице, не дожидаясь
+ * паузы в записях. Проход запоминает {@code change_seq} строк, изменённых после водяного знака
+ * {@link ChangeSequence}, а изменения, закоммиченные за время прохода, собираются отдельно. Итог — прочитанное
+ * плюс разницы тех изменений, которых проход не увидел; после подмены счётчиков так же отсеиваются изменения,
+ * закоммиченные до неё, но применяемые позже, пока водяной знак не пройдёт все номера, которые мог видеть проход.
+ */
+@Component
+public class UserStatistics {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserStatistics.class);
+
+    private final UserScanner userScanner;
+    private final ChangeSequence changeSequence;
+
+    private final Counters live = new Counters();
+    // Применение изменений (чтение) против подмены счётчиков результатом сверки (запись)
+    private final ReentrantReadWriteLock applyLock = new ReentrantReadWriteLock();
+    // Изменения, закоммиченные во время прохода сверки; null — сверка не идёт
+    private volatile ConcurrentLinkedQueue<Change> captured;
+    // Последний проход, пока ещё могут прийти изменения, которые он уже видел
+    private volatile Scan lateFilter;
+    private volatile Instant reconciledAt;
+
+    public UserStatistics(UserScanner userScanner, ChangeSequence changeSequence) {
+        this.userScanner = userScanner;
+        this.changeSequence = changeSequence;
+    }
+
+    /**
+     * Состояние пользователя, существенное для статистики. brand — бренд телефона (null без телефона или бренда),
+     * avatarBytes — размер аватара (null без аватара).
+     */
+    public static final class State {
+        private final Gender gender;
+        private final boolean hasPhone;
+        private final String brand;
+        private final Long avatarBytes;
+
+        public State(Gender gender, boolean hasPhone, String brand, Long avatarBytes) {
+            this.gender = gender;
+            this.hasPhone = hasPhone;
+            this.brand = brand;
+            this.avatarBytes = avatarBytes;
+        }
+
+        static State of(UserRow row) {
+            return new State(row.getGender(), row.getPhoneId() != null, row.getPhoneBrand(),
+                    row.getAvatarFileName() != null ? row.getAvatarFileSize() : null);
+        }
+    }
+
+    // Закоммиченное изменение строки: before null — создание, after null — удаление
+    private static final class Change {
+        private final int userId;
+        private final long changeSeq;
+        private final State before;
+        private final State after;
+
+        Change(int userId, long changeSeq, State before, State after) {
+            this.userId = userId;
+            this.changeSeq = changeSeq;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /**
+     * Изменение пользователя userId в текущей транзакции под номером changeSeq: before — состояние до
+     * (null для созданного), after — после (null для удалённого). Применяется после коммита.
+     */
+    public void record(int userId, long changeSeq, State before, State after) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committed(userId, changeSeq, before, after);
+            }
+        });
+    }
+
+    // Изменение, уже закоммиченное в БД; его номер ещё «в полёте», пока транзакция не завершится
+    void committed(int userId, long changeSeq, State before, State after) {
+        Change change = new Change(userId, changeSeq, before, after);
+        applyLock.readLock().lock();
+        try {
+            ConcurrentLinkedQueue<Change> log = captured;
+            if (log != null) {
+                log.add(change);
+            }
+            Scan filter = lateFilter;
+            if (filter != null && changeSequence.watermark() >= filter.lastAllocated) {
+                // Все номера, которые мог видеть проход, завершены: дальше изменения только новые
+                lateFilter = null;
+                filter = null;
+            }
+            if (filter == null || !filter.includes(change)) {
+                live.apply(change);
+            }
+        } finally {
+            applyLock.readLock().unlock();
+        }
+    }
+
+    public UserStatsResponse snapshot() {
+        return live.snapshot(reconciledAt);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        reconcile();
+    }
+
+    @Scheduled(initialDelayString = "${users.stats.reconcile-interval:PT10M}",
+            fixedDelayString = "${users.stats.reconcile-interval:PT10M}")
+    public void scheduledReconcile() {
+        reconcile();
+    }
+
+    // Приводит счётчики к состоянию таблицы; записи во время прохода не мешают
+    synchronized void reconcile() {
+        long started = System.nanoTime();
+        ConcurrentLinkedQueue<Change> log = new ConcurrentLinkedQueue<>();
+        // Сначала сбор изменений, потом водяной знак: всё, что выше него, уже собирается
+        captured = log;
+        Scan scan = new Scan(changeSequence.watermark());
+        long rows;
+        try {
+            rows = userScanner.scan(scan::add);
+        } catch (RuntimeException ex) {
+            captured = null;
+            throw ex;
+        }
+        // Любое изменение, которое мог увидеть проход, получило номер не больше этого
+        scan.lastAllocated = changeSequence.lastAllocated();
+
+        long drift;
+        long bytesDrift;
+        applyLock.writeLock().lock();
+        try {
+            captured = null;
+            // По номерам: создание строки раньше её изменений
+            List<Change> changes = new ArrayList<>(log);
+            changes.sort(Comparator.comparingLong(change -> change.changeSeq));
+            for (Change change : changes) {
+                if (!scan.includes(change)) {
+                    scan.counters.apply(change);
+                }
+            }
+            UserStatsResponse current = live.snapshot(null);
+            UserStatsResponse expected = scan.counters.snapshot(null);
+            // Добавляем разницу, а не заменяем значения: счётчики продолжают принимать изменения
+            drift = adjust(live.users, current.getUsers(), expected.getUsers());
+            for (Gender gender : Gender.values()) {
+                drift += adjust(live.byGender.get(gender),
+                        current.getByGender().get(gender), expected.getByGender().get(gender));
+            }
+            for (String brand : union(current.getByPhoneBrand(), expected.getByPhoneBrand())) {
+                drift += adjust(live.byBrand.computeIfAbsent(brand, key -> new LongAdder()),
+                        current.getByPhoneBrand().getOrDefault(brand, 0L),
+                        expected.getByPhoneBrand().getOrDefault(brand, 0L));
+            }
+            drift += adjust(live.withPhone, current.getWithPhone(), expected.getWithPhone());
+            drift += adjust(live.withAvatar, current.getWithAvatar(), expected.getWithAvatar());
+            bytesDrift = adjust(live.avatarBytes, current.getAvatarBytes(), expected.getAvatarBytes());
+            lateFilter = scan.lastAllocated >= 0 ? scan : null;
+        } finally {
+            applyLock.writeLock().unlock();
+        }
+
+        // Первая сверка и есть построение счётчиков — расхождением её результат не считается
+        boolean initial = reconciledAt == null;
+        reconciledAt = Instant.now();
+        if (!initial && (drift != 0 || bytesDrift != 0)) {
+            logger.warn("User statistics corrected by reconciliation: {} counter units, {} avatar bytes", drift, bytesDrift);
+        }
+        logger.info("User statistics reconciled: {} users, {} changes during the scan, in {} ms",
+                rows, log.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Результат прохода сверки: счётчики прочитанных строк и то, что нужно, чтобы решить, видел ли проход изменение.
+     * Строка, прочитанная с номером s, уже содержит свои изменения с номерами до s; изменения с номерами не больше
+     * водяного знака закончились до прохода и видны в любой прочитанной строке.
+     */
+    private static final class Scan {
+        private final Counters counters = new Counters();
+        private final long watermark;
+        private final RoaringBitmap seen = new RoaringBitmap();
+        // Номера строк, изменённых после водяного знака; остальные прочитаны с номером не больше него
+        private final Map<Integer, Long> recentChangeSeq = new HashMap<>();
+        // Строки, созданные после водяного знака и не прочитанные: проход не видел ни одного их изменения
+        private final Set<Integer> createdUnseen = ConcurrentHashMap.newKeySet();
+        private volatile long lastAllocated = -1;
+
+        Scan(long watermark) {
+            this.watermark = watermark;
+        }
+
+        void add(UserRow row) {
+            seen.add(row.getId());
+            long changeSeq = row.getChangeSeq() != null ? row.getChangeSeq() : 0;
+            if (changeSeq > watermark) {
+                recentChangeSeq.put(row.getId(), changeSeq);
+            }
+            counters.apply(State.of(row), 1);
+        }
+
+        // Вошло ли изменение в прочитанное проходом; после прохода bitmap и карта только читаются
+        boolean includes(Change change) {
+            if (change.changeSeq > lastAllocated) {
+                return false;
+            }
+            if (seen.contains(change.userId)) {
+                return change.changeSeq <= recentChangeSeq.getOrDefault(change.userId, watermark);
+            }
+            if (change.changeSeq <= watermark) {
+                // Строка была до прохода, но не прочитана — удалена раньше, чем до неё дошёл проход
+                return true;
+            }
+            if (change.before == null) {
+                createdUnseen.add(change.userId);
+                return false;
+            }
+            // Непрочитанная строка, созданная до прохода, удалена до чтения вместе со всеми изменениями
+            return !createdUnseen.contains(change.userId);
+        }
+    }
+
+    private static final class Counters {
+        private final LongAdder users = new LongAdder();
+        private final Map<Gender, LongAdder> byGender = new EnumMap<>(Gender.class);
+        private final ConcurrentHashMap<String, LongAdder> byBrand = new ConcurrentHashMap<>();
+        private final LongAdder withPhone = new LongAdder();
+        private final LongAdder withAvatar = new LongAdder();
+        private final LongAdder avatarBytes = new LongAdder();
+
+        Counters() {
+            for (Gender gender : Gender.values()) {
+                byGender.put(gender, new LongAdder());
+            }
+        }
+
+        void apply(Change change) {
+            apply(change.before, -1);
+            apply(change.after, 1);
+        }
+
+        void apply(State state, int sign) {
+            if (state == null) {
+                return;
+            }
+            users.add(sign);
+            byGender.get(state.gender).add(sign);
+            if (state.hasPhone) {
+                withPhone.add(sign);
+                if (state.brand != null) {
+                    byBrand.computeIfAbsent(state.brand, brand -> new LongAdder()).add(sign);
+                }
+            }
+            if (state.avatarBytes != null) {
+                withAvatar.add(sign);
+                avatarBytes.add(sign * state.avatarBytes);
+            }
+        }
+
+        UserStatsResponse snapshot(Instant reconciledAt) {
+            Map<Gender, Long> genders = new EnumMap<>(Gender.class);
+            byGender.forEach((gender, count) -> genders.put(gender, count.sum()));
+            Map<String, Long> brands = new TreeMap<>();
+            byBrand.forEach((brand, count) -> {
+                long sum = count.sum();
+                if (sum != 0) {
+                    brands.put(brand, sum);
+                }
+            });
+            return new UserStatsResponse(users.sum(), genders, brands, withPhone.sum(), withAvatar.sum(),
+                    avatarBytes.sum(), reconciledAt);
+        }
+    }
+
+    private static long adjust(LongAdder counter, long current, long expected) {
+        long difference = expected - current;
+        if (difference != 0) {
+            counter.add(difference);
+        }
+        return Math.abs(difference);
+    }
+
+    private static Iterable<String> union(Map<String, Long> first, Map<String, Long> second) {
+        TreeMap<String, Long> keys = new TreeMap<>(first);
+        keys.putAll(second);
+        return keys.keySet();
+    }
+}
@@ -0,0 +1,365 @@
+package com.usersapi.service;
+
+import com.usersapi.web.dto.UserResponse;
+import com.usersapi.web.dto.UserSuggestion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Префиксный индекс для подсказок при наборе: отсортированные пары (терм, id)
+ * по имени, фамилии, email и полному имени в обоих порядках. Подсказка — это один проход
+ * по диапазону [q, q + Character.MAX_VALUE) без обращения к базе.
+ * <p>
+ * Основная часть пар лежит в двух параллельных массивах (String[] термов и int[] id), отсортированных по паре:
+ * по ним ищется двоичным поиском, и они не тратят на каждую пару узел и уровни skip-list. Изменения копятся в
+ * небольшой надстройке — добавленные пары в отсортированном множестве, удалённые из массивов пары во множестве —
+ * и, когда она вырастает до {@value #MIN_OVERLAY} пар или восьмой части массивов, сливаются в новые массивы.
+ * Чтение берёт снимок (массивы и надстройку) одной volatile-ссылкой и не блокируется.
+ * <p>
+ * Строится при старте одним потоковым чтением таблицы и дальше поддерживается событиями
+ * {@link UserChangedEvent} после коммита. Удалённый пользователь остаётся в карте записей отметкой
+ * {@link #DELETED}: id не переиспользуются, и ни запоздавшее событие, ни строка прохода, прочитанная до удаления,
+ * его не вернут.
+ */
+@Component
+public class UserSuggestIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSuggestIndex.class);
+
+    private static final int MIN_OVERLAY = 4096;
+    // Запись удалённого пользователя: термов нет, изменения отклоняются
+    private static final Entry DELETED = new Entry(null, null, null, null);
+
+    private final UserScanner userScanner;
+    private volatile Terms terms = new Terms(new String[0], new int[0]);
+    // Изменения пар — под read lock (друг другу не мешают), слияние надстройки — под write lock
+    private final ReentrantReadWriteLock termsLock = new ReentrantReadWriteLock();
+    private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+    public UserSuggestIndex(UserScanner userScanner) {
+        this.userScanner = userScanner;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long started = System.nanoTime();
+        long rows = userScanner.scan(row -> put(row.getId(), row.getVersion(),
+                row.getFirstName(), row.getLastName(), row.getEmail()));
+        compact();
+        logger.info("Suggest index built: {} users, {} terms in {} ms",
+                rows, terms.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onUserChanged(UserChangedEvent event) {
+        switch (event.getType()) {
+            case DELETED -> remove(event.getUserId());
+            case PATCHED -> patch(event.getUserId(), event.getPatch());
+            // Блокировка имён не меняет
+            case LOCKED, UNLOCKED -> { }
+            default -> {
+                UserResponse user = event.getUser();
+                put(user.getId(), user.getVersion(), user.getFirstName(), user.getLastName(), user.getEmail());
+            }
+        }
+    }
+
+    public List<UserSuggestion> suggest(String q, int limit) {
+        String prefix = q == null ? "" : q.trim().toLowerCase(Locale.ROOT);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        Set<Integer> ids = new LinkedHashSet<>();
+        terms.range(prefix, term -> {
+            ids.add(term.userId);
+            return ids.size() < limit;
+        });
+
+        List<UserSuggestion> suggestions = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Entry entry = entries.get(id);
+            if (entry != null && entry != DELETED) {
+                suggestions.add(new UserSuggestion(id, entry.firstName + " " + entry.lastName, entry.email));
+            }
+        }
+        return suggestions;
+    }
+
+    private void put(Integer id, Integer version, String firstName, String lastName, String email) {
+        termsLock.readLock().lock();
+        try {
+            putEntry(id, version, firstName, lastName, email);
+        } finally {
+            termsLock.readLock().unlock();
+        }
+        compactIfLarge();
+    }
+
+    private void putEntry(Integer id, Integer version, String firstName, String lastName, String email) {
+        entries.compute(id, (key, current) -> {
+            if (current == DELETED) {
+                return current;
+            }
+            // Скан при старте может прочитать строку раньше, чем пришло событие о её изменении
+            if (current != null && current.version != null && version != null && current.version > version) {
+                return current;
+            }
+            if (current != null) {
+                removeTerms(key, current);
+            }
+            Entry entry = new Entry(version, firstName, lastName, email);
+            for (String text : entry.terms()) {
+                terms.add(new Term(text, key));
+            }
+            return entry;
+        });
+    }
+
+    // Незатронутые поля берутся из текущей записи. Если записи ещё нет (идёт перестроение),
+    // строку позже прочитает скан, уже после коммита этого изменения
+    private void patch(Integer id, UserPatch patch) {
+        Entry current = entries.get(id);
+        if (current != null && current != DELETED) {
+            put(id, patch.getVersion(),
+                    UserPatch.merge(patch.getFirstName(), current.firstName),
+                    UserPatch.merge(patch.getLastName(), current.lastName),
+                    UserPatch.merge(patch.getEmail(), current.email));
+        }
+    }
+
+    private void remove(Integer id) {
+        termsLock.readLock().lock();
+        try {
+            entries.compute(id, (key, current) -> {
+                if (current != null && current != DELETED) {
+                    removeTerms(key, current);
+                }
+                return DELETED;
+            });
+        } finally {
+            termsLock.readLock().unlock();
+        }
+        compactIfLarge();
+    }
+
+    private void removeTerms(Integer id, Entry entry) {
+        for (String text : entry.terms()) {
+            terms.remove(new Term(text, id));
+        }
+    }
+
+    private void compactIfLarge() {
+        Terms current = terms;
+        if (current.overlaySize() >= Math.max(MIN_OVERLAY, current.texts.length / 8)) {
+            compact();
+        }
+    }
+
+    // Слияние надстройки в новые массивы; изменения ждут, чтение продолжает идти по прежнему снимку
+    private void compact() {
+        termsLock.writeLock().lock();
+        try {
+            Terms current = terms;
+            if (current.overlaySize() > 0) {
+                terms = current.merged();
+            }
+        } finally {
+            termsLock.writeLock().unlock();
+        }
+    }
+
+    /** Снимок пар: отсортированные массивы и надстройка изменений поверх них. */
+    private static final class Terms {
+        private final String[] texts;
+        private final int[] ids;
+        private final ConcurrentSkipListSet<Term> added = new ConcurrentSkipListSet<>();
+        private final Set<Term> removed = ConcurrentHashMap.newKeySet();
+
+        Terms(String[] texts, int[] ids) {
+            this.texts = texts;
+            this.ids = ids;
+        }
+
+        int size() {
+            return texts.length - removed.size() + added.size();
+        }
+
+        int overlaySize() {
+            return added.size() + removed.size();
+        }
+
+        void add(Term term) {
+            // Пара, удалённая из массивов и добавленная снова, живёт в added: removed по-прежнему скрывает копию в массивах
+            added.add(term);
+        }
+
+        void remove(Term term) {
+            if (!added.remove(term) && indexOf(term) >= 0) {
+                removed.add(term);
+            }
+        }
+
+        /** Пары с термом, начинающимся с prefix, по порядку, пока consumer возвращает true. */
+        void range(String prefix, TermConsumer consumer) {
+            Term from = new Term(prefix, Integer.MIN_VALUE);
+            Term to = new Term(prefix + Character.MAX_VALUE, Integer.MIN_VALUE);
+            int index = insertionPoint(from);
+            Iterator<Term> overlay = added.subSet(from, true, to, false).iterator();
+            Term next = overlay.hasNext() ? overlay.next() : null;
+            while (true) {
+                Term base = null;
+                while (index < texts.length && texts[index].compareTo(to.text) < 0) {
+                    Term candidate = new Term(texts[index], ids[index]);
+                    if (removed.isEmpty() || !removed.contains(candidate)) {
+                        base = candidate;
+                        break;
+                    }
+                    index++;
+                }
+                if (base == null && next == null) {
+                    return;
+                }
+                Term term;
+                if (next == null || (base != null && base.compareTo(next) < 0)) {
+                    term = base;
+                    index++;
+                } else {
+                    term = next;
+                    next = overlay.hasNext() ? overlay.next() : null;
+                }
+                if (!consumer.accept(term)) {
+                    return;
+                }
+            }
+        }
+
+        Terms merged() {
+            int capacity = texts.length + added.size();
+            String[] mergedTexts = new String[capacity];
+            int[] mergedIds = new int[capacity];
+            int size = 0;
+            int index = 0;
+            Iterator<Term> overlay = added.iterator();
+            Term next = overlay.hasNext() ? overlay.next() : null;
+            while (index < texts.length || next != null) {
+                Term term;
+                if (index < texts.length) {
+                    Term base = new Term(texts[index], ids[index]);
+                    if (removed.contains(base)) {
+                        index++;
+                        continue;
+                    }
+                    int cmp = next == null ? -1 : base.compareTo(next);
+                    if (cmp <= 0) {
+                        term = base;
+                        index++;
+                        // Пара есть и в массивах, и в надстройке: в новые массивы попадает один раз
+                        if (cmp == 0) {
+                            next = overlay.hasNext() ? overlay.next() : null;
+                        }
+                    } else {
+                        term = next;
+                        next = overlay.hasNext() ? overlay.next() : null;
+                    }
+                } else {
+                    term = next;
+                    next = overlay.hasNext() ? overlay.next() : null;
+                }
+                mergedTexts[size] = term.text;
+                mergedIds[size] = term.userId;
+                size++;
+            }
+            return new Terms(Arrays.copyOf(mergedTexts, size), Arrays.copyOf(mergedIds, size));
+        }
+
+        private int indexOf(Term term) {
+            int index = insertionPoint(term);
+            return index < texts.length && ids[index] == term.userId && texts[index].equals(term.text) ? index : -1;
+        }
+
+        // Первая позиция массивов, где пара не меньше term
+        private int insertionPoint(Term term) {
+            int low = 0;
+            int high = texts.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int byText = texts[middle].compareTo(term.text);
+                int cmp = byText != 0 ? byText : Integer.compare(ids[middle], term.userId);
+                if (cmp < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    @FunctionalInterface
+    private interface TermConsumer {
+        boolean accept(Term term);
+    }
+
+    private static final class Entry {
+        private final Integer version;
+        private final String firstName;
+        private final String lastName;
+        private final String email;
+
+        Entry(Integer version, String firstName, String lastName, String email) {
+            this.version = version;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.email = email;
+        }
+
+        List<String> terms() {
+            String first = firstName.toLowerCase(Locale.ROOT);
+            String last = lastName.toLowerCase(Locale.ROOT);
+            return List.of(first, last, email.toLowerCase(Locale.ROOT), first + " " + last, last + " " + first);
+        }
+    }
+
+    private static final class Term implements Comparable<Term> {
+        private final String text;
+        private final int userId;
+
+        Term(String text, int userId) {
+            this.text = text;
+            this.userId = userId;
+        }
+
+        @Override
+        public int compareTo(Term other) {
+            int byText = text.compareTo(other.text);
+            return byText != 0 ? byText : Integer.compare(userId, other.userId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Term other && userId == other.userId && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * text.hashCode() + userId;
+        }
+    }
+}
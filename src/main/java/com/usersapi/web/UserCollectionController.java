@@ -0,0 +1,162 @@
+package com.usersapi.web;
+
+import com.usersapi.service.UserChangeFeed;
+import com.usersapi.service.UserService;
+import com.usersapi.service.UserStatistics;
+import com.usersapi.service.UserSuggestIndex;
+import com.usersapi.web.dto.BatchGetUsersRequest;
+import com.usersapi.web.dto.BatchGetUsersResponse;
+import com.usersapi.web.dto.UserChangesResponse;
+import com.usersapi.web.dto.UserStatsResponse;
+import com.usersapi.web.dto.UserSuggestion;
+import com.usersapi.web.errors.Errors.BadRequestException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+
+/**
+ * Custom methods on the users collection ({@code /api/v1/users:<method>}).
+ * They live outside {@link UserController} because its class-level mapping would turn
+ * {@code :method} into a separate path segment.
+ */
+@RestController
+@RequestMapping("/api/v1")
+@Tag(name = "Users", description = "Users API v1 - User management operations")
+public class UserCollectionController {
+
+    private static final int MAX_SUGGESTIONS = 50;
+
+    private final UserService userService;
+    private final UserSuggestIndex suggestIndex;
+    private final UserChangeFeed changeFeed;
+    private final UserStatistics statistics;
+
+    public UserCollectionController(UserService userService, UserSuggestIndex suggestIndex, UserChangeFeed changeFeed,
+                                    UserStatistics statistics) {
+        this.userService = userService;
+        this.suggestIndex = suggestIndex;
+        this.changeFeed = changeFeed;
+        this.statistics = statistics;
+    }
+
+    @Operation(summary = "Stream user changes", description = "Server-Sent Events feed of committed changes: CREATED, UPDATED, PATCHED, "
+            + "PHONE_UPDATED, AVATAR_UPLOADED, DELETED, LOCKED, UNLOCKED. Reconnect with Last-Event-ID to resume; a 'reset' event "
+            + "means the gap can no longer be replayed (or the id is from an earlier run of the server) and the client should reload. "
+            + "'overflow' reports events dropped for a slow client")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Event stream opened")
+    })
+    @GetMapping(value = "/users:stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(
+            @Parameter(description = "Id of the last event received, sent by EventSource on reconnect")
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            @Parameter(description = "What to do when this client falls behind by more than the buffer: drop the oldest events or disconnect")
+            @RequestParam(defaultValue = "DROP") UserChangeFeed.Overflow overflow) {
+
+        // Ids carry a per-run epoch; one the feed does not recognize gets a reset event, not an error
+        String resumeFrom = lastEventId != null && !lastEventId.isBlank() ? lastEventId.trim() : null;
+
+        return ResponseEntity.ok()
+                .header("X-API-Version", "v1")
+                // Disables response buffering in nginx-style proxies
+                .header("X-Accel-Buffering", "no")
+                .body(changeFeed.subscribe(resumeFrom, overflow));
+    }
+
+    @Operation(summary = "Suggest users", description = "Search-as-you-type by prefix of first name, last name, full name or email. Served from memory")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Suggestions, best matches first"),
+            @ApiResponse(responseCode = "400", description = "Invalid limit")
+    })
+    @GetMapping("/users:suggest")
+    public ResponseEntity<List<UserSuggestion>> suggest(
+            @Parameter(description = "Typed prefix") @RequestParam(defaultValue = "") String q,
+            @Parameter(description = "Maximum number of suggestions (1-50)", example = "10") @RequestParam(defaultValue = "10") int limit) {
+
+        if (limit < 1 || limit > MAX_SUGGESTIONS) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_SUGGESTIONS);
+        }
+
+        return ResponseEntity.ok()
+                .header("X-API-Version", "v1")
+                .body(suggestIndex.suggest(q, limit));
+    }
+
+    @Operation(summary = "Changes since a watermark", description = "Delta sync for clients that cannot hold a stream: users created or "
+            + "changed and ids deleted after 'since', ordered by change sequence. Pass the returned watermark as 'since' next time; "
+            + "since=0 returns everything")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Changes after the watermark"),
+            @ApiResponse(responseCode = "400", description = "Negative since or limit out of range")
+    })
+    @GetMapping("/users:changes")
+    public ResponseEntity<UserChangesResponse> changes(
+            @Parameter(description = "Watermark from the previous response, 0 for a full sync", example = "0") @RequestParam long since,
+            @Parameter(description = "Maximum number of changes (1-1000)", example = "500") @RequestParam(defaultValue = "500") int limit,
+            @Parameter(description = "Related data to include: 'phone' (default) or 'none' to skip the phone join")
+            @RequestParam(required = false) List<String> include) {
+
+        return ResponseEntity.ok()
+                .header("X-API-Version", "v1")
+                .body(userService.changesSince(since, limit, UserController.includesPhone(include)));
+    }
+
+    @Operation(summary = "User statistics", description = "Users in total, per gender and per phone brand, with a phone, with an avatar "
+            + "and total avatar bytes. Served from counters kept up to date by writes and reconciled with the database periodically")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Current statistics")
+    })
+    @GetMapping("/users:stats")
+    public ResponseEntity<UserStatsResponse> stats() {
+        return ResponseEntity.ok()
+                .header("X-API-Version", "v1")
+                .body(statistics.snapshot());
+    }
+
+    @Operation(summary = "Get users by ids", description = "Resolve up to 200 ids with a single query. Users come back in the requested order, unknown ids are listed in 'missing'")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Users resolved"),
+            @ApiResponse(responseCode = "400", description = "More than 200 distinct ids"),
+            @ApiResponse(responseCode = "422", description = "ids parameter is missing")
+    })
+    @GetMapping("/users:batchGet")
+    public ResponseEntity<BatchGetUsersResponse> batchGet(
+            @Parameter(description = "Comma-separated user ids", example = "1,2,3") @RequestParam List<Integer> ids,
+            @Parameter(description = "Related data to include: 'phone' (default) or 'none' to skip the phone join")
+            @RequestParam(required = false) List<String> include) {
+
+        return ResponseEntity.ok()
+                .header("X-API-Version", "v1")
+                .body(userService.batchGet(ids, UserController.includesPhone(include)));
+    }
+
+    @Operation(summary = "Get users by ids (body)", description = "Same as GET /users:batchGet for id lists too long for a URL")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Users resolved"),
+            @ApiResponse(responseCode = "400", description = "Empty list or more than 200 distinct ids")
+    })
+    @PostMapping("/users:batchGet")
+    public ResponseEntity<BatchGetUsersResponse> batchGetByBody(
+            @Valid @RequestBody BatchGetUsersRequest request,
+            @Parameter(description = "Related data to include: 'phone' (default) or 'none' to skip the phone join")
+            @RequestParam(required = false) List<String> include) {
+        return ResponseEntity.ok()
+                .header("X-API-Version", "v1")
+                .body(userService.batchGet(request.getIds(), UserController.includesPhone(include)));
+    }
+}
@@ -1,8 +1,13 @@
 package com.usersapi.web;
 
 import com.usersapi.model.Gender;
+import com.usersapi.repository.MatchMode;
+import com.usersapi.service.UserReadCoalescer;
 import com.usersapi.service.UserService;
 import com.usersapi.web.dto.*;
+import com.usersapi.web.errors.Errors.BadRequestException;
+import com.usersapi.web.errors.Errors.PreconditionFailedException;
+import com.usersapi.web.errors.Errors.PreconditionRequiredException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -33,15 +38,17 @@ public class UserController {
     private static final Logger logger = LoggerFactory.getLogger(UserController.class);
 
     private final UserService userService;
+    private final UserReadCoalescer userReads;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserReadCoalescer userReads) {
         this.userService = userService;
+        this.userReads = userReads;
     }
 
     @Operation(summary = "Get users with pagination", description = "Retrieve paginated list of users with filtering and sorting")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Users retrieved successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid pagination parameters"),
+            @ApiResponse(responseCode = "400", description = "Invalid pagination parameters (with the shards profile: a page beyond the first " + UserService.MAX_SHARDED_WINDOW + " users), or fuzzy search combined with other filters"),
             @ApiResponse(responseCode = "401", description = "Authentication required"),
             @ApiResponse(responseCode = "403", description = "Insufficient permissions")
     })
@@ -52,20 +59,48 @@ public class UserController {
             @Parameter(description = "Filter by email") @RequestParam(required = false) String email,
             @Parameter(description = "Filter by gender") @RequestParam(required = false) Gender gender,
             @Parameter(description = "Filter by phone brand") @RequestParam(required = false) String phoneBrand,
-            @Parameter(description = "Filter by phone number") @RequestParam(required = false) String phoneNumber,
+            @Parameter(description = "Filter by phone number prefix (formatting is ignored: +7-999 matches 7999...)") @RequestParam(required = false) String phoneNumber,
+            @Parameter(description = "How text filters are matched, case-insensitive: CONTAINS (substring), PREFIX or EXACT. PREFIX and EXACT use indexes. "
+                    + "One mode applies to every text filter of the request (firstName=Iv&match=PREFIX is a first-name prefix search); "
+                    + "different modes per filter are not supported")
+            @RequestParam(defaultValue = "CONTAINS") MatchMode match,
+            @Parameter(description = "Typo-tolerant search by firstName/lastName, ranked by similarity. Other filters and sort are not allowed")
+            @RequestParam(defaultValue = "false") boolean fuzzy,
             @Parameter(description = "Page number (0-based)", example = "0") @RequestParam(defaultValue = "0") int page,
             @Parameter(description = "Page size", example = "10") @RequestParam(defaultValue = "10") int size,
             @Parameter(description = "Sort by field (format: field,asc|desc). Multiple sorts supported: sort=firstName,asc&sort=lastName,desc")
-            @RequestParam(required = false) List<String> sort) {
+            @RequestParam(required = false) List<String> sort,
+            @Parameter(description = "Related data to include: 'phone' (default) or 'none' to skip the phone and its join")
+            @RequestParam(required = false) List<String> include,
+            @Parameter(description = "Add facet counts (users per gender and phone brand, with phone, with avatar) within the current filter")
+            @RequestParam(defaultValue = "false") boolean facets) {
 
         logger.info("Processing users list request - page: {}, size: {}, sort: {}", page, size, sort);
 
         // Create pageable with sorting
         Pageable pageable = createPageable(page, size, sort);
 
-        Page<UserResponse> usersPage = userService.list(firstName, lastName, email, gender, phoneBrand, phoneNumber, pageable);
+        Page<UserResponse> usersPage;
+        if (fuzzy) {
+            if (email != null || gender != null || phoneBrand != null || phoneNumber != null || (sort != null && !sort.isEmpty())) {
+                throw new BadRequestException("Fuzzy search supports only firstName and lastName filters without sort");
+            }
+            if (firstName == null && lastName == null) {
+                throw new BadRequestException("Fuzzy search requires firstName or lastName");
+            }
+            if (facets) {
+                throw new BadRequestException("Facets are not supported with fuzzy search");
+            }
+            usersPage = userReads.fuzzyList(firstName, lastName, includesPhone(include), PageRequest.of(page, size));
+        } else {
+            usersPage = userReads.list(firstName, lastName, email, gender, phoneBrand, phoneNumber, match,
+                    includesPhone(include), pageable);
+        }
 
         PageResponse<UserResponse> response = new PageResponse<>(usersPage);
+        if (facets) {
+            response.setFacets(userService.facets(firstName, lastName, email, gender, phoneBrand, phoneNumber, match));
+        }
 
         logger.info("Returning {} users on page {} of {}",
                 response.getContent().size(), page, response.getMetadata().getTotalPages());
@@ -142,13 +177,17 @@ public class UserController {
                     """)))
     })
     @GetMapping("/{id}")
-    public ResponseEntity<UserResponse> get(@PathVariable Integer id) {
+    public ResponseEntity<UserResponse> get(
+            @PathVariable Integer id,
+            @Parameter(description = "Related data to include: 'phone' (default) or 'none' to skip loading the phone")
+            @RequestParam(required = false) List<String> include) {
         logger.debug("Fetching user with ID: {}", id);
 
-        UserResponse response = userService.get(id);
+        UserResponse response = userReads.get(id, includesPhone(include));
 
         return ResponseEntity.ok()
                 .header("X-API-Version", "v1")
+                .eTag(eTag(response.getVersion()))
                 .body(response);
     }
 
@@ -240,6 +279,53 @@ public class UserController {
                 .body(response);
     }
 
+    @Operation(summary = "Patch user", description = "Conditional update in a single statement. Requires If-Match with the version "
+            + "(ETag of GET /{id}) or '*'. Only the fields present are changed; the new ETag is returned without a body")
+    @ApiResponses({
+            @ApiResponse(responseCode = "204", description = "User updated, ETag holds the new version"),
+            @ApiResponse(responseCode = "400", description = "Invalid data or nothing to update"),
+            @ApiResponse(responseCode = "404", description = "User not found",
+                    content = @Content(examples = @ExampleObject(value = """
+                        {
+                            "code": "NOT_FOUND",
+                            "message": "User not found: 9999"
+                        }
+                    """))),
+            @ApiResponse(responseCode = "409", description = "Email already exists"),
+            @ApiResponse(responseCode = "412", description = "Version does not match If-Match",
+                    content = @Content(examples = @ExampleObject(value = """
+                        {
+                            "code": "PRECONDITION_FAILED",
+                            "message": "Version mismatch for user 1: expected 3"
+                        }
+                    """))),
+            @ApiResponse(responseCode = "423", description = "User locked"),
+            @ApiResponse(responseCode = "428", description = "If-Match header is missing",
+                    content = @Content(examples = @ExampleObject(value = """
+                        {
+                            "code": "PRECONDITION_REQUIRED",
+                            "message": "If-Match header is required"
+                        }
+                    """)))
+    })
+    @PatchMapping("/{id}")
+    public ResponseEntity<Void> patch(
+            @PathVariable Integer id,
+            @Parameter(description = "Expected version as an entity tag, e.g. \"3\", or *", example = "\"0\"")
+            @RequestHeader(value = "If-Match", required = false) String ifMatch,
+            @Valid @RequestBody UpdateUserRequest request) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            throw new PreconditionRequiredException("If-Match header is required");
+        }
+
+        int version = userService.patch(id, parseIfMatch(ifMatch), request);
+
+        return ResponseEntity.noContent()
+                .header("X-API-Version", "v1")
+                .eTag(eTag(version))
+                .build();
+    }
+
     @Operation(summary = "Update phone", description = "Update user's phone. All fields are optional")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Phone updated"),
@@ -477,6 +563,30 @@ public class UserController {
         return PageRequest.of(page, size, Sort.by(orders));
     }
 
+    private static String eTag(Integer version) {
+        return "\"" + version + "\"";
+    }
+
+    // null means "*" (any version). A weak or non-numeric tag can never match a version, hence 412
+    private static Integer parseIfMatch(String ifMatch) {
+        String value = ifMatch.trim();
+        if (value.equals("*")) {
+            return null;
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("If-Match does not match any version: " + ifMatch);
+        }
+    }
+
+    static boolean includesPhone(List<String> include) {
+        return include == null || include.contains("phone");
+    }
+
     private boolean isValidSortField(String field) {
         // Whitelist of allowed sort fields
         return List.of("id", "firstName", "lastName", "email", "gender").contains(field);
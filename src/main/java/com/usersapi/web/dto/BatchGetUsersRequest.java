@@ -0,0 +1,19 @@
+package com.usersapi.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+@Schema(description = "Запрос на получение пользователей по списку ID")
+public class BatchGetUsersRequest {
+
+    @NotEmpty(message = "ids must not be empty")
+    @Schema(description = "ID пользователей, порядок ответа совпадает с порядком запроса", example = "[1, 2, 3]",
+            requiredMode = Schema.RequiredMode.REQUIRED)
+    private List<@NotNull Integer> ids;
+
+    public List<Integer> getIds() { return ids; }
+    public void setIds(List<Integer> ids) { this.ids = ids; }
+}
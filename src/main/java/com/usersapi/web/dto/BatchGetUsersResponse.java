@@ -0,0 +1,19 @@
+package com.usersapi.web.dto;
+
+import java.util.List;
+
+public class BatchGetUsersResponse {
+    private List<UserResponse> users;
+    private List<Integer> missing;
+
+    public BatchGetUsersResponse(List<UserResponse> users, List<Integer> missing) {
+        this.users = users;
+        this.missing = missing;
+    }
+
+    public List<UserResponse> getUsers() { return users; }
+    public void setUsers(List<UserResponse> users) { this.users = users; }
+
+    public List<Integer> getMissing() { return missing; }
+    public void setMissing(List<Integer> missing) { this.missing = missing; }
+}
@@ -1,5 +1,6 @@
 package com.usersapi.web.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.data.domain.Page;
 
@@ -9,6 +10,10 @@ public class PageResponse<T> {
     private List<T> content;
     private PageMetadata metadata;
 
+    // Только для списка пользователей с facets=true
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private UserFacets facets;
+
     public PageResponse(Page<T> page) {
         this.content = page.getContent();
         this.metadata = new PageMetadata(
@@ -30,6 +35,9 @@ public class PageResponse<T> {
     public PageMetadata getMetadata() { return metadata; }
     public void setMetadata(PageMetadata metadata) { this.metadata = metadata; }
 
+    public UserFacets getFacets() { return facets; }
+    public void setFacets(UserFacets facets) { this.facets = facets; }
+
     public static class PageMetadata {
         private int page;
         private int size;
@@ -0,0 +1,49 @@
+package com.usersapi.web.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Map;
+
+@Schema(description = "Событие ленты изменений GET /api/v1/users:stream")
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserChangeNotification {
+
+    @Schema(description = "Тип изменения", example = "UPDATED")
+    private String type;
+
+    @Schema(description = "ID пользователя", example = "1")
+    private Integer userId;
+
+    @Schema(description = "Версия после изменения; нет у DELETED, LOCKED и UNLOCKED", example = "3")
+    private Integer version;
+
+    @Schema(description = "Пользователь после изменения (CREATED, UPDATED, PHONE_UPDATED, AVATAR_UPLOADED; у последнего без телефона)")
+    private UserResponse user;
+
+    @Schema(description = "Только изменённые поля (PATCHED)")
+    private Map<String, Object> changes;
+
+    public UserChangeNotification(String type, Integer userId, Integer version, UserResponse user, Map<String, Object> changes) {
+        this.type = type;
+        this.userId = userId;
+        this.version = version;
+        this.user = user;
+        this.changes = changes;
+    }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public Integer getUserId() { return userId; }
+    public void setUserId(Integer userId) { this.userId = userId; }
+
+    public Integer getVersion() { return version; }
+    public void setVersion(Integer version) { this.version = version; }
+
+    public UserResponse getUser() { return user; }
+    public void setUser(UserResponse user) { this.user = user; }
+
+    public Map<String, Object> getChanges() { return changes; }
+    public void setChanges(Map<String, Object> changes) { this.changes = changes; }
+}
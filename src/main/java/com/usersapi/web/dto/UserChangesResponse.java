@@ -0,0 +1,40 @@
+package com.usersapi.web.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Schema(description = "Изменения пользователей после водяного знака")
+public class UserChangesResponse {
+
+    @Schema(description = "Созданные и изменённые пользователи в порядке изменения")
+    private List<UserResponse> changed;
+
+    @Schema(description = "ID удалённых пользователей")
+    private List<Integer> deleted;
+
+    @Schema(description = "Водяной знак для следующего запроса (since)", example = "1042")
+    private long watermark;
+
+    @Schema(description = "После водяного знака уже есть изменения, стоит запросить сразу")
+    private boolean hasMore;
+
+    public UserChangesResponse(List<UserResponse> changed, List<Integer> deleted, long watermark, boolean hasMore) {
+        this.changed = changed;
+        this.deleted = deleted;
+        this.watermark = watermark;
+        this.hasMore = hasMore;
+    }
+
+    public List<UserResponse> getChanged() { return changed; }
+    public void setChanged(List<UserResponse> changed) { this.changed = changed; }
+
+    public List<Integer> getDeleted() { return deleted; }
+    public void setDeleted(List<Integer> deleted) { this.deleted = deleted; }
+
+    public long getWatermark() { return watermark; }
+    public void setWatermark(long watermark) { this.watermark = watermark; }
+
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+}
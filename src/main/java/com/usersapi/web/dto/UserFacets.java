@@ -0,0 +1,48 @@
+package com.usersapi.web.dto;
+
+import com.usersapi.model.Gender;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.Map;
+
+@Schema(description = "Число пользователей по значениям полей внутри текущего фильтра списка")
+public class UserFacets {
+
+    @Schema(description = "Всего пользователей, подходящих под фильтр", example = "42")
+    private long total;
+
+    @Schema(description = "Пользователей каждого пола")
+    private Map<Gender, Long> gender;
+
+    @Schema(description = "Пользователей с телефоном каждого бренда (бренд как сохранён, только ненулевые)")
+    private Map<String, Long> phoneBrand;
+
+    @Schema(description = "Пользователей с телефоном", example = "30")
+    private long withPhone;
+
+    @Schema(description = "Пользователей с аватаром", example = "12")
+    private long withAvatar;
+
+    public UserFacets(long total, Map<Gender, Long> gender, Map<String, Long> phoneBrand, long withPhone, long withAvatar) {
+        this.total = total;
+        this.gender = gender;
+        this.phoneBrand = phoneBrand;
+        this.withPhone = withPhone;
+        this.withAvatar = withAvatar;
+    }
+
+    public long getTotal() { return total; }
+    public void setTotal(long total) { this.total = total; }
+
+    public Map<Gender, Long> getGender() { return gender; }
+    public void setGender(Map<Gender, Long> gender) { this.gender = gender; }
+
+    public Map<String, Long> getPhoneBrand() { return phoneBrand; }
+    public void setPhoneBrand(Map<String, Long> phoneBrand) { this.phoneBrand = phoneBrand; }
+
+    public long getWithPhone() { return withPhone; }
+    public void setWithPhone(long withPhone) { this.withPhone = withPhone; }
+
+    public long getWithAvatar() { return withAvatar; }
+    public void setWithAvatar(long withAvatar) { this.withAvatar = withAvatar; }
+}
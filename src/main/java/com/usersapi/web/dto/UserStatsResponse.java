@@ -0,0 +1,64 @@
+package com.usersapi.web.dto;
+
+import com.usersapi.model.Gender;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Schema(description = "Статистика пользователей, поддерживаемая счётчиками")
+public class UserStatsResponse {
+
+    @Schema(description = "Всего пользователей", example = "1042")
+    private long users;
+
+    @Schema(description = "Пользователей каждого пола")
+    private Map<Gender, Long> byGender;
+
+    @Schema(description = "Пользователей с телефоном каждого бренда (бренд как сохранён)")
+    private Map<String, Long> byPhoneBrand;
+
+    @Schema(description = "Пользователей с телефоном", example = "800")
+    private long withPhone;
+
+    @Schema(description = "Пользователей с аватаром", example = "310")
+    private long withAvatar;
+
+    @Schema(description = "Суммарный размер аватаров в байтах", example = "52428800")
+    private long avatarBytes;
+
+    @Schema(description = "Время последней сверки счётчиков с БД")
+    private Instant reconciledAt;
+
+    public UserStatsResponse(long users, Map<Gender, Long> byGender, Map<String, Long> byPhoneBrand,
+                             long withPhone, long withAvatar, long avatarBytes, Instant reconciledAt) {
+        this.users = users;
+        this.byGender = byGender;
+        this.byPhoneBrand = byPhoneBrand;
+        this.withPhone = withPhone;
+        this.withAvatar = withAvatar;
+        this.avatarBytes = avatarBytes;
+        this.reconciledAt = reconciledAt;
+    }
+
+    public long getUsers() { return users; }
+    public void setUsers(long users) { this.users = users; }
+
+    public Map<Gender, Long> getByGender() { return byGender; }
+    public void setByGender(Map<Gender, Long> byGender) { this.byGender = byGender; }
+
+    public Map<String, Long> getByPhoneBrand() { return byPhoneBrand; }
+    public void setByPhoneBrand(Map<String, Long> byPhoneBrand) { this.byPhoneBrand = byPhoneBrand; }
+
+    public long getWithPhone() { return withPhone; }
+    public void setWithPhone(long withPhone) { this.withPhone = withPhone; }
+
+    public long getWithAvatar() { return withAvatar; }
+    public void setWithAvatar(long withAvatar) { this.withAvatar = withAvatar; }
+
+    public long getAvatarBytes() { return avatarBytes; }
+    public void setAvatarBytes(long avatarBytes) { this.avatarBytes = avatarBytes; }
+
+    public Instant getReconciledAt() { return reconciledAt; }
+    public void setReconciledAt(Instant reconciledAt) { this.reconciledAt = reconciledAt; }
+}
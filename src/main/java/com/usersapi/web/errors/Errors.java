@@ -53,6 +53,12 @@ public class Errors {
         public ConflictException(String message) { super(message); }
     }
 
+    // 412
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public static class PreconditionFailedException extends RuntimeException {
+        public PreconditionFailedException(String message) { super(message); }
+    }
+
     // 413
     @ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
     public static class PayloadTooLargeException extends RuntimeException {
@@ -83,6 +89,12 @@ public class Errors {
         public LockedException(String message) { super(message); }
     }
 
+    // 428
+    @ResponseStatus(HttpStatus.PRECONDITION_REQUIRED)
+    public static class PreconditionRequiredException extends RuntimeException {
+        public PreconditionRequiredException(String message) { super(message); }
+    }
+
     // 431
     @ResponseStatus(HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE)
     public static class HeaderTooLargeException extends RuntimeException {
@@ -142,6 +154,12 @@ public class Errors {
                 .body(new ErrorResponse("CONFLICT", exception.getMessage()));
     }
 
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<?> handlePreconditionFailed(PreconditionFailedException exception) {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .body(new ErrorResponse("PRECONDITION_FAILED", exception.getMessage()));
+    }
+
     @ExceptionHandler({MaxUploadSizeExceededException.class, PayloadTooLargeException.class})
     public ResponseEntity<?> handlePayloadTooLarge() {
         return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
@@ -172,6 +190,12 @@ public class Errors {
                 .body(new ErrorResponse("LOCKED", lockedException.getMessage()));
     }
 
+    @ExceptionHandler(PreconditionRequiredException.class)
+    public ResponseEntity<?> handlePreconditionRequired(PreconditionRequiredException exception) {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED)
+                .body(new ErrorResponse("PRECONDITION_REQUIRED", exception.getMessage()));
+    }
+
     @ExceptionHandler(HeaderTooLargeException.class)
     public ResponseEntity<?> handleHeaderTooLarge(HeaderTooLargeException exception) {
         return ResponseEntity.status(HttpStatus.REQUEST_HEADER_FIELDS_TOO_LARGE)
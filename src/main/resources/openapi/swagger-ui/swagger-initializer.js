@@ -0,0 +1,16 @@
+// Swagger UI для готового документа OpenAPI (профиль prod), см. PrecomputedOpenApiConfig
+window.onload = function() {
+  window.ui = SwaggerUIBundle({
+    url: "/v3/api-docs",
+    dom_id: '#swagger-ui',
+    deepLinking: true,
+    presets: [
+      SwaggerUIBundle.presets.apis,
+      SwaggerUIStandalonePreset
+    ],
+    plugins: [
+      SwaggerUIBundle.plugins.DownloadUrl
+    ],
+    layout: "StandaloneLayout"
+  });
+};
@@ -0,0 +1,89 @@
+package com.usersapi.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveLimitTest {
+
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(51);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private long now = System.nanoTime();
+
+    @Test
+    void growsWhileLatencyHoldsUnderFullLoad() {
+        AdaptiveLimit limit = new AdaptiveLimit(20, 4, 200, 1.5);
+
+        for (int i = 0; i < 10; i++) {
+            saturatedWindow(limit, FAST);
+        }
+
+        assertThat(limit.limit()).isGreaterThan(20);
+        assertThat(limit.inFlight()).isZero();
+    }
+
+    @Test
+    void shrinksWhenQueueingAddsLatency() {
+        AdaptiveLimit limit = new AdaptiveLimit(20, 4, 200, 1.5);
+        for (int i = 0; i < 10; i++) {
+            saturatedWindow(limit, FAST);
+        }
+        int grown = limit.limit();
+
+        saturatedWindow(limit, SLOW);
+        saturatedWindow(limit, SLOW);
+
+        assertThat(limit.limit()).isLessThan(grown);
+        assertThat(limit.shortRttMillis()).isEqualTo(5.0);
+    }
+
+    @Test
+    void idleServerDoesNotMoveTheLimit() {
+        AdaptiveLimit limit = new AdaptiveLimit(20, 4, 200, 1.5);
+
+        for (int window = 0; window < 10; window++) {
+            now += WINDOW;
+            releaseAfterAcquire(limit, 20, FAST);
+        }
+
+        assertThat(limit.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void windowWaitsForEnoughSamples() {
+        AdaptiveLimit limit = new AdaptiveLimit(20, 4, 200, 1.5);
+
+        // Nine requests are too few to close the window, even long after it ended
+        now += WINDOW;
+        releaseAfterAcquire(limit, 9, FAST);
+        assertThat(limit.shortRttMillis()).isZero();
+
+        // The tenth closes it with all ten samples
+        now += WINDOW;
+        releaseAfterAcquire(limit, 1, FAST);
+        assertThat(limit.shortRttMillis()).isEqualTo(1.0);
+    }
+
+    private void releaseAfterAcquire(AdaptiveLimit limit, int requests, long rttNanos) {
+        for (int i = 0; i < requests; i++) {
+            assertThat(limit.tryAcquire(1.0)).isTrue();
+            limit.release(rttNanos, now);
+        }
+    }
+
+    // Takes every permit and returns them all in the next window with the same latency
+    private void saturatedWindow(AdaptiveLimit limit, long rttNanos) {
+        int acquired = 0;
+        while (limit.tryAcquire(1.0)) {
+            acquired++;
+        }
+        now += WINDOW;
+        for (int i = 0; i < acquired; i++) {
+            limit.release(rttNanos, now);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.usersapi.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhoneNumbersTest {
+
+    @Test
+    void acceptsDigitsWithSeparators() {
+        assertThat(PhoneNumbers.isAcceptable("+7-999-111-22-33")).isTrue();
+        assertThat(PhoneNumbers.isAcceptable("8 (999) 111 22 33")).isTrue();
+        assertThat(PhoneNumbers.isAcceptable("\t112\n")).isTrue();
+    }
+
+    @Test
+    void rejectsEmptyAndForeignCharacters() {
+        assertThat(PhoneNumbers.isAcceptable(null)).isFalse();
+        assertThat(PhoneNumbers.isAcceptable("")).isFalse();
+        assertThat(PhoneNumbers.isAcceptable("+7 999 111 22 33 ext. 5")).isFalse();
+        assertThat(PhoneNumbers.isAcceptable("+7.999.111.22.33")).isFalse();
+        // Только ASCII-цифры: арабско-индийские цифры Character.isDigit пропустил бы
+        assertThat(PhoneNumbers.isAcceptable("٧٩٩٩")).isFalse();
+    }
+
+    @Test
+    void normalizeKeepsDigitsInOrder() {
+        assertThat(PhoneNumbers.normalize("+7-999-111-22-33")).isEqualTo("79991112233");
+        assertThat(PhoneNumbers.normalize("7 (999) 111 22 33")).isEqualTo("79991112233");
+        // Префикс не приводится к коду страны
+        assertThat(PhoneNumbers.normalize("8 (999) 111-22-33")).isEqualTo("89991112233");
+    }
+
+    @Test
+    void normalizeReturnsCanonicalInputItself() {
+        String digits = "79991112233";
+
+        assertThat(PhoneNumbers.normalize(digits)).isSameAs(digits);
+        assertThat(PhoneNumbers.normalize("+-()")).isEmpty();
+        assertThat(PhoneNumbers.normalize(null)).isNull();
+    }
+}
@@ -0,0 +1,84 @@
+package com.usersapi.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChangeSequenceTest {
+
+    private final JdbcTemplate jdbcTemplate = jdbcTemplate();
+    @SuppressWarnings("unchecked")
+    private final ChangeSequence changeSequence = new ChangeSequence(jdbcTemplate, mock(ObjectProvider.class));
+
+    @Test
+    void watermarkStaysBelowEarlierNumberUntilItsTransactionCompletes() {
+        assertThat(changeSequence.watermark()).isEqualTo(100);
+
+        Transaction earlier = new Transaction();
+        Transaction later = new Transaction();
+        assertThat(later.changeSeq).isGreaterThan(earlier.changeSeq);
+
+        // Поздняя транзакция закоммичена первой: её номер не виден, пока ранняя «в полёте»
+        later.complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(changeSequence.watermark()).isEqualTo(earlier.changeSeq - 1);
+        assertThat(changeSequence.lastAllocated()).isEqualTo(later.changeSeq);
+
+        earlier.complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(changeSequence.watermark()).isEqualTo(later.changeSeq);
+    }
+
+    @Test
+    void rolledBackNumberReleasesWatermark() {
+        Transaction earlier = new Transaction();
+        Transaction later = new Transaction();
+        later.complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        earlier.complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(changeSequence.watermark()).isEqualTo(later.changeSeq);
+    }
+
+    @Test
+    void numberTakenOutsideTransactionIsRejected() {
+        assertThatIllegalStateException().isThrownBy(changeSequence::next);
+    }
+
+    // Последовательность H2 начинается со 101, в таблицах закоммичено до 100
+    private static JdbcTemplate jdbcTemplate() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenAnswer(invocation ->
+                invocation.getArgument(0).equals(ChangeSequence.COMMITTED_MAX_SQL) ? 100L : 101L);
+        return jdbcTemplate;
+    }
+
+    // Транзакция, взявшая один номер; завершается вызовом синхронизаций, как это делает менеджер транзакций
+    private final class Transaction {
+        private final long changeSeq;
+        private final List<TransactionSynchronization> synchronizations;
+
+        Transaction() {
+            TransactionSynchronizationManager.initSynchronization();
+            try {
+                changeSeq = changeSequence.next();
+                synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            } finally {
+                TransactionSynchronizationManager.clearSynchronization();
+            }
+        }
+
+        void complete(int status) {
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+        }
+    }
+}
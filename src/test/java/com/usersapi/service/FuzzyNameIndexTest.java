@@ -0,0 +1,60 @@
+package com.usersapi.service;
+
+import com.usersapi.repository.UserRow;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FuzzyNameIndexTest {
+
+    @Test
+    void findsShortNameWithoutSharedTrigrams() {
+        // "bob" и "bab" не делят ни одной триграммы ($bo/bob/ob$ против $ba/bab/ab$)
+        FuzzyNameIndex index = index("bab", "bobby", "rob", "al");
+
+        assertThat(ids(index.search("bob", null))).containsExactly(1, 3);
+    }
+
+    @Test
+    void findsTwoSubstitutionsThatBreakEveryTrigram() {
+        FuzzyNameIndex index = index("axcdyf", "abcdef", "zzzzzz", "axcdyfgh");
+
+        List<FuzzyNameIndex.Match> matches = index.search("abcdef", null);
+
+        assertThat(ids(matches)).containsExactly(2, 1);
+        assertThat(matches.get(1).getDistance()).isEqualTo(2);
+    }
+
+    @Test
+    void longNameStillUsesTrigramCandidates() {
+        FuzzyNameIndex index = index("alexandrova", "aleksandrova", "alexandrovna", "petrova");
+
+        assertThat(ids(index.search("alexandrova", null))).containsExactly(1, 3, 2);
+    }
+
+    @Test
+    void removedTermIsNotFoundByLengthScan() {
+        FuzzyNameIndex index = index("bab", "bib");
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.DELETED, 1, null, null));
+
+        assertThat(ids(index.search("bob", null))).containsExactly(2);
+    }
+
+    // Пользователь i + 1 с именем firstNames[i]
+    private static FuzzyNameIndex index(String... firstNames) {
+        List<UserRow> rows = new ArrayList<>();
+        for (int i = 0; i < firstNames.length; i++) {
+            rows.add(UserRows.user(i + 1).name(firstNames[i], "Doe").build());
+        }
+        FuzzyNameIndex index = new FuzzyNameIndex(UserRows.scannerOf(rows));
+        index.rebuild();
+        return index;
+    }
+
+    private static List<Integer> ids(List<FuzzyNameIndex.Match> matches) {
+        return matches.stream().map(FuzzyNameIndex.Match::getUserId).toList();
+    }
+}
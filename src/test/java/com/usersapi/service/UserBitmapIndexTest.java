@@ -0,0 +1,74 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+import com.usersapi.repository.MatchMode;
+import com.usersapi.repository.UserRow;
+import com.usersapi.web.dto.PhoneResponse;
+import com.usersapi.web.dto.UserResponse;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserBitmapIndexTest {
+
+    @Test
+    void brandsDifferingOnlyInCaseShareOneBitmap() {
+        UserBitmapIndex index = index(List.of("Apple", "apple", "Nokia"));
+
+        assertThat(index.candidates(null, "APPLE", MatchMode.EXACT).toArray()).containsExactly(1, 2);
+        // Фасет один, под первым встреченным написанием
+        assertThat(index.facets(RoaringBitmap.bitmapOf(1, 2, 3)).getPhoneBrand())
+                .containsOnlyKeys("Apple", "Nokia")
+                .containsEntry("Apple", 2L);
+    }
+
+    @Test
+    void brandChangeMovesUserBetweenBitmaps() {
+        UserBitmapIndex index = index(List.of("Apple", "apple"));
+
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.UPDATED, 1, user(1, 1, "Nokia")));
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.UPDATED, 2, user(2, 1, "NOKIA")));
+
+        assertThat(index.candidates(null, "apple", MatchMode.CONTAINS).isEmpty()).isTrue();
+        assertThat(index.facets(RoaringBitmap.bitmapOf(1, 2)).getPhoneBrand()).containsOnlyKeys("Nokia");
+    }
+
+    @Test
+    void lateEventDoesNotResurrectDeletedUser() {
+        UserBitmapIndex index = index(List.of("Apple", "Nokia"));
+
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.DELETED, 2, null));
+        // Событие изменения, закоммиченного до удаления, пришло после него
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.UPDATED, 2, user(2, 1, "Nokia")));
+
+        assertThat(index.candidates(null, null, MatchMode.EXACT).toArray()).containsExactly(1);
+        assertThat(index.facets(RoaringBitmap.bitmapOf(1, 2)).getPhoneBrand()).containsOnlyKeys("Apple");
+    }
+
+    // Пользователь i + 1 с телефоном бренда brands[i]
+    private static UserBitmapIndex index(List<String> brands) {
+        List<UserRow> rows = new ArrayList<>();
+        for (int i = 0; i < brands.size(); i++) {
+            rows.add(UserRows.user(i + 1).phone("+7-900-000-00-0" + i, brands.get(i)).build());
+        }
+        UserBitmapIndex index = new UserBitmapIndex(UserRows.scannerOf(rows));
+        index.rebuild();
+        return index;
+    }
+
+    private static UserResponse user(int id, int version, String brand) {
+        UserResponse user = new UserResponse();
+        user.setId(id);
+        user.setVersion(version);
+        user.setGender(Gender.MALE);
+        PhoneResponse phone = new PhoneResponse();
+        phone.setId(id);
+        phone.setBrand(brand);
+        user.setPhone(phone);
+        return user;
+    }
+}
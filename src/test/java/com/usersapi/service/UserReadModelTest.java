@@ -0,0 +1,154 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+import com.usersapi.repository.MatchMode;
+import com.usersapi.repository.UserListFilter;
+import com.usersapi.repository.UserRow;
+import com.usersapi.web.dto.UserResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class UserReadModelTest {
+
+    private static final UserListFilter ALL = new UserListFilter(null, null, null, null, null, null, MatchMode.CONTAINS);
+    private static final String[] NAMES = {"Anna", "Boris", "Ivan", "Maria", "Oleg"};
+
+    @Test
+    void pagesFollowSortWithIdAsLastCriterion() {
+        List<UserRow> rows = rows(200);
+        UserReadModel model = model(rows);
+        Sort sort = Sort.by(Sort.Order.asc("lastName"), Sort.Order.desc("gender"));
+        List<Integer> expected = rows.stream()
+                .sorted(Comparator.comparing(UserRow::getLastName)
+                        .thenComparing((UserRow row) -> row.getGender().name(), Comparator.reverseOrder())
+                        .thenComparing(UserRow::getId))
+                .map(UserRow::getId)
+                .toList();
+
+        List<Integer> paged = new ArrayList<>();
+        for (int page = 0; page < 29; page++) {
+            paged.addAll(ids(model, PageRequest.of(page, 7, sort)));
+        }
+
+        assertThat(paged).isEqualTo(expected);
+    }
+
+    @Test
+    void descendingIdSortIsNotOnlyIdSort() {
+        UserReadModel model = model(rows(20));
+
+        List<Integer> ids = ids(model, PageRequest.of(0, 5, Sort.by(Sort.Order.desc("firstName"), Sort.Order.desc("id"))));
+
+        // Имена по кругу из пяти: Oleg у id 5, 10, 15, 20
+        assertThat(ids).containsExactly(20, 15, 10, 5, 19);
+    }
+
+    @Test
+    void repairReloadsOnlyDivergedRows() {
+        List<UserRow> rows = new ArrayList<>(rows(10));
+        UserScanner scanner = UserRows.scannerOf(rows);
+        UserReadModel model = new UserReadModel(scanner, new SimpleMeterRegistry());
+        model.rebuild();
+
+        // В БД строка 3 изменилась, а строка 7 удалена без событий
+        rows.set(2, row(3, 1, "Zoe", Gender.OTHER));
+        rows.remove(6);
+
+        UserReadModel.Verification verification = model.verifyAndRepair();
+
+        assertThat(verification.diverged()).isEqualTo(2);
+        assertThat(model.verify().diverged()).isZero();
+        assertThat(model.rows()).isEqualTo(9);
+        verify(scanner, never()).row(1);
+    }
+
+    @Test
+    void loadsRowsScannedOutOfIdOrder() {
+        // Два шарда читаются по очереди: сначала нечётные id, затем чётные
+        List<UserRow> rows = new ArrayList<>();
+        rows.addAll(rows(2000).stream().filter(row -> row.getId() % 2 == 1).toList());
+        rows.addAll(rows(2000).stream().filter(row -> row.getId() % 2 == 0).toList());
+
+        UserReadModel model = model(rows);
+
+        assertThat(model.rows()).isEqualTo(2000);
+        assertThat(ids(model, PageRequest.of(0, 2000))).isSorted().hasSize(2000);
+        assertThat(model.verify().diverged()).isZero();
+    }
+
+    @Test
+    void changesDuringLoadAreAppliedAfterSort() {
+        List<UserRow> rows = rows(10);
+        UserScanner scanner = UserRows.scannerOf(rows);
+        UserReadModel model = new UserReadModel(scanner, new SimpleMeterRegistry());
+        doAnswer(invocation -> {
+            Consumer<UserRow> consumer = invocation.getArgument(0);
+            rows.subList(0, 5).forEach(consumer);
+            // Строка 2 уже прочитана и удалена, строка 8 ещё не прочитана и обновлена, 11 создана
+            model.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.DELETED, 2, null));
+            model.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.UPDATED, 8, response(8, 1, "Zoe")));
+            model.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.CREATED, 11, response(11, 0, "Yan")));
+            rows.subList(5, 10).forEach(consumer);
+            return 10L;
+        }).when(scanner).scan(any());
+
+        model.rebuild();
+
+        List<UserResponse> users = model.list(ALL, null, false, PageRequest.of(0, 20)).getContent();
+        assertThat(users).extracting(UserResponse::getId).containsExactly(1, 3, 4, 5, 6, 7, 8, 9, 10, 11);
+        assertThat(users.get(6).getFirstName()).isEqualTo("Zoe");
+        assertThat(users.get(6).getVersion()).isEqualTo(1);
+    }
+
+    private static UserResponse response(int id, int version, String firstName) {
+        UserResponse user = new UserResponse();
+        user.setId(id);
+        user.setVersion(version);
+        user.setFirstName(firstName);
+        user.setLastName("Last");
+        user.setEmail("u" + id + "@example.com");
+        user.setGender(Gender.MALE);
+        return user;
+    }
+
+    private static List<Integer> ids(UserReadModel model, PageRequest pageable) {
+        return model.list(ALL, null, false, pageable).getContent().stream().map(UserResponse::getId).toList();
+    }
+
+    private static UserReadModel model(List<UserRow> rows) {
+        UserReadModel model = new UserReadModel(UserRows.scannerOf(rows), new SimpleMeterRegistry());
+        model.rebuild();
+        return model;
+    }
+
+    // Пользователь i + 1: имя по кругу, фамилия и пол случайные (с повторами, чтобы проверить id как последний критерий)
+    private static List<UserRow> rows(int count) {
+        Random random = new Random(42);
+        List<UserRow> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(UserRows.user(i + 1)
+                    .name(NAMES[i % NAMES.length], "Last" + random.nextInt(10))
+                    .gender(Gender.values()[random.nextInt(Gender.values().length)])
+                    .build());
+        }
+        return rows;
+    }
+
+    private static UserRow row(int id, int version, String firstName, Gender gender) {
+        return UserRows.user(id).version(version).name(firstName, "Last").gender(gender).build();
+    }
+}
@@ -0,0 +1,94 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+import com.usersapi.repository.UserRow;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Строки пользователей для тестов индексов в памяти и заглушка {@link UserScanner} поверх них.
+ * Значения по умолчанию: версия 0, Ivan Petrov, u{id}@example.com, MALE, без телефона и аватара.
+ */
+final class UserRows {
+
+    private final int id;
+    private int version;
+    private String firstName = "Ivan";
+    private String lastName = "Petrov";
+    private String email;
+    private Gender gender = Gender.MALE;
+    private String phoneNumber;
+    private String phoneBrand;
+    private long changeSeq = 1;
+
+    private UserRows(int id) {
+        this.id = id;
+        this.email = "u" + id + "@example.com";
+    }
+
+    static UserRows user(int id) {
+        return new UserRows(id);
+    }
+
+    UserRows version(int version) {
+        this.version = version;
+        return this;
+    }
+
+    UserRows name(String firstName, String lastName) {
+        this.firstName = firstName;
+        this.lastName = lastName;
+        return this;
+    }
+
+    UserRows email(String email) {
+        this.email = email;
+        return this;
+    }
+
+    UserRows gender(Gender gender) {
+        this.gender = gender;
+        return this;
+    }
+
+    // id телефона совпадает с id пользователя
+    UserRows phone(String number, String brand) {
+        this.phoneNumber = number;
+        this.phoneBrand = brand;
+        return this;
+    }
+
+    UserRows changeSeq(long changeSeq) {
+        this.changeSeq = changeSeq;
+        return this;
+    }
+
+    UserRow build() {
+        return new UserRow(id, version, firstName, lastName, email, gender,
+                phoneNumber == null ? null : id, phoneNumber, phoneBrand, null, null, changeSeq);
+    }
+
+    /**
+     * Сканер, который при полном проходе отдаёт текущее содержимое rows, а {@link UserScanner#row(int)} ищет в нём
+     * же: тест может менять список после построения индекса, имитируя изменения в БД без событий.
+     */
+    static UserScanner scannerOf(List<UserRow> rows) {
+        UserScanner scanner = mock(UserScanner.class);
+        when(scanner.scan(any())).thenAnswer(invocation -> {
+            Consumer<UserRow> consumer = invocation.getArgument(0);
+            rows.forEach(consumer);
+            return (long) rows.size();
+        });
+        when(scanner.row(anyInt())).thenAnswer(invocation -> {
+            int id = invocation.getArgument(0);
+            return rows.stream().filter(row -> row.getId() == id).findFirst();
+        });
+        return scanner;
+    }
+}
@@ -0,0 +1,183 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+import com.usersapi.repository.MatchMode;
+import com.usersapi.web.dto.CreateUserRequest;
+import com.usersapi.web.dto.PhoneDto;
+import com.usersapi.web.dto.UserResponse;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Число JDBC-запросов Hibernate на каждый путь чтения и записи: телефон загружается только с include=phone,
+ * и тем же запросом, что и пользователь; список и пачка без N+1.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class UserServiceQueryCountTest {
+
+    private static final AtomicInteger emails = new AtomicInteger();
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void getWithPhoneIsOneSelect() {
+        int id = createUser(true).getId();
+
+        UserResponse user = counted(() -> userService.get(id, true));
+
+        assertThat(user.getPhone()).isNotNull();
+        assertStatements(1);
+    }
+
+    @Test
+    void getWithoutPhoneIsOneSelect() {
+        int id = createUser(true).getId();
+
+        UserResponse user = counted(() -> userService.get(id, false));
+
+        assertThat(user.getPhone()).isNull();
+        assertStatements(1);
+    }
+
+    @Test
+    void listWithPhoneHasNoNPlusOne() {
+        for (int i = 0; i < 5; i++) {
+            createUser(true);
+        }
+
+        // Сортировка по фамилии: страница из базы, а не из битовых индексов
+        var page = counted(() -> userService.list(null, "Query", null, null, null, null, MatchMode.PREFIX, true,
+                PageRequest.of(0, 3, Sort.by("lastName", "id"))));
+
+        assertThat(page.getContent()).hasSize(3).allSatisfy(user -> assertThat(user.getPhone()).isNotNull());
+        // Страница и count
+        assertStatements(2);
+    }
+
+    @Test
+    void listWithoutPhoneHasNoNPlusOne() {
+        for (int i = 0; i < 5; i++) {
+            createUser(true);
+        }
+
+        var page = counted(() -> userService.list(null, "Query", null, null, null, null, MatchMode.PREFIX, false,
+                PageRequest.of(0, 3, Sort.by("lastName", "id"))));
+
+        assertThat(page.getContent()).hasSize(3).allSatisfy(user -> assertThat(user.getPhone()).isNull());
+        assertStatements(2);
+    }
+
+    @Test
+    void batchGetIsOneSelect() {
+        List<Integer> ids = List.of(createUser(true).getId(), createUser(false).getId(), createUser(true).getId());
+
+        var batch = counted(() -> userService.batchGet(ids, true));
+
+        assertThat(batch.getUsers()).hasSize(3);
+        assertStatements(1);
+    }
+
+    @Test
+    void batchGetWithoutPhoneIsOneSelect() {
+        List<Integer> ids = List.of(createUser(true).getId(), createUser(true).getId());
+
+        var batch = counted(() -> userService.batchGet(ids, false));
+
+        assertThat(batch.getUsers()).hasSize(2).allSatisfy(user -> assertThat(user.getPhone()).isNull());
+        assertStatements(1);
+    }
+
+    @Test
+    void deleteLoadsUserWithoutPhoneGraph() {
+        int id = createUser(true).getId();
+
+        counted(() -> {
+            userService.delete(id);
+            return null;
+        });
+
+        // Строка для статистики и email, сущность и телефон для каскадного удаления, вставка надгробия
+        // без предварительного SELECT, удаление пользователя и телефона
+        assertStatements(6);
+    }
+
+    @Test
+    void uploadAvatarDoesNotLoadPhone() {
+        int id = createUser(true).getId();
+
+        counted(() -> {
+            userService.uploadAvatar(id, avatar());
+            return null;
+        });
+
+        // Пользователь без телефона и UPDATE
+        assertStatements(2);
+        userService.delete(id);
+    }
+
+    @Test
+    void getAvatarIsOneSelect() {
+        int id = createUser(true).getId();
+        userService.uploadAvatar(id, avatar());
+
+        byte[] avatar = counted(() -> userService.getAvatar(id));
+
+        assertThat(avatar).containsExactly(1, 2, 3);
+        assertStatements(1);
+        userService.delete(id);
+    }
+
+    private UserResponse createUser(boolean withPhone) {
+        int n = emails.incrementAndGet();
+        CreateUserRequest request = new CreateUserRequest();
+        request.setFirstName("Counted");
+        request.setLastName("Query" + n);
+        request.setEmail("query.count." + n + "@example.com");
+        request.setGender(Gender.FEMALE);
+        if (withPhone) {
+            PhoneDto phone = new PhoneDto();
+            phone.setNumber("+7-900-000-00-" + String.format("%02d", n % 100));
+            phone.setBrand("Nokia");
+            request.setPhone(phone);
+        }
+        return userService.create(request);
+    }
+
+    private static MockMultipartFile avatar() {
+        return new MockMultipartFile("file", "avatar.png", "image/png", new byte[] {1, 2, 3});
+    }
+
+    private <T> T counted(Supplier<T> call) {
+        statistics.clear();
+        return call.get();
+    }
+
+    private void assertStatements(long expected) {
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,168 @@
+package com.usersapi.service;
+
+import com.usersapi.model.Gender;
+import com.usersapi.repository.ChangeSequence;
+import com.usersapi.repository.UserRow;
+import com.usersapi.service.UserStatistics.State;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Сверка статистики при записях во время прохода. Таблица и последовательность изменений — в памяти теста;
+ * «параллельные транзакции» выполняются перед чтением проходом заданной строки. После каждого сценария живые
+ * счётчики должны совпасть с построенными заново по итоговой таблице.
+ */
+class UserStatisticsTest {
+
+    private final TreeMap<Integer, UserRow> table = new TreeMap<>();
+    // Номера незавершённых транзакций: водяной знак не заходит за наименьший из них
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    private long lastAllocated;
+    private final Map<Integer, Runnable> beforeRead = new HashMap<>();
+
+    private final UserScanner scanner = scanner();
+    private final ChangeSequence changeSequence = changeSequence();
+    private final UserStatistics statistics = new UserStatistics(scanner, changeSequence);
+
+    @BeforeEach
+    void initialTable() {
+        for (int id = 1; id <= 5; id++) {
+            table.put(id, row(id, id, Gender.MALE, null));
+        }
+        lastAllocated = 5;
+        statistics.reconcile();
+    }
+
+    @Test
+    void userCreatedDuringScanIsCountedOnce() {
+        beforeRead.put(3, () -> commit(begin(), 6, row(6, lastAllocated, Gender.FEMALE, "Nokia")));
+
+        statistics.reconcile();
+
+        assertThat(statistics.snapshot().getUsers()).isEqualTo(6);
+        assertMatchesFreshScan();
+    }
+
+    @Test
+    void userDeletedBeforeScanReachesItIsNotSubtractedTwice() {
+        beforeRead.put(2, () -> commit(begin(), 4, null));
+
+        statistics.reconcile();
+
+        assertThat(statistics.snapshot().getUsers()).isEqualTo(4);
+        assertMatchesFreshScan();
+    }
+
+    @Test
+    void updatesAboveWatermarkCountOnlyWhenScanMissedThem() {
+        // Номер 6 взят до прохода: водяной знак прохода — 5
+        long early = begin();
+        // Строка 3 прочитана с номером 6, а изменение 7 пришло уже после её чтения
+        beforeRead.put(2, () -> commit(early, 3, row(3, early, Gender.FEMALE, null)));
+        beforeRead.put(4, () -> {
+            long late = begin();
+            commit(late, 3, row(3, late, Gender.FEMALE, "Nokia"));
+        });
+
+        statistics.reconcile();
+
+        assertThat(statistics.snapshot().getByGender()).containsEntry(Gender.FEMALE, 1L);
+        assertThat(statistics.snapshot().getByPhoneBrand()).containsEntry("Nokia", 1L);
+        assertMatchesFreshScan();
+    }
+
+    @Test
+    void changeAppliedAfterCountersSwapIsFilteredUntilWatermarkPassesScan() {
+        long seq = begin();
+        State[] change = new State[2];
+        // Строка закоммичена и прочитана проходом, но счётчики получают изменение только после подмены
+        beforeRead.put(2, () -> {
+            State[] written = write(3, row(3, seq, Gender.OTHER, null));
+            change[0] = written[0];
+            change[1] = written[1];
+        });
+        statistics.reconcile();
+
+        statistics.committed(3, seq, change[0], change[1]);
+        inFlight.remove(seq);
+        assertMatchesFreshScan();
+
+        // Водяной знак прошёл всё, что мог видеть проход: следующие изменения применяются как обычно
+        commit(begin(), 5, row(5, lastAllocated, Gender.OTHER, null));
+        assertThat(statistics.snapshot().getByGender()).containsEntry(Gender.OTHER, 2L);
+        assertMatchesFreshScan();
+    }
+
+    private void assertMatchesFreshScan() {
+        UserStatistics fresh = new UserStatistics(scanner, changeSequence);
+        fresh.reconcile();
+        assertThat(statistics.snapshot()).usingRecursiveComparison()
+                .ignoringFields("reconciledAt")
+                .isEqualTo(fresh.snapshot());
+    }
+
+    private long begin() {
+        long changeSeq = ++lastAllocated;
+        inFlight.add(changeSeq);
+        return changeSeq;
+    }
+
+    // Коммит как в UserService: строка в БД, затем afterCommit статистики, затем завершение номера
+    private void commit(long changeSeq, int id, UserRow after) {
+        State[] change = write(id, after);
+        statistics.committed(id, changeSeq, change[0], change[1]);
+        inFlight.remove(changeSeq);
+    }
+
+    // Запись строки (null — удаление); состояния до и после
+    private State[] write(int id, UserRow after) {
+        UserRow before = after != null ? table.put(id, after) : table.remove(id);
+        return new State[] {before != null ? State.of(before) : null, after != null ? State.of(after) : null};
+    }
+
+    private static UserRow row(int id, long changeSeq, Gender gender, String brand) {
+        UserRows row = UserRows.user(id).gender(gender).changeSeq(changeSeq);
+        return (brand != null ? row.phone("+7-900-000-00-0" + id, brand) : row).build();
+    }
+
+    // Проход по ключам на его начало: строки, созданные во время прохода, он не видит, удалённые — пропускает
+    private UserScanner scanner() {
+        UserScanner scanner = mock(UserScanner.class);
+        when(scanner.scan(any())).thenAnswer(invocation -> {
+            Consumer<UserRow> consumer = invocation.getArgument(0);
+            long rows = 0;
+            for (Integer id : new ArrayList<>(table.keySet())) {
+                Runnable concurrent = beforeRead.remove(id);
+                if (concurrent != null) {
+                    concurrent.run();
+                }
+                UserRow row = table.get(id);
+                if (row != null) {
+                    consumer.accept(row);
+                    rows++;
+                }
+            }
+            return rows;
+        });
+        return scanner;
+    }
+
+    private ChangeSequence changeSequence() {
+        ChangeSequence sequence = mock(ChangeSequence.class);
+        when(sequence.watermark()).thenAnswer(invocation -> inFlight.isEmpty() ? lastAllocated : inFlight.first() - 1);
+        when(sequence.lastAllocated()).thenAnswer(invocation -> lastAllocated);
+        return sequence;
+    }
+}
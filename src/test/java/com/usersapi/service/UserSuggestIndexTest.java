@@ -0,0 +1,135 @@
+package com.usersapi.service;
+
+import com.usersapi.repository.UserRow;
+import com.usersapi.web.dto.UserResponse;
+import com.usersapi.web.dto.UserSuggestion;
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserSuggestIndexTest {
+
+    private static final String[] FIRST = {"Anna", "Andrey", "Boris", "Ivan", "Irina", "Maria", "Mark"};
+    private static final String[] LAST = {"Ivanov", "Ivanova", "Petrov", "Smirnov", "Sidorov"};
+    private static final String[] PREFIXES = {"a", "an", "iv", "ivanov", "m", "mar", "petrov b", "s", "x"};
+
+    private final Random random = new Random(7);
+
+    @Test
+    void suggestsInTermOrderAcrossArraysAndOverlay() {
+        UserSuggestIndex index = index(1, "Anna", "Ivanova", 2, "Andrey", "Petrov");
+
+        index.onUserChanged(created(3, "Anton", "Smirnov"));
+
+        assertThat(ids(index.suggest("an", 10))).containsExactly(2, 1, 3);
+        assertThat(ids(index.suggest("an", 2))).containsExactly(2, 1);
+    }
+
+    @Test
+    void matchesReferenceThroughCompactions() {
+        Map<Integer, String[]> users = new TreeMap<>();
+        for (int id = 1; id <= 1500; id++) {
+            users.put(id, randomName());
+        }
+        UserSuggestIndex index = index(users);
+        Set<Integer> deleted = new HashSet<>();
+
+        // Больше MIN_OVERLAY изменений: надстройка несколько раз сливается с массивами
+        for (int change = 0; change < 6000; change++) {
+            int id = 1 + random.nextInt(1700);
+            if (random.nextInt(8) == 0) {
+                users.remove(id);
+                deleted.add(id);
+                index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.DELETED, id, null));
+            } else {
+                String[] name = randomName();
+                // Id не переиспользуются: событие об удалённом пользователе запоздало и отклоняется
+                if (!deleted.contains(id)) {
+                    users.put(id, name);
+                }
+                index.onUserChanged(created(id, name[0], name[1]));
+            }
+            if (change % 500 == 0) {
+                assertMatchesReference(index, users);
+            }
+        }
+        assertMatchesReference(index, users);
+    }
+
+    @Test
+    void lateEventDoesNotResurrectDeletedUser() {
+        UserSuggestIndex index = index(1, "Anna", "Ivanova", 2, "Andrey", "Petrov");
+
+        index.onUserChanged(new UserChangedEvent(UserChangedEvent.Type.DELETED, 2, null));
+        index.onUserChanged(created(2, "Andrey", "Petrov"));
+
+        assertThat(ids(index.suggest("an", 10))).containsExactly(1);
+    }
+
+    private static void assertMatchesReference(UserSuggestIndex index, Map<Integer, String[]> users) {
+        List<Map.Entry<String, Integer>> pairs = new ArrayList<>();
+        users.forEach((id, name) -> {
+            String first = name[0].toLowerCase(Locale.ROOT);
+            String last = name[1].toLowerCase(Locale.ROOT);
+            for (String term : List.of(first, last, email(id), first + " " + last, last + " " + first)) {
+                pairs.add(new AbstractMap.SimpleEntry<>(term, id));
+            }
+        });
+        pairs.sort(Map.Entry.<String, Integer>comparingByKey().thenComparing(Map.Entry.comparingByValue()));
+        for (String prefix : PREFIXES) {
+            LinkedHashSet<Integer> expected = new LinkedHashSet<>();
+            pairs.stream().filter(pair -> pair.getKey().startsWith(prefix)).forEach(pair -> expected.add(pair.getValue()));
+            List<Integer> limited = expected.stream().limit(50).toList();
+
+            assertThat(ids(index.suggest(prefix, 50))).as(prefix).isEqualTo(limited);
+        }
+    }
+
+    private String[] randomName() {
+        return new String[] {FIRST[random.nextInt(FIRST.length)], LAST[random.nextInt(LAST.length)]};
+    }
+
+    private static UserSuggestIndex index(Object... idFirstLast) {
+        Map<Integer, String[]> users = new TreeMap<>();
+        for (int i = 0; i < idFirstLast.length; i += 3) {
+            users.put((Integer) idFirstLast[i], new String[] {(String) idFirstLast[i + 1], (String) idFirstLast[i + 2]});
+        }
+        return index(users);
+    }
+
+    private static UserSuggestIndex index(Map<Integer, String[]> users) {
+        List<UserRow> rows = new ArrayList<>();
+        users.forEach((id, name) -> rows.add(UserRows.user(id).name(name[0], name[1]).email(email(id)).build()));
+        UserSuggestIndex index = new UserSuggestIndex(UserRows.scannerOf(rows));
+        index.rebuild();
+        return index;
+    }
+
+    private static UserChangedEvent created(int id, String firstName, String lastName) {
+        UserResponse user = new UserResponse();
+        user.setId(id);
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setEmail(email(id));
+        return new UserChangedEvent(UserChangedEvent.Type.UPDATED, id, user);
+    }
+
+    private static String email(int id) {
+        return "user" + id + "@example.com";
+    }
+
+    private static List<Integer> ids(List<UserSuggestion> suggestions) {
+        return suggestions.stream().map(UserSuggestion::getId).toList();
+    }
+}
@@ -0,0 +1,150 @@
+package com.usersapi.web;
+
+import com.usersapi.model.Gender;
+import com.usersapi.repository.UserRepository;
+import com.usersapi.service.UserService;
+import com.usersapi.web.dto.CreateUserRequest;
+import com.usersapi.web.dto.UserResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Conditional PATCH contract: If-Match is required, a stale version is rejected without touching the row,
+ * and a successful patch evicts the second-level cache entry (cache profile) so the next read sees it.
+ */
+// Hibernate resolves a "classpath:" cache URI only inside the packaged jar; a plain resource name works in both
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.javax.cache.uri=ehcache.xml")
+@AutoConfigureMockMvc
+@ActiveProfiles("cache")
+class UserPatchTest {
+
+    private static final String ADMIN = "Basic " + Base64.getEncoder()
+            .encodeToString("admin:admin".getBytes(StandardCharsets.UTF_8));
+    private static final AtomicInteger emails = new AtomicInteger();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void matchingVersionIsPatchedAndReturnsNewETag() throws Exception {
+        int id = createUser().getId();
+
+        patchUser(id, "\"0\"", "{\"firstName\":\"Patched\"}")
+                .andExpect(status().isNoContent())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+
+        assertThat(userRepository.findVersionById(id)).isEqualTo(1);
+    }
+
+    @Test
+    void staleVersionIsPreconditionFailed() throws Exception {
+        int id = createUser().getId();
+        patchUser(id, "\"0\"", "{\"firstName\":\"First\"}").andExpect(status().isNoContent());
+
+        patchUser(id, "\"0\"", "{\"firstName\":\"Second\"}")
+                .andExpect(status().isPreconditionFailed())
+                .andExpect(jsonPath("$.code").value("PRECONDITION_FAILED"));
+
+        assertThat(userRepository.findVersionById(id)).isEqualTo(1);
+        assertThat(userService.get(id, false).getFirstName()).isEqualTo("First");
+    }
+
+    @Test
+    void missingIfMatchIsPreconditionRequired() throws Exception {
+        int id = createUser().getId();
+
+        patchUser(id, null, "{\"firstName\":\"Patched\"}")
+                .andExpect(status().isPreconditionRequired())
+                .andExpect(jsonPath("$.code").value("PRECONDITION_REQUIRED"));
+
+        assertThat(userRepository.findVersionById(id)).isZero();
+    }
+
+    @Test
+    void anyVersionOnMissingUserIsNotFound() throws Exception {
+        patchUser(Integer.MAX_VALUE, "*", "{\"firstName\":\"Patched\"}")
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void anyVersionPatchesWhateverVersionIsCurrent() throws Exception {
+        int id = createUser().getId();
+        patchUser(id, "\"0\"", "{\"firstName\":\"First\"}").andExpect(status().isNoContent());
+
+        patchUser(id, "*", "{\"firstName\":\"Second\"}")
+                .andExpect(status().isNoContent())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""));
+
+        assertThat(userRepository.findVersionById(id)).isEqualTo(2);
+    }
+
+    @Test
+    void emailOfAnotherUserIsConflict() throws Exception {
+        UserResponse taken = createUser();
+        int id = createUser().getId();
+
+        patchUser(id, "\"0\"", "{\"email\":\"" + taken.getEmail() + "\"}")
+                .andExpect(status().isConflict());
+
+        assertThat(userRepository.findVersionById(id)).isZero();
+    }
+
+    @Test
+    void patchEvictsCachedUser() throws Exception {
+        int id = createUser().getId();
+        // Loads the user into the second-level cache
+        assertThat(userService.get(id, false).getFirstName()).isEqualTo("Cached");
+
+        patchUser(id, "\"0\"", "{\"firstName\":\"Fresh\",\"gender\":\"OTHER\"}").andExpect(status().isNoContent());
+
+        UserResponse user = userService.get(id, false);
+        assertThat(user.getFirstName()).isEqualTo("Fresh");
+        assertThat(user.getGender()).isEqualTo(Gender.OTHER);
+        assertThat(user.getVersion()).isEqualTo(1);
+    }
+
+    private ResultActions patchUser(int id, String ifMatch, String body) throws Exception {
+        MockHttpServletRequestBuilder request = patch("/api/v1/users/{id}", id)
+                .header(HttpHeaders.AUTHORIZATION, ADMIN)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body);
+        if (ifMatch != null) {
+            request.header(HttpHeaders.IF_MATCH, ifMatch);
+        }
+        return mockMvc.perform(request);
+    }
+
+    private UserResponse createUser() {
+        int n = emails.incrementAndGet();
+        CreateUserRequest request = new CreateUserRequest();
+        request.setFirstName("Cached");
+        request.setLastName("Patch" + n);
+        request.setEmail("patch." + n + "@example.com");
+        request.setGender(Gender.MALE);
+        return userService.create(request);
+    }
+}